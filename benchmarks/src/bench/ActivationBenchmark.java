@@ -0,0 +1,100 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.Activation;
+import cnn.Config;
+
+// Activation functions and their derivatives over 4096 values (throughput in arrays per second)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ActivationBenchmark {
+    // Layer activation run by the apply benchmarks, on the scalar or the Vector API backend
+    @Param({"relu", "sigmoid", "fast sigmoid", "tanh", "fast tanh"})
+    public String activation;
+
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    private double[] values;
+    private double[] results;
+    private Activation function;
+
+    @Setup
+    public void setup() {
+        this.values = Inputs.gaussian(1, 4096).data();
+        this.results = new double[this.values.length];
+        Config.setVectorized(this.vectorized);
+        for (Activation candidate : new Activation[] {Activation.RELU, Activation.SIGMOID, Activation.FAST_SIGMOID, Activation.TANH, Activation.FAST_TANH}) {
+            if (candidate.toString().equals(this.activation)) {
+                this.function = candidate;
+            }
+        }
+    }
+
+    // Whole-array activation as the layers run it
+    @Benchmark
+    public double[] apply() {
+        System.arraycopy(values, 0, results, 0, values.length);
+        function.apply(results, 0, results.length, 0.1);
+        return results;
+    }
+
+    // Gradient through the activation, from the outputs of apply
+    @Benchmark
+    public double[] backward() {
+        function.backward(values, 0, results, 0, results.length);
+        return results;
+    }
+
+    @Benchmark
+    public double[] relu() {
+        for (int i = 0; i < values.length; i++) {
+            results[i] = Activation.relu(values[i]);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public double[] reluDerivative() {
+        for (int i = 0; i < values.length; i++) {
+            results[i] = Activation.reluDerivative(values[i]);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public double[] sigmoid() {
+        for (int i = 0; i < values.length; i++) {
+            results[i] = Activation.sigmoid(values[i]);
+        }
+        return results;
+    }
+
+    // Whole-array sigmoid through the ArrayOps backend in use (vectorized when available)
+    @Benchmark
+    public double[] sigmoidArray() {
+        System.arraycopy(values, 0, results, 0, values.length);
+        Config.ops().sigmoid(results, 0, results.length);
+        return results;
+    }
+
+    @Benchmark
+    public double[] derivativeSigmoid() {
+        for (int i = 0; i < values.length; i++) {
+            results[i] = Activation.derivativeSigmoid(values[i]);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public double[] tanh() {
+        for (int i = 0; i < values.length; i++) {
+            results[i] = Activation.tanh(values[i]);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.Config;
+import cnn.ConvLayer;
+import cnn.Tensor;
+
+// 16 kernels over a batch of 8 28x28 images or over a single 224x224 image
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// The 224x224 im2col buffers need a large heap, -p inputSize=28 skips those runs
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx4g"})
+public class ConvLayerBenchmark {
+    @Param({"28", "224"})
+    public int inputSize;
+
+    @Param({"3", "5", "7"})
+    public int kernelSize;
+
+    @Param({"1", "8", "32"})
+    public int channels;
+
+    // AUTO runs the 3x3 layers through Winograd
+    @Param({"DIRECT", "IM2COL", "AUTO", "FFT"})
+    public ConvLayer.Engine engine;
+
+    // Inner loops on the scalar or the Vector API backend (see Config.setVectorized)
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    private ConvLayer layer;
+    private Tensor input;
+    private Tensor gradient;
+
+    @Setup
+    public void setup() {
+        Config.setVectorized(vectorized);
+        this.layer = new ConvLayer(16, channels, kernelSize, kernelSize);
+        this.layer.setEngine(engine);
+        this.input = Inputs.gaussian(1, inputSize == 28 ? 8 : 1, channels, inputSize, inputSize);
+        this.layer.compile(this.input.shape());
+        Tensor output = this.layer.forward(this.input);
+        this.gradient = Inputs.gaussian(2, output.shape());
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.layer.forward(this.input);
+    }
+
+    // Runs on the activations of the setup forward pass, parameter gradients keep accumulating
+    @Benchmark
+    public Tensor backward() {
+        return this.layer.backward(this.gradient);
+    }
+}
@@ -0,0 +1,46 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.CNN;
+import cnn.ConvLayer;
+import cnn.PoolLayer;
+import cnn.Tensor;
+
+// Conv 16x5x5 followed by 2x2 max pooling on a batch of 8 images, as separate layers or fused by compile
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ConvPoolBenchmark {
+    @Param({"1", "8", "32"})
+    public int channels;
+
+    @Param({"28", "112"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean fusion;
+
+    private CNN network;
+    private Tensor input;
+
+    @Setup
+    public void setup() {
+        ConvLayer conv = new ConvLayer(16, channels, 5, 5);
+        conv.setEngine(ConvLayer.Engine.DIRECT);
+
+        this.network = new CNN();
+        this.network.addLayer(conv);
+        this.network.addLayer(new PoolLayer(2, 2));
+        this.network.setFusion(fusion);
+        this.input = Inputs.gaussian(1, 8, channels, size, size);
+        this.network.compile(this.input.shape());
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.network.forward(this.input);
+    }
+}
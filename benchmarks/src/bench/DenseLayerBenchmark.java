@@ -0,0 +1,46 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.DenseLayer;
+import cnn.Config;
+import cnn.Tensor;
+
+// Batch of 32 samples through a width x width fully connected layer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DenseLayerBenchmark {
+    @Param({"64", "256", "1024"})
+    public int width;
+
+    // Inner loops on the scalar or the Vector API backend (see Config.setVectorized)
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    private DenseLayer layer;
+    private Tensor input;
+    private Tensor gradient;
+
+    @Setup
+    public void setup() {
+        Config.setVectorized(vectorized);
+        this.layer = new DenseLayer(width);
+        this.input = Inputs.gaussian(1, 32, width);
+        this.layer.compile(this.input.shape());
+        Tensor output = this.layer.forward(this.input);
+        this.gradient = Inputs.gaussian(2, output.shape());
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.layer.forward(this.input);
+    }
+
+    @Benchmark
+    public Tensor backward() {
+        return this.layer.backward(this.gradient);
+    }
+}
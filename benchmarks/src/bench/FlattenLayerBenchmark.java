@@ -0,0 +1,36 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import cnn.FlattenLayer;
+import cnn.Tensor;
+
+// Flatten only builds views : this measures the per-call overhead of the layer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FlattenLayerBenchmark {
+    private FlattenLayer layer;
+    private Tensor[] inputs;
+    private Tensor gradient;
+    private int next;
+
+    @Setup
+    public void setup() {
+        this.layer = new FlattenLayer();
+        // Alternating between two inputs defeats the view cache of the layer
+        this.inputs = new Tensor[] {Inputs.gaussian(1, 32, 16, 5, 5), Inputs.gaussian(2, 32, 16, 5, 5)};
+        this.layer.compile(this.inputs[0].shape());
+        this.gradient = Inputs.gaussian(3, 32, 16 * 5 * 5);
+    }
+
+    @Benchmark
+    public void forwardBackward(Blackhole blackhole) {
+        this.next ^= 1;
+        blackhole.consume(this.layer.forward(this.inputs[this.next]));
+        blackhole.consume(this.layer.backward(this.gradient));
+    }
+}
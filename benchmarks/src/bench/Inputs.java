@@ -0,0 +1,19 @@
+package bench;
+import java.util.Random;
+import cnn.Tensor;
+
+// Deterministic random inputs shared by the benchmarks
+final class Inputs {
+    private Inputs() {
+    }
+
+    static Tensor gaussian(long seed, int... shape) {
+        Random rand = new Random(seed);
+        Tensor t = new Tensor(shape);
+        double[] data = t.data();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = rand.nextGaussian();
+        }
+        return t;
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.CNN;
+import cnn.ConvLayer;
+import cnn.DenseLayer;
+import cnn.FlattenLayer;
+import cnn.Tensor;
+
+// One training step (forward, backward and SGD update) of an MNIST-shaped network on a batch of 32 images :
+// 1x28x28 -> conv 8x5x5 stride 2 -> 8x12x12 -> conv 16x3x3 stride 2 -> 16x5x5 -> flatten -> dense 10
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class NetworkBenchmark {
+    @Param({"DIRECT", "IM2COL"})
+    public ConvLayer.Engine engine;
+
+    private CNN network;
+    private Tensor input;
+    private Tensor gradient;
+
+    @Setup
+    public void setup() {
+        ConvLayer first = new ConvLayer(8, 1, 5, 5);
+        first.setStride(2);
+        first.setEngine(engine);
+        ConvLayer second = new ConvLayer(16, 8, 3, 3);
+        second.setStride(2);
+        second.setEngine(engine);
+
+        this.network = new CNN();
+        this.network.addLayer(first);
+        this.network.addLayer(second);
+        this.network.addLayer(new FlattenLayer());
+        this.network.addLayer(new DenseLayer(10));
+
+        this.input = Inputs.gaussian(1, 32, 1, 28, 28);
+        int[] outputShape = this.network.compile(this.input.shape());
+        this.gradient = Inputs.gaussian(2, outputShape);
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.network.forward(this.input);
+    }
+
+    @Benchmark
+    public Tensor forwardBackward() {
+        this.network.forward(this.input);
+        return this.network.backward(this.gradient);
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.CNN;
+import cnn.ConvLayer;
+import cnn.DenseLayer;
+import cnn.FlattenLayer;
+import cnn.Pipeline;
+import cnn.Tensor;
+import cnn.TensorDataset;
+
+// One epoch over 256 MNIST-shaped images in batches of 32, trained by data parallel workers (stages = 1)
+// or by a pipeline of `stages` stages fed with 8 micro-batches per batch :
+// 1x28x28 -> conv 8x5x5 stride 2 -> conv 16x3x3 -> conv 16x3x3 -> flatten -> dense 64 -> dense 10
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PipelineBenchmark {
+    @Param({"1", "2", "4"})
+    public int stages;
+
+    @Param({"GPIPE", "ONE_F_ONE_B"})
+    public Pipeline.Schedule schedule;
+
+    private CNN network;
+    private TensorDataset dataset;
+
+    @Setup
+    public void setup() {
+        ConvLayer first = new ConvLayer(8, 1, 5, 5);
+        first.setStride(2);
+
+        this.network = new CNN();
+        this.network.addLayer(first);
+        this.network.addLayer(new ConvLayer(16, 8, 3, 3));
+        this.network.addLayer(new ConvLayer(16, 16, 3, 3));
+        this.network.addLayer(new FlattenLayer());
+        this.network.addLayer(new DenseLayer(64));
+        this.network.addLayer(new DenseLayer(10));
+        this.network.setPipeline(stages, 8, schedule);
+        this.network.setSeed(1);
+
+        Tensor inputs = Inputs.gaussian(1, 256, 1, 28, 28);
+        Tensor targets = Inputs.gaussian(2, 256, 10);
+        this.dataset = new TensorDataset(inputs, targets);
+    }
+
+    @Benchmark
+    public double[] epoch() {
+        return this.network.train(this.dataset, 1, 32);
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.PoolLayer;
+import cnn.Tensor;
+
+// 2x2 pooling (stride 2) of a batch of 8 24x24 feature maps
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PoolLayerBenchmark {
+    @Param({"8", "32"})
+    public int channels;
+
+    @Param({"MAX", "AVERAGE"})
+    public PoolLayer.Mode mode;
+
+    private PoolLayer layer;
+    private Tensor input;
+    private Tensor gradient;
+
+    @Setup
+    public void setup() {
+        this.layer = new PoolLayer(2, 2);
+        this.layer.setMode(mode);
+        this.input = Inputs.gaussian(1, 8, channels, 24, 24);
+        this.layer.compile(this.input.shape());
+        Tensor output = this.layer.forward(this.input);
+        this.gradient = Inputs.gaussian(2, output.shape());
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.layer.forward(this.input);
+    }
+
+    // Runs on the argmax of the setup forward pass
+    @Benchmark
+    public Tensor backward() {
+        return this.layer.backward(this.gradient);
+    }
+}
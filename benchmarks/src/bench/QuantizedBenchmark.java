@@ -0,0 +1,57 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.CNN;
+import cnn.Config;
+import cnn.ConvLayer;
+import cnn.DenseLayer;
+import cnn.FlattenLayer;
+import cnn.Quantizer;
+import cnn.Tensor;
+
+// predict on a batch of 32 samples with the double network and its int8 version (see Quantizer).
+// width x width dense layer : 1x28x28 -> conv 8x5x5 stride 2 -> conv 16x3x3 stride 2 -> flatten -> dense width -> dense 10
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class QuantizedBenchmark {
+    @Param({"64", "1024"})
+    public int width;
+
+    @Param({"double", "int8"})
+    public String precision;
+
+    @Param({"SCALAR", "VECTOR"})
+    public String backend;
+
+    private CNN network;
+    private Tensor input;
+
+    @Setup
+    public void setup() {
+        Config.setVectorized(backend.equals("VECTOR"));
+        ConvLayer first = new ConvLayer(8, 1, 5, 5);
+        first.setStride(2);
+        ConvLayer second = new ConvLayer(16, 8, 3, 3);
+        second.setStride(2);
+
+        CNN network = new CNN();
+        network.addLayer(first);
+        network.addLayer(second);
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(width));
+        network.addLayer(new DenseLayer(10));
+
+        this.input = Inputs.gaussian(1, 32, 1, 28, 28);
+        network.compile(this.input.shape());
+        this.network = precision.equals("int8") ? Quantizer.quantize(network, this.input) : network;
+    }
+
+    @Benchmark
+    public Tensor predict() {
+        return this.network.predict(this.input);
+    }
+}
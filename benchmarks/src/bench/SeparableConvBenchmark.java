@@ -0,0 +1,64 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.ConvLayer;
+import cnn.GroupedConvLayer;
+import cnn.Layer;
+import cnn.SeparableConvLayer;
+import cnn.Tensor;
+
+// MobileNet-style block : batch of 8 32x32 maps of `channels` channels into 64 maps through 3x3 kernels,
+// as one dense ConvLayer (engine picked by AUTO), a grouped convolution of 4 groups or a separable convolution
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SeparableConvBenchmark {
+    @Param({"32"})
+    public int channels;
+
+    @Param({"conv", "grouped", "separable"})
+    public String layout;
+
+    private Layer layer;
+    private Tensor input;
+    private Tensor gradient;
+
+    @Setup
+    public void setup() {
+        switch (layout) {
+            case "conv":
+                ConvLayer conv = new ConvLayer(64, channels, 3, 3);
+                conv.setPadding(1);
+                this.layer = conv;
+                break;
+            case "grouped":
+                GroupedConvLayer grouped = new GroupedConvLayer(64, channels, 3, 3, 4);
+                grouped.setPadding(1);
+                this.layer = grouped;
+                break;
+            default:
+                SeparableConvLayer separable = new SeparableConvLayer(64, channels, 3, 3);
+                separable.setPadding(1);
+                this.layer = separable;
+                break;
+        }
+
+        this.input = Inputs.gaussian(1, 8, channels, 32, 32);
+        this.layer.compile(this.input.shape());
+        Tensor output = this.layer.forward(this.input);
+        this.gradient = Inputs.gaussian(2, output.shape());
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.layer.forward(this.input);
+    }
+
+    @Benchmark
+    public Tensor backward() {
+        return this.layer.backward(this.gradient);
+    }
+}
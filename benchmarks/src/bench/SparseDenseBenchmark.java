@@ -0,0 +1,53 @@
+package bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import cnn.DenseLayer;
+import cnn.Layer;
+import cnn.Pruning;
+import cnn.SparseDenseLayer;
+import cnn.Tensor;
+
+// Batch of 32 samples through a width x width layer pruned to the given sparsity, run by the DenseLayer
+// (zeros included) or by its SparseDenseLayer (see Pruning)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SparseDenseBenchmark {
+    @Param({"1024"})
+    public int width;
+
+    @Param({"0.5", "0.9", "0.98"})
+    public double sparsity;
+
+    @Param({"dense", "sparse"})
+    public String layout;
+
+    private Layer layer;
+    private Tensor input;
+    private Tensor gradient;
+
+    @Setup
+    public void setup() {
+        DenseLayer dense = new DenseLayer(width, width);
+        Pruning.pruneToSparsity(dense, sparsity);
+        this.layer = layout.equals("sparse") ? new SparseDenseLayer(dense) : dense;
+
+        this.input = Inputs.gaussian(1, 32, width);
+        this.layer.compile(this.input.shape());
+        Tensor output = this.layer.forward(this.input);
+        this.gradient = Inputs.gaussian(2, output.shape());
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return this.layer.forward(this.input);
+    }
+
+    @Benchmark
+    public Tensor backward() {
+        return this.layer.backward(this.gradient);
+    }
+}
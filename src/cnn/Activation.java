@@ -1,5 +1,198 @@
 package cnn;
-public class Activation {
+
+// Activation functions of the Dense and Conv layers (see setActivation), applied in place to a range of a buffer
+// through the ArrayOps backend in use. Derivatives are taken from the output y = f(x), which is what the layers keep.
+// Custom activations extend this class, they can be trained and used but not saved (see ModelFile).
+// The FAST_ functions replace Math.exp by a polynomial (see fastExp) and stay within maxError() of the exact ones :
+// CNN.setFastInference swaps them in for predict, where the last digits do not matter
+public abstract class Activation {
+    public static final Activation IDENTITY = new Activation("identity") {
+        public void apply(double[] x, int offset, int length, double bias) {
+            addBias(x, offset, length, bias);
+        }
+
+        public double derivative(double y) {
+            return 1.0;
+        }
+
+        public void backward(double[] y, int yOffset, double[] gradient, int gradientOffset, int length) {
+        }
+
+        public boolean isMonotonic() {
+            return true;
+        }
+    };
+
+    public static final Activation RELU = new Activation("relu") {
+        public void apply(double[] x, int offset, int length, double bias) {
+            Config.ops().biasRelu(x, offset, length, bias);
+        }
+
+        // Also the derivative at the input : y > 0 exactly where x > 0
+        public double derivative(double y) {
+            return reluDerivative(y);
+        }
+
+        public boolean isMonotonic() {
+            return true;
+        }
+    };
+
+    public static final Activation FAST_SIGMOID = new Activation("fast sigmoid") {
+        public void apply(double[] x, int offset, int length, double bias) {
+            addBias(x, offset, length, bias);
+            Config.ops().fastSigmoid(x, offset, length);
+        }
+
+        public double derivative(double y) {
+            return derivativeSigmoid(y);
+        }
+
+        public double maxError() {
+            return FAST_SIGMOID_ERROR;
+        }
+
+        public boolean isMonotonic() {
+            return true;
+        }
+    };
+
+    public static final Activation SIGMOID = new Activation("sigmoid") {
+        public void apply(double[] x, int offset, int length, double bias) {
+            addBias(x, offset, length, bias);
+            Config.ops().sigmoid(x, offset, length);
+        }
+
+        public double derivative(double y) {
+            return derivativeSigmoid(y);
+        }
+
+        public Activation approximation() {
+            return FAST_SIGMOID;
+        }
+
+        public boolean isMonotonic() {
+            return true;
+        }
+    };
+
+    public static final Activation FAST_TANH = new Activation("fast tanh") {
+        public void apply(double[] x, int offset, int length, double bias) {
+            addBias(x, offset, length, bias);
+            Config.ops().fastTanh(x, offset, length);
+        }
+
+        public double derivative(double y) {
+            return derivativeTanh(y);
+        }
+
+        public double maxError() {
+            return 2 * FAST_SIGMOID_ERROR;
+        }
+
+        public boolean isMonotonic() {
+            return true;
+        }
+    };
+
+    public static final Activation TANH = new Activation("tanh") {
+        public void apply(double[] x, int offset, int length, double bias) {
+            addBias(x, offset, length, bias);
+            Config.ops().tanh(x, offset, length);
+        }
+
+        public double derivative(double y) {
+            return derivativeTanh(y);
+        }
+
+        public Activation approximation() {
+            return FAST_TANH;
+        }
+
+        public boolean isMonotonic() {
+            return true;
+        }
+    };
+
+    // The index is the code saved in model files (see ModelFile) : new activations go at the end
+    private static final Activation[] SAVED = {IDENTITY, RELU, SIGMOID, TANH, FAST_SIGMOID, FAST_TANH};
+
+    // fastExp is within 1.7e-7 of exp(x) relatively, which moves the sigmoid by at most a quarter of it
+    private static final double FAST_SIGMOID_ERROR = 5e-8;
+
+    static final double LOG2E = 1.4426950408889634;
+    static final double LN2 = 0.6931471805599453;
+    // Arguments of fastExp are clamped to this range, where 2^k stays a normal double
+    static final double FAST_EXP_LIMIT = 700.0;
+    // Adding 1.5 * 2^52 rounds to an integer k held in the low bits of the sum : (bits - EXPONENT_BIAS) << 52 is 2^k
+    static final double ROUNDING = 0x1.8p52;
+    static final long EXPONENT_BIAS = Double.doubleToRawLongBits(ROUNDING) - 1023;
+
+    private final String name;
+
+    protected Activation(String name) {
+        this.name = name;
+    }
+
+    // x[i] = f(x[i] + bias) over length elements
+    public abstract void apply(double[] x, int offset, int length, double bias);
+
+    public void apply(double[] x, int offset, int length) {
+        apply(x, offset, length, 0.0);
+    }
+
+    // f'(x) for the x with f(x) = y
+    public abstract double derivative(double y);
+
+    // gradient[i] *= f'(x) with f(x) = y[i] : turns the gradient of the outputs into the gradient of the inputs
+    public void backward(double[] y, int yOffset, double[] gradient, int gradientOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            gradient[gradientOffset + i] *= derivative(y[yOffset + i]);
+        }
+    }
+
+    // Largest difference with the exact function, 0 for exact functions
+    public double maxError() {
+        return 0.0;
+    }
+
+    // Faster function within maxError() of this one, or this one when there is none
+    public Activation approximation() {
+        return this;
+    }
+
+    // a <= b implies f(a) <= f(b) : the function commutes with a max (see ConvLayer.forwardPooled)
+    public boolean isMonotonic() {
+        return false;
+    }
+
+    public String toString() {
+        return this.name;
+    }
+
+    // Code saved in model files
+    static int code(Activation activation) {
+        for (int code = 0; code < SAVED.length; code++) {
+            if (SAVED[code] == activation) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("Activation " + activation + " cannot be saved");
+    }
+
+    // null for unknown codes
+    static Activation forCode(int code) {
+        return code >= 0 && code < SAVED.length ? SAVED[code] : null;
+    }
+
+    protected static void addBias(double[] x, int offset, int length, double bias) {
+        if (bias != 0.0) {
+            for (int i = offset; i < offset + length; i++) {
+                x[i] += bias;
+            }
+        }
+    }
+
     public static double sigmoid(double x) {
         return 1.0 / (1.0 + Math.exp(-x));
     }
@@ -23,4 +216,24 @@ public class Activation {
     public static double derivativeTanh(double y) {
         return 1 - y * y;
     }
+
+    // exp(x) = 2^k * exp(r) with k = round(x / ln 2) and |r| <= ln 2 / 2, exp(r) by its degree 6 Taylor polynomial.
+    // Relative error below 1.7e-7 (the first dropped term, r^7 / 7!, times e^r) for |x| <= FAST_EXP_LIMIT.
+    // No call, no double to long conversion and no Math.min / max : about 1.5x faster than Math.exp
+    public static double fastExp(double x) {
+        double t = (x < -FAST_EXP_LIMIT ? -FAST_EXP_LIMIT : x > FAST_EXP_LIMIT ? FAST_EXP_LIMIT : x) * LOG2E;
+        double shifted = t + ROUNDING;
+        double r = (t - (shifted - ROUNDING)) * LN2;
+        double p = 1.0 + r * (1.0 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720))))));
+        return p * Double.longBitsToDouble((Double.doubleToRawLongBits(shifted) - EXPONENT_BIAS) << 52);
+    }
+
+    public static double fastSigmoid(double x) {
+        return 1.0 / (1.0 + fastExp(-x));
+    }
+
+    // tanh(x) = 2 sigmoid(2x) - 1
+    public static double fastTanh(double x) {
+        return 2.0 / (1.0 + fastExp(-2 * x)) - 1.0;
+    }
 }
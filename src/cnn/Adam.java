@@ -0,0 +1,59 @@
+package cnn;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Adam : per-value step sizes from bias-corrected running averages of the gradient and its square
+public class Adam implements Optimizer {
+    private final double learningRate;
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+
+    // First and second moment of every parameter, stored as [m0, v0, m1, v1, ...]
+    private final Map<Parameter, double[]> moments;
+    private int steps;
+
+    public Adam(double learningRate) {
+        this(learningRate, 0.9, 0.999, 1e-8);
+    }
+
+    public Adam(double learningRate, double beta1, double beta2, double epsilon) {
+        this.learningRate = learningRate;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.moments = new IdentityHashMap<>();
+        this.steps = 0;
+    }
+
+    public void step(List<Parameter> parameters) {
+        this.steps++;
+        double correction1 = 1.0 - Math.pow(this.beta1, this.steps);
+        double correction2 = 1.0 - Math.pow(this.beta2, this.steps);
+        double stepSize = this.learningRate / correction1;
+
+        for (int p = 0; p < parameters.size(); p++) {
+            Parameter parameter = parameters.get(p);
+            double[] value = parameter.value.data();
+            double[] gradient = parameter.gradient.data();
+            double[] state = this.moments.get(parameter);
+            if (state == null) {
+                state = new double[2 * gradient.length];
+                this.moments.put(parameter, state);
+            }
+            int v0 = parameter.value.offset();
+
+            for (int i = 0; i < gradient.length; i++) {
+                double g = gradient[i];
+                double m = this.beta1 * state[2 * i] + (1 - this.beta1) * g;
+                double v = this.beta2 * state[2 * i + 1] + (1 - this.beta2) * g * g;
+                state[2 * i] = m;
+                state[2 * i + 1] = v;
+                value[v0 + i] -= stepSize * m / (Math.sqrt(v / correction2) + this.epsilon);
+                gradient[i] = 0.0;
+            }
+            parameter.value.markModified();
+        }
+    }
+}
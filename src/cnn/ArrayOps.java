@@ -0,0 +1,32 @@
+package cnn;
+
+// Array kernels shared by the layers' inner loops. Two backends exist : plain scalar loops and
+// the Java Vector API (jdk.incubator.vector), selected through Config.setVectorized.
+// Both visit the elements in a fixed order, so results do not depend on the thread count,
+// but the two backends round differently and are only equal up to floating point error
+public interface ArrayOps {
+    // Sum of a[i] * b[i] over length elements
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    // Same over int8 values, accumulated in an int (see Quantizer). Exact in both backends as long as
+    // length * 128 * 128 stays below 2^31
+    int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+    // y[i] += alpha * x[i]
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    // x[i] = relu(x[i] + bias)
+    void biasRelu(double[] x, int offset, int length, double bias);
+
+    // x[i] = sigmoid(x[i])
+    void sigmoid(double[] x, int offset, int length);
+
+    // x[i] = tanh(x[i])
+    void tanh(double[] x, int offset, int length);
+
+    // x[i] = Activation.fastSigmoid(x[i]), the same polynomial in both backends
+    void fastSigmoid(double[] x, int offset, int length);
+
+    // x[i] = Activation.fastTanh(x[i])
+    void fastTanh(double[] x, int offset, int length);
+}
@@ -1,50 +1,571 @@
 package cnn;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 public class CNN {
     private List<Layer> layers;
     private boolean verbose;
 
-    // TODO implement "predict" and "train" methods
-    // Current implementation is made for testing the different layers and structure of the network
+    // Number of threads a training batch is sharded across (0 = Config.threads())
+    private int workers;
+
+    // Background batch loading during training (see Prefetcher)
+    private int loaderThreads;
+    private int prefetchDepth;
+    private Random random;
+
+    private Optimizer optimizer;
+    private List<Parameter> parameters;
+
+    // Execution plan built by compile : the layers in order, each one sized for the shape it receives,
+    // with supported Conv -> Pool pairs fused into a single step when fusion is on (see ConvPoolLayer)
+    private Layer[] plan;
+    private boolean fusion;
+    private int[] inputShape;
+    private int[] outputShape;
+
+    // One inference replica per calling thread for predict, dropped whenever the network is rebuilt
+    private volatile ThreadLocal<CNN> predictors;
+    private boolean inference;
+    // predict runs the approximation of every activation (see Activation.approximation)
+    private boolean fastInference;
+
+    // Gradient checkpointing (see setCheckpointing) : steps of the plan per segment, 0 when off
+    private int checkpointInterval;
+    // Input of every segment of the last forward pass, the only activations kept between forward and backward
+    private Tensor[] checkpoints;
+
+    // Pipeline-parallel training (see setPipeline), off with a single stage
+    private int pipelineStages;
+    private int microBatches;
+    private Pipeline.Schedule schedule;
+
+    // Observers of every layer call (see Metrics), shared with the replicas
+    private LayerListener[] listeners;
+
+    // Per-worker training workspaces (used on replicas)
+    private final Map<Tensor, Tensor[]> shards;
+    private Tensor shardInputs;
+    private Tensor shardTargets;
+    private Tensor lossGradient;
+
+    // Values per task when summing the worker gradients
+    private static final int REDUCE_STRIPE = 4096;
+
+    // checkpointInterval picking segments of about sqrt(steps) steps
+    private static final int AUTO_CHECKPOINTS = -1;
+
     public CNN() {
         this.verbose = false;
         this.layers = new ArrayList<>();
+        this.workers = 0;
+        this.random = new Random();
+        this.optimizer = new SGD(0.1);
+        this.listeners = new LayerListener[0];
+        this.shards = new IdentityHashMap<>();
+        this.loaderThreads = 1;
+        this.prefetchDepth = 2;
+        this.fusion = true;
+        this.pipelineStages = 1;
+        this.microBatches = 1;
+        this.schedule = Pipeline.Schedule.ONE_F_ONE_B;
     }
 
     public void addLayer(Layer layer) {
         this.layers.add(layer);
+        this.parameters = null;
+        this.plan = null;
+        this.predictors = null;
     }
 
-    public double[][][] forward(double[][][] input) {
+    // Propagates inputShape ([N][channel][height][width]) through every layer : shapes are validated,
+    // Dense input sizes are inferred and every workspace is allocated for batches of N samples.
+    // Returns the output shape. Throws IllegalArgumentException naming the first layer that rejects its input
+    public int[] compile(int... inputShape) {
+        Layer[] layers = this.layers.toArray(new Layer[0]);
+        List<Layer> plan = new ArrayList<>();
+        int[] shape = inputShape.clone();
+
+        for (int i = 0; i < layers.length; i++) {
+            int[] layerInput = shape;
+            Layer step = layers[i];
+            try {
+                step = fuse(layers, i, layerInput);
+                shape = step.compile(layerInput);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Layer " + i + " (" + step.type + ") : " + e.getMessage(), e);
+            }
+
+            if (this.verbose) {
+                System.out.println("[NETWORK] Layer " + i + " (" + step.type + ") " + Arrays.toString(layerInput) + " -> " + Arrays.toString(shape));
+            }
+            plan.add(step);
+            if (step != layers[i]) {
+                i++;
+            }
+        }
+
+        this.plan = plan.toArray(new Layer[0]);
+        this.checkpoints = null;
+        this.inputShape = inputShape.clone();
+        this.outputShape = shape;
+        this.parameters = null;
+        this.predictors = null;
+        return shape.clone();
+    }
+
+    // Fusion : when fusion is on and layers i and i + 1 are a Conv -> Pool pair ConvPoolLayer supports on
+    // inputShape, the step covering both, else layer i. The pair is only compiled as one step, so the conv never
+    // sizes the full-resolution buffers the fused step does not use.
+    // Listeners see the steps of the plan, so a fused pair is reported once, under the index of its step
+    private Layer fuse(Layer[] layers, int i, int[] inputShape) {
+        if (!this.fusion || i + 1 >= layers.length || !ConvPoolLayer.canFuse(layers[i], layers[i + 1], inputShape)) {
+            return layers[i];
+        }
         if (this.verbose) {
-            System.out.println("[NETWORK] Initiating forward pass through " + this.layers.size() + " layers");
+            System.out.println("[NETWORK] Layers " + i + " and " + (i + 1) + " fused into " + Layer.Type.CONV_POOL);
         }
+        return new ConvPoolLayer((ConvLayer) layers[i], (PoolLayer) layers[i + 1]);
+    }
 
-        double[][][] output = input;
-        for (Layer layer : layers) {
-            if (layer.type == Layer.Type.DENSE && output[0][0].length != ((DenseLayer) layer).previousLayerSize) {
-                if (Config.verbose()) {
-                    System.out.println("[WARNING] Adjusting Dense layer input size from " + ((DenseLayer) layer).previousLayerSize + " to " + output[0][0].length);
+    // Thread-safe forward pass for serving : any number of threads may call it on the same network.
+    // Each thread runs its own replica of the compiled network (shared weights, private buffers) that
+    // keeps no backpropagation state. The weights are read without locking, so the network must not be
+    // trained or rebuilt while predictions are running. Returns a tensor owned by the caller
+    public Tensor predict(Tensor input) {
+        ThreadLocal<CNN> predictors = this.predictors;
+        if (predictors == null) {
+            if (this.plan == null) {
+                throw new IllegalStateException("The network must be compiled before predict is called.");
+            }
+            predictors = ThreadLocal.withInitial(this::inferenceReplica);
+            this.predictors = predictors;
+        }
+        return predictors.get().forward(input).copy();
+    }
+
+    private CNN inferenceReplica() {
+        CNN replica = replicate();
+        replica.inference = true;
+        for (Layer layer : replica.layers) {
+            layer.inference = true;
+            if (this.fastInference) {
+                layer.approximateActivations();
+            }
+        }
+        if (this.fastInference && this.plan != null) {
+            replica.compile(this.inputShape);
+        }
+        return replica;
+    }
+
+    // input is a batch of samples laid out as [N][channel][height][width].
+    // The network is compiled on the first call and again whenever the sample shape changes
+    public Tensor forward(Tensor input) {
+        if (this.plan == null || !isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        if (this.verbose) {
+            System.out.println("[NETWORK] Initiating forward pass through " + this.plan.length + " layers");
+        }
+
+        if (this.checkpointInterval != 0 && !this.inference) {
+            return checkpointedForward(input);
+        }
+        return forward(0, this.plan.length, input);
+    }
+
+    // Steps [from, to) of the plan
+    Tensor forward(int from, int to, Tensor input) {
+        return forward(from, to, input, false);
+    }
+
+    // Same, reported to the listeners as a recomputation when checkpointing runs a segment again
+    private Tensor forward(int from, int to, Tensor input, boolean recompute) {
+        if (this.listeners.length > 0) {
+            return observedForward(from, to, input, recompute);
+        }
+
+        Tensor output = input;
+        for (int i = from; i < to; i++) {
+            output = this.plan[i].forward(output);
+        }
+        return output;
+    }
+
+    // Same loop, timing every layer call and reporting it to the listeners
+    private Tensor observedForward(int from, int to, Tensor input, boolean recompute) {
+        Tensor output = input;
+        for (int i = from; i < to; i++) {
+            Tensor layerInput = output;
+            long bytes = Metrics.allocatedBytes();
+            long start = System.nanoTime();
+            output = this.plan[i].forward(layerInput);
+            long nanos = System.nanoTime() - start;
+            bytes = bytes < 0 ? -1 : Metrics.allocatedBytes() - bytes;
+
+            for (LayerListener listener : this.listeners) {
+                if (recompute) {
+                    listener.recompute(i, this.plan[i], layerInput, output, nanos, bytes);
+                } else {
+                    listener.forward(i, this.plan[i], layerInput, output, nanos, bytes);
                 }
-                ((DenseLayer) layer).init(output[0][0].length);
             }
+        }
+        return output;
+    }
+
+    public void addListener(LayerListener listener) {
+        LayerListener[] listeners = Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        this.listeners = listeners;
+        this.predictors = null;
+    }
+
+    public void removeListener(LayerListener listener) {
+        List<LayerListener> listeners = new ArrayList<>(Arrays.asList(this.listeners));
+        listeners.remove(listener);
+        this.listeners = listeners.toArray(new LayerListener[0]);
+        this.predictors = null;
+    }
+
+    // The plan is cut into segments : the input of every segment is copied into a checkpoint, and the layers
+    // of every segment but the last release their buffers once it has run. Backward runs each segment forward
+    // again from its checkpoint before going back through it (see propagate)
+    private Tensor checkpointedForward(Tensor input) {
+        int length = segmentLength();
+        int segments = (this.plan.length + length - 1) / length;
+        if (this.checkpoints == null || this.checkpoints.length != segments) {
+            this.checkpoints = new Tensor[segments];
+        }
+
+        // The first segment reads the caller's input, which the first layer keeps anyway
+        this.checkpoints[0] = input;
+        Tensor output = input;
+        for (int s = 0; s < segments; s++) {
+            int from = s * length;
+            int to = Math.min(this.plan.length, from + length);
+            output = forward(from, to, this.checkpoints[s]);
+
+            if (s + 1 < segments) {
+                this.checkpoints[s + 1] = Tensor.reuse(this.checkpoints[s + 1], output);
+                output.copyTo(this.checkpoints[s + 1]);
+                release(from, to);
+            }
+        }
+        return output;
+    }
+
+    // Steps per segment : segments of sqrt(steps) steps keep about 2 sqrt(steps) activations alive instead of steps
+    private int segmentLength() {
+        if (this.checkpointInterval > 0) {
+            return Math.min(this.checkpointInterval, this.plan.length);
+        }
+        return Math.max(1, (int) Math.round(Math.sqrt(this.plan.length)));
+    }
+
+    private void release(int from, int to) {
+        for (int i = from; i < to; i++) {
+            this.plan[i].release();
+        }
+    }
+
+    // Same sample shape as the compiled one, the batch size may differ
+    private boolean isCompiledFor(Tensor input) {
+        if (input.rank() != this.inputShape.length) {
+            return false;
+        }
+        for (int d = 1; d < this.inputShape.length; d++) {
+            if (input.shape(d) != this.inputShape[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Shape the network was last compiled for, null before compile
+    public int[] getInputShape() {
+        return this.inputShape == null ? null : this.inputShape.clone();
+    }
+
+    public int[] getOutputShape() {
+        return this.outputShape == null ? null : this.outputShape.clone();
+    }
+
+    // gradient holds dLoss/dOutput for every sample of the last forward batch
+    public Tensor backward(Tensor gradient) {
+        Tensor output = propagate(gradient);
+        step();
+        return output;
+    }
 
-            output = layer.forward(output);
+    // Backward pass only : parameter gradients are accumulated, weights are left untouched
+    private Tensor propagate(Tensor gradient) {
+        if (this.plan == null) {
+            throw new IllegalStateException("A forward pass must run before the backward pass.");
+        }
+        if (this.inference) {
+            throw new IllegalStateException("Inference replicas cannot run a backward pass.");
+        }
+        if (this.checkpoints != null && this.checkpointInterval != 0) {
+            return checkpointedBackward(gradient);
+        }
+        return backward(0, this.plan.length, gradient);
+    }
+
+    // Segments from last to first : each one but the last is run forward again from its checkpoint, which
+    // gives back the exact activations, then backward through it. Every segment releases its buffers afterwards,
+    // so only one segment holds activations at any time
+    private Tensor checkpointedBackward(Tensor gradient) {
+        int length = segmentLength();
+        int segments = this.checkpoints.length;
+        Tensor output = gradient;
+
+        for (int s = segments - 1; s >= 0; s--) {
+            int from = s * length;
+            int to = Math.min(this.plan.length, from + length);
+            if (s + 1 < segments) {
+                forward(from, to, this.checkpoints[s], true);
+            }
+            output = backward(from, to, output);
+            release(from, to);
         }
         return output;
     }
 
-    public double[][][] backward(double[][][] gradient) {
-        double[][][] output = gradient;
+    // Steps [to - 1, from] of the plan, in that order
+    Tensor backward(int from, int to, Tensor gradient) {
+        Tensor output = gradient;
+
+        if (this.listeners.length > 0) {
+            for (int i = to - 1; i >= from; i--) {
+                Tensor layerGradient = output;
+                long bytes = Metrics.allocatedBytes();
+                long start = System.nanoTime();
+                output = this.plan[i].backward(layerGradient);
+                long nanos = System.nanoTime() - start;
+                bytes = bytes < 0 ? -1 : Metrics.allocatedBytes() - bytes;
+
+                for (LayerListener listener : this.listeners) {
+                    listener.backward(i, this.plan[i], layerGradient, output, nanos, bytes);
+                }
+            }
+            return output;
+        }
 
-        for (int i = layers.size() - 1; i >= 0; i--) {
-            output = layers.get(i).backward(output, 0.1);
+        for (int i = to - 1; i >= from; i--) {
+            output = this.plan[i].backward(output);
         }
         return output;
     }
 
+    // Optimizer step on the accumulated gradients, which are cleared afterwards
+    private void step() {
+        this.optimizer.step(parameters());
+    }
+
+    public List<Parameter> parameters() {
+        if (this.parameters == null) {
+            List<Parameter> parameters = new ArrayList<>();
+            for (Layer layer : layers) {
+                parameters.addAll(layer.parameters());
+            }
+            this.parameters = List.copyOf(parameters);
+        }
+        return this.parameters;
+    }
+
+    // Mini-batch training on the mean squared error, returns the mean loss of every epoch.
+    // Each batch is split into contiguous shards, one per worker. Every worker runs forward and backward
+    // on its own replica of the network (own activation caches and gradient buffers, shared weights),
+    // the worker gradients are then summed into this network and a single update is applied.
+    // Batches are decoded ahead of time by a Prefetcher into recycled buffers, and shard views are kept
+    // per buffer, so steady-state batches allocate nothing and never wait on I/O if the loaders keep up
+    public double[] train(Dataset dataset, int epochs, int batchSize) {
+        int samples = dataset.size();
+
+        // Size every layer before the weights get shared with the workers
+        compile(batchShape(batchSize, dataset.inputShape()));
+
+        // Either data parallel workers or the stages of a pipeline
+        List<CNN> replicas = new ArrayList<>();
+        int workerCount = this.workers > 0 ? this.workers : Config.threads();
+        for (int w = 0; this.pipelineStages == 1 && w < Math.min(workerCount, batchSize); w++) {
+            replicas.add(replicate());
+        }
+        double[] shardLosses = new double[replicas.size()];
+        Pipeline pipeline = this.pipelineStages > 1 ? new Pipeline(this, this.pipelineStages, this.microBatches, this.schedule, batchSize) : null;
+
+        int[] order = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            order[i] = i;
+        }
+
+        double[] losses = new double[epochs];
+        try (Prefetcher loader = new Prefetcher(dataset, batchSize, this.loaderThreads, this.prefetchDepth);
+             Pipeline stages = pipeline) {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                shuffle(order);
+                loader.start(order);
+                double epochLoss = 0.0;
+
+                for (Prefetcher.Batch batch = loader.next(); batch != null; batch = loader.next()) {
+                    if (stages != null) {
+                        epochLoss += stages.trainBatch(batch.inputs, batch.targets, batch.count) * batch.count;
+                        step();
+                    } else {
+                        epochLoss += trainBatch(replicas, batch.inputs, batch.targets, batch.count, shardLosses) * batch.count;
+                    }
+                    loader.release(batch);
+                }
+
+                losses[epoch] = epochLoss / samples;
+                if (this.verbose) {
+                    System.out.println("[NETWORK] Epoch " + (epoch + 1) + "/" + epochs + " loss = " + losses[epoch]);
+                }
+            }
+        }
+        return losses;
+    }
+
+    // Train on the first `batch` samples of inputs / targets
+    private double trainBatch(List<CNN> replicas, Tensor inputs, Tensor targets, int batch, double[] shardLosses) {
+        int shards = Math.min(replicas.size(), batch);
+
+        Parallel.forEach(shards, w -> {
+            int from = w * batch / shards;
+            int to = (w + 1) * batch / shards;
+            CNN replica = replicas.get(w);
+            replica.selectShard(inputs, targets, from, to - from);
+
+            Tensor output = replica.forward(replica.shardInputs);
+            replica.lossGradient = Tensor.reuse(replica.lossGradient, output);
+            shardLosses[w] = Loss.meanSquaredError(output, replica.shardTargets, replica.lossGradient, batch);
+            replica.propagate(replica.lossGradient);
+        });
+
+        reduceGradients(replicas, shards);
+        step();
+
+        double loss = 0.0;
+        for (int w = 0; w < shards; w++) {
+            loss += shardLosses[w];
+        }
+        return loss;
+    }
+
+    // Views over samples [from, from + count) of the batch, kept per batch buffer while the shard boundaries do not change
+    private void selectShard(Tensor inputs, Tensor targets, int from, int count) {
+        Tensor[] views = this.shards.get(inputs);
+        if (views == null || views[0].shape(0) != count || views[0].offset() != inputs.offset() + from * inputs.stride(0)) {
+            views = new Tensor[] {inputs.narrow(from, count), targets.narrow(from, count)};
+            this.shards.put(inputs, views);
+        }
+        this.shardInputs = views[0];
+        this.shardTargets = views[1];
+    }
+
+    // Sum the gradients of the first `workers` replicas into this network's gradients (and clear them).
+    // Parameters are cut into stripes reduced in parallel, workers are always added in the same order
+    void reduceGradients(List<CNN> replicas, int workers) {
+        List<Parameter> parameters = parameters();
+
+        for (int p = 0; p < parameters.size(); p++) {
+            double[] total = parameters.get(p).gradient.data();
+            int index = p;
+
+            Parallel.forEach(Parallel.tiles(total.length, REDUCE_STRIPE), stripe -> {
+                int from = stripe * REDUCE_STRIPE;
+                int to = Math.min(total.length, from + REDUCE_STRIPE);
+
+                for (int w = 0; w < workers; w++) {
+                    double[] partial = replicas.get(w).parameters().get(index).gradient.data();
+                    for (int i = from; i < to; i++) {
+                        total[i] += partial[i];
+                        partial[i] = 0.0;
+                    }
+                }
+            });
+        }
+    }
+
+    // Network sharing this network's weights, with its own layer state
+    private CNN replicate() {
+        return replicate(this.inputShape);
+    }
+
+    // Same, compiled for inputShape when this network is compiled
+    CNN replicate(int[] inputShape) {
+        CNN replica = new CNN();
+        for (Layer layer : this.layers) {
+            replica.addLayer(layer.replicate());
+        }
+        // Everything that shapes the plan, so the replica runs the same steps
+        replica.fusion = this.fusion;
+        replica.listeners = this.listeners;
+        replica.checkpointInterval = this.checkpointInterval;
+        if (this.plan != null) {
+            replica.compile(inputShape);
+        }
+        return replica;
+    }
+
+    // Steps of the compiled plan (see Pipeline)
+    int steps() {
+        return this.plan.length;
+    }
+
+    Layer step(int index) {
+        return this.plan[index];
+    }
+
+    static int[] batchShape(int batchSize, int[] sampleShape) {
+        int[] shape = new int[sampleShape.length + 1];
+        shape[0] = batchSize;
+        System.arraycopy(sampleShape, 0, shape, 1, sampleShape.length);
+        return shape;
+    }
+
+    private void shuffle(int[] order) {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+    }
+
+    List<Layer> layers() {
+        return this.layers;
+    }
+
+    // Swaps layer `index` for `layer` (see Pruning) : the network has to be compiled again
+    void replaceLayer(int index, Layer layer) {
+        this.layers.set(index, layer);
+        this.parameters = null;
+        this.plan = null;
+        this.predictors = null;
+    }
+
+    // See ModelFile
+    public void save(Path path) throws IOException {
+        ModelFile.save(this, path);
+    }
+
+    public static CNN load(Path path) throws IOException {
+        return ModelFile.load(path);
+    }
+
+    public static CNN map(Path path) throws IOException {
+        return ModelFile.map(path);
+    }
+
     public void listLayers() {
         for (Layer l : this.layers) {
             switch (l.type) {
@@ -59,9 +580,13 @@ public class CNN {
                 case Layer.Type.POOLING:
                     System.out.println("Pooling layer");
                     break;
+
+                case Layer.Type.FLATTEN:
+                    System.out.println("Flatten layer");
+                    break;
             
                 default:
-                    System.out.println("[ERROR] Unrecognised layer");
+                    System.out.println(l.getClass().getSimpleName());
                     break;
             }
         }
@@ -70,4 +595,71 @@ public class CNN {
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
     }
+
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    // Operator fusion in compile, on by default. Only Conv -> max pool pairs are fused (see ConvPoolLayer), and
+    // only when the conv runs the direct loops : a 3x3 stride 1 conv left on Engine.AUTO runs Winograd and is not
+    // fused. Training replicas, predict and pipeline stages follow the setting
+    public void setFusion(boolean fusion) {
+        this.fusion = fusion;
+        this.plan = null;
+        this.predictors = null;
+    }
+
+    // Fast activations in predict, off by default : outputs move by at most the maxError() of the approximations
+    // the layers use, scaled by the layers that follow. Training and forward keep the exact functions
+    public void setFastInference(boolean fastInference) {
+        this.fastInference = fastInference;
+        this.predictors = null;
+    }
+
+    // Gradient checkpointing, off by default : training keeps the activations of a few steps of the plan only
+    // and computes the others again during backward, about one more forward pass per batch for activation memory
+    // growing with the square root of the depth. Segments are about sqrt(steps) steps long, see setCheckpointInterval
+    public void setCheckpointing(boolean checkpointing) {
+        this.checkpointInterval = checkpointing ? AUTO_CHECKPOINTS : 0;
+        this.checkpoints = null;
+    }
+
+    // Checkpointing with segments of `interval` steps (fused pairs count as one step), 0 turns it off
+    public void setCheckpointInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive, got " + interval);
+        }
+        this.checkpointInterval = interval;
+        this.checkpoints = null;
+    }
+
+    // Pipeline-parallel training, off by default (1 stage) : the plan is cut into `stages` parts of about the same
+    // cost, each one run by its own thread, and every batch into `microBatches` micro-batches flowing through them
+    // (see Pipeline). Replaces the data parallel workers of setWorkers; the update is the one of the whole batch
+    public void setPipeline(int stages, int microBatches) {
+        setPipeline(stages, microBatches, Pipeline.Schedule.ONE_F_ONE_B);
+    }
+
+    public void setPipeline(int stages, int microBatches, Pipeline.Schedule schedule) {
+        if (stages < 1 || microBatches < 1) {
+            throw new IllegalArgumentException("Stages and micro-batches must be at least 1, got " + stages + " and " + microBatches);
+        }
+        this.pipelineStages = stages;
+        this.microBatches = microBatches;
+        this.schedule = schedule;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    // Loader threads decoding training batches, and batches each of them prepares ahead
+    public void setPrefetch(int threads, int depth) {
+        this.loaderThreads = threads;
+        this.prefetchDepth = depth;
+    }
+
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
 }
@@ -1,16 +1,79 @@
 package cnn;
+import java.util.concurrent.ForkJoinPool;
+
 public final class Config {
-    private static boolean verbose;
+    // Worker pool used by the layers to split their work (see Parallel)
+    private static int threads = Runtime.getRuntime().availableProcessors();
+    private static volatile ForkJoinPool pool;
+
+    // Array kernels of the inner loops (see ArrayOps), vectorized whenever the Vector API is available
+    private static final ArrayOps SCALAR_OPS = new ScalarOps();
+    private static final ArrayOps VECTOR_OPS = loadVectorOps();
+    private static volatile ArrayOps ops = VECTOR_OPS != null ? VECTOR_OPS : SCALAR_OPS;
 
     private Config () {
-        verbose = false;
     }
 
-    static public boolean verbose() {
-        return verbose;
+    static public int threads() {
+        return threads;
+    }
+
+    // Results do not depend on the thread count, only the speed does. Safe while work is running : the new pool
+    // is in place before the old one is shut down, tasks already in the old pool finish there, and a caller that
+    // looked the old pool up just before the swap retries on the new one (see Parallel)
+    static public synchronized void setThreads(int new_value) {
+        if (new_value < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        threads = new_value;
+        ForkJoinPool old = pool;
+        if (old != null) {
+            pool = new ForkJoinPool(new_value);
+            old.shutdown();
+        }
+    }
+
+    static public ArrayOps ops() {
+        return ops;
+    }
+
+    // True when the JVM runs with --add-modules jdk.incubator.vector
+    static public boolean vectorAvailable() {
+        return VECTOR_OPS != null;
+    }
+
+    static public void setVectorized(boolean new_value) {
+        if (new_value && VECTOR_OPS == null) {
+            throw new IllegalStateException("The Vector API is not available, run with --add-modules jdk.incubator.vector");
+        }
+        ops = new_value ? VECTOR_OPS : SCALAR_OPS;
+    }
+
+    static public boolean vectorized() {
+        return ops == VECTOR_OPS && VECTOR_OPS != null;
+    }
+
+    // VectorOps links against jdk.incubator.vector, it fails to load when the module is not in the boot layer
+    private static ArrayOps loadVectorOps() {
+        try {
+            ArrayOps vector = (ArrayOps) Class.forName("cnn.VectorOps").getDeclaredConstructor().newInstance();
+            vector.dot(new double[1], 0, new double[1], 0, 1);
+            return vector;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
     }
 
-    static public void setVerbose(boolean new_value) {
-        verbose = new_value;
+    static public ForkJoinPool pool() {
+        ForkJoinPool current = pool;
+        if (current != null) {
+            return current;
+        }
+        synchronized (Config.class) {
+            if (pool == null) {
+                pool = new ForkJoinPool(threads);
+            }
+            return pool;
+        }
     }
-}
+}
\ No newline at end of file
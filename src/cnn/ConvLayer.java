@@ -1,284 +1,931 @@
 package cnn;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.function.Consumer;
 
-class ConvLayer extends Layer {
+public class ConvLayer extends Layer {
     public int kernelNum;
     private int kernelChannels;
     private int kernelHeight;
     private int kernelWidth;
 
-    public double[][][][] kernels; // [k][channel][h][w]
+    public Tensor kernels; // [k][channel][h][w]
     public double[] biases; // tmp public access for debugging
 
+    // kernels and biases with their gradient accumulators
+    private Parameter kernelParameter;
+    private Parameter biasParameter;
+
     private int output_height;
     private int output_width;
 
     private int stride;
     private int padding;
+    private Activation activation;
+
+    // How the convolution is executed, see Engine. AUTO is resolved into activeEngine when the layer is compiled
+    private Engine engine;
+    private Engine activeEngine;
 
     // Cache for backpropagation
-    public double[][][] input_tensor;
+    public Tensor input_tensor;
+    private Tensor output_tensor;
+
+    // Workspaces reused across calls (see Tensor.reuse), the output lives in output_tensor
+    private Tensor input_gradient;
+    private Tensor output_gradient;
+
+    // im2col scratch buffers, one sample at a time.
+    // The Winograd engine uses them for its V and M tiles in forward, and for im2col in backward.
+    // The FFT engine uses them for the input and output spectra of a sample
+    private double[] columns;
+    private double[] columnGradients;
+
+    // Winograd filters or FFT spectra of the kernels, shared with the replicas
+    private final KernelTransform kernelTransform;
+
+    // FFT engine : filter gradient spectra, summed over the batch before a single inverse transform per filter
+    private double[] filterGradientSpectra;
+
+    // Output rows per parallel task in the direct loops
+    private static final int TILE_ROWS = 8;
+
+    // Pooled rows per parallel task in forwardPooled, and the conv rows they need (reused by each thread)
+    private static final int POOLED_TILE_ROWS = 4;
+    private static final ThreadLocal<double[]> STRIP = ThreadLocal.withInitial(() -> new double[0]);
+
+    // The ordinal is saved in model files (see ModelFile) : new engines go at the end
+    public enum Engine {
+        // Direct window scan
+        DIRECT,
+        // im2col lowering followed by a cache-blocked GEMM
+        IM2COL,
+        // Winograd F(2x2, 3x3) forward, im2col backward. 3x3 kernels with stride 1 only
+        WINOGRAD,
+        // WINOGRAD where it applies, otherwise FFT or DIRECT, whichever the cost model (see resolveEngine) finds cheaper
+        AUTO,
+        // Products of zero-padded spectra (see Fft), for large kernels on large feature maps
+        FFT,
+    }
+
+    // AUTO picks FFT only when its estimated FLOPs, times this factor for its memory traffic, beat the direct loops
+    static final double FFT_OVERHEAD = 2.0;
+    // and when the kernel spectra fit in this many doubles
+    static final long FFT_MAX_SPECTRA = 1L << 24;
+
+    // Transform of the kernels computed once per kernels version (see Tensor.version) and key, by the first caller.
+    // A new key (e.g. other FFT sizes for a new input shape) gets a new array, so callers holding the old one are safe.
+    // With assertions on, a checksum of the kernels catches writes made through data() without markModified
+    private static final class KernelTransform {
+        private static final boolean CHECKED = ConvLayer.class.desiredAssertionStatus();
+
+        private double[] values;
+        private long key;
+        private int version;
+        private long checksum;
+
+        synchronized double[] get(Tensor kernels, long key, int size, Consumer<double[]> transform) {
+            if (this.values == null || this.key != key) {
+                this.values = new double[size];
+            } else if (this.version == kernels.version()) {
+                assert !CHECKED || this.checksum == checksum(kernels) : "Kernels written through data() without markModified";
+                return this.values;
+            }
+            transform.accept(this.values);
+            this.key = key;
+            this.version = kernels.version();
+            this.checksum = CHECKED ? checksum(kernels) : 0;
+            return this.values;
+        }
+
+        private static long checksum(Tensor kernels) {
+            double[] K = kernels.data();
+            long sum = 0;
+            for (int i = kernels.offset(); i < kernels.offset() + kernels.size(); i++) {
+                sum = sum * 31 + Double.doubleToRawLongBits(K[i]);
+            }
+            return sum;
+        }
+    }
 
     public ConvLayer(int kernelNum, int channels, int kernelHeight, int kernelWidth) {
         this.type = Type.CONV;
 
         this.kernelNum = kernelNum;
+        this.kernelChannels = channels;
         this.kernelWidth = kernelWidth;
         this.kernelHeight = kernelHeight;
         this.stride = 1;
         this.padding = 0;
+        this.activation = Activation.RELU;
+        this.engine = Engine.AUTO;
 
         this.output_height = 0;
         this.output_width = 0;
 
-        this.input_tensor = new double[0][0][0];
+        this.input_tensor = new Tensor(0, 0, 0, 0);
 
         // Each kernel (filter) is represented by a matrix of weights
-        this.kernels = new double[kernelNum][channels][kernelHeight][kernelWidth];
+        this.kernels = new Tensor(kernelNum, channels, kernelHeight, kernelWidth);
         this.biases = new double[kernelNum];
+        this.kernelParameter = new Parameter(this.kernels);
+        this.biasParameter = new Parameter(Tensor.wrap(this.biases, kernelNum));
+        this.kernelTransform = new KernelTransform();
 
         init();
     }
 
+    // Replica sharing the kernels and biases of source
+    private ConvLayer(ConvLayer source) {
+        this.type = Type.CONV;
+
+        this.kernelNum = source.kernelNum;
+        this.kernelChannels = source.kernelChannels;
+        this.kernelWidth = source.kernelWidth;
+        this.kernelHeight = source.kernelHeight;
+        this.stride = source.stride;
+        this.padding = source.padding;
+        this.activation = source.activation;
+        this.engine = source.engine;
+
+        this.input_tensor = new Tensor(0, 0, 0, 0);
+
+        this.kernels = source.kernels;
+        this.biases = source.biases;
+        this.kernelParameter = source.kernelParameter.replicate();
+        this.biasParameter = source.biasParameter.replicate();
+        this.kernelTransform = source.kernelTransform;
+    }
+
+    public Layer replicate() {
+        return new ConvLayer(this);
+    }
+
+    public List<Parameter> parameters() {
+        return List.of(this.kernelParameter, this.biasParameter);
+    }
+
+    int[] config() {
+        return new int[] {this.kernelNum, this.kernelChannels, this.kernelHeight, this.kernelWidth, this.stride, this.padding, this.engine.ordinal(),
+                Activation.code(this.activation)};
+    }
+
     private void init() {
         Random rand = new Random();
+        double[] K = this.kernels.data();
+
         for (int k = 0; k < this.kernelNum; k++) {
             this.biases[k] = 0; // Initialize biases
+        }
+        for (int i = 0; i < K.length; i++) {
+            K[i] = rand.nextGaussian() * 0.01;
+        }
+    }
 
-            for (int c = 0; c < this.kernelChannels; c++) {
-                for (int y = 0; y < this.kernelHeight; y++) {
-                    for (int x = 0; x < this.kernelWidth; x++) {
-                        this.kernels[k][c][y][x] = rand.nextGaussian() * 0.01;
-                    }
-                }
+    // [N][channel][height][width] -> [N][kernel][output_height][output_width]
+    public int[] compile(int[] inputShape) {
+        return compile(inputShape, false);
+    }
+
+    // Same, pooled when the layer runs inside a ConvPoolLayer : forwardPooled never writes the full-resolution output,
+    // so it is not allocated, and the pre-activation gradient is only allocated by the first backward pass
+    int[] compile(int[] inputShape, boolean pooled) {
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Conv layer expects [N][channel][height][width] inputs, got " + Arrays.toString(inputShape));
+        }
+        if (inputShape[1] != this.kernelChannels) {
+            throw new IllegalArgumentException("Conv layer expects " + this.kernelChannels + " input channels, got " + inputShape[1]);
+        }
+
+        int batch = inputShape[0];
+        int h_out = (inputShape[2] - this.kernelHeight + 2 * this.padding) / this.stride + 1;
+        int w_out = (inputShape[3] - this.kernelWidth + 2 * this.padding) / this.stride + 1;
+        if (h_out < 1 || w_out < 1 || this.kernelNum < 1) {
+            throw new IllegalArgumentException("Invalid output dimensions " + h_out + "x" + w_out + " for input " + Arrays.toString(inputShape));
+        }
+
+        this.activeEngine = resolveEngine(inputShape);
+        this.inputShape = inputShape.clone();
+        this.output_height = h_out;
+        this.output_width = w_out;
+
+        // Workspaces for a whole batch, smaller batches run in views over them
+        this.output_tensor = pooled ? null : Tensor.reuse(this.output_tensor, batch, this.kernelNum, h_out, w_out);
+        this.output_gradient = pooled ? null : Tensor.reuse(this.output_gradient, batch, this.kernelNum, h_out, w_out);
+        this.input_gradient = Tensor.reuse(this.input_gradient, batch, this.kernelChannels, inputShape[2], inputShape[3]);
+        if (this.activeEngine == Engine.FFT) {
+            int spectrum = Fft.spectrumSize(Fft.size(inputShape[2] + 2 * this.padding), Fft.size(inputShape[3] + 2 * this.padding));
+            columnBuffer(this.kernelChannels * spectrum);
+            columnGradientBuffer(this.kernelNum * spectrum);
+        } else if (this.activeEngine != Engine.DIRECT) {
+            int columnSize = this.kernelChannels * this.kernelHeight * this.kernelWidth * h_out * w_out;
+            int tiles = Winograd.tiles(h_out) * Winograd.tiles(w_out);
+            boolean winograd = this.activeEngine == Engine.WINOGRAD;
+            columnBuffer(winograd ? Math.max(columnSize, Winograd.POSITIONS * this.kernelChannels * tiles) : columnSize);
+            columnGradientBuffer(winograd ? Math.max(columnSize, Winograd.POSITIONS * this.kernelNum * tiles) : columnSize);
+        }
+
+        return new int[] {batch, this.kernelNum, h_out, w_out};
+    }
+
+    // Engine compile picks for inputShape
+    Engine resolveEngine(int[] inputShape) {
+        boolean winograd = this.kernelHeight == 3 && this.kernelWidth == 3 && this.stride == 1;
+        if (this.engine == Engine.AUTO) {
+            if (winograd) {
+                return Engine.WINOGRAD;
             }
+            return fftCost(inputShape) * FFT_OVERHEAD < directCost(inputShape) ? Engine.FFT : Engine.DIRECT;
         }
+        if (this.engine == Engine.WINOGRAD && !winograd) {
+            throw new IllegalArgumentException("Winograd engine needs 3x3 kernels with stride 1, got " + this.kernelHeight + "x" + this.kernelWidth + " with stride " + this.stride);
+        }
+        return this.engine;
     }
 
-    public double[][][] forward(double[][][] input) {
-        int c_in = this.kernelChannels;
+    // FLOPs of the convolution of one sample, as computed by the direct loops
+    private double directCost(int[] inputShape) {
+        int h_out = (inputShape[2] - this.kernelHeight + 2 * this.padding) / this.stride + 1;
+        int w_out = (inputShape[3] - this.kernelWidth + 2 * this.padding) / this.stride + 1;
+        return 2.0 * this.kernelNum * this.kernelChannels * h_out * w_out * this.kernelHeight * this.kernelWidth;
+    }
 
-        if (input.length != this.kernelChannels) {
-            System.out.println("[WARNING] input channels do not match kernel channels");
-            c_in = Math.min(this.kernelChannels, this.input_tensor.length);
+    // FLOPs of the FFT engine for one sample : a half-spectrum transform per input channel and per kernel
+    // (about 2.5 N log2 N for N = P * Q) and a complex multiply-add per stored frequency and (kernel, channel) pair.
+    // The kernel spectra are cached, so they are not counted
+    private double fftCost(int[] inputShape) {
+        int P = Fft.size(inputShape[2] + 2 * this.padding);
+        int Q = Fft.size(inputShape[3] + 2 * this.padding);
+        double N = (double) P * Q;
+        if ((long) this.kernelNum * this.kernelChannels * Fft.spectrumSize(P, Q) > FFT_MAX_SPECTRA) {
+            return Double.POSITIVE_INFINITY;
         }
+        double transforms = (this.kernelNum + this.kernelChannels) * 2.5 * N * (Math.log(N) / Math.log(2));
+        return transforms + 4.0 * N * this.kernelNum * this.kernelChannels;
+    }
+
+    // Multiply-adds of the convolution, plus the bias and activation pass
+    public long flops(int batch) {
+        long outputs = (long) batch * this.kernelNum * this.output_height * this.output_width;
+        return outputs * (2L * this.kernelChannels * this.kernelHeight * this.kernelWidth + 2);
+    }
 
-        // print input
-        // for (double[][] featureMap : input) {
-        //     for (double[] row : featureMap) {
-        //         for (double value : row) {
-        //             System.out.print(value + " ");
-        //         }
-        //         System.out.println();
-        //     }
-        //     System.out.println();
-        // }
-
-        this.input_tensor = input;
-        this.output_height = (input[0].length - this.kernelHeight + 2 * this.padding) / this.stride + 1;
-        this.output_width = (input[0][1].length - this.kernelWidth + 2 * this.padding) / this.stride + 1;
+    // input shape [N][channel][height][width] -> output shape [N][kernel][output_height][output_width]
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
 
+        int batch = input.shape(0);
         int h_out = this.output_height;
         int w_out = this.output_width;
+        this.input_tensor = this.inference ? null : input;
+
+        Tensor output = Tensor.reuse(this.output_tensor, batch, this.kernelNum, h_out, w_out);
+
+        switch (this.activeEngine) {
+            case DIRECT:
+                output.fill(0.0);
+                forwardDirect(input, output);
+                break;
 
-        if (Config.verbose()) {
-            System.out.println("[Conv Layer] initiating forward pass");
-            System.out.println("outputHeight = " + h_out);
-            System.out.println("outputWidth = " + w_out);
+            case IM2COL:
+                forwardIm2col(input, output);
+                break;
+
+            case WINOGRAD:
+                forwardWinograd(input, output);
+                break;
+
+            case FFT:
+                output.fill(0.0);
+                forwardFft(input, output);
+                break;
         }
 
-        if (h_out < 1 || w_out < 1 || this.kernelNum < 1) {
-            throw new IllegalArgumentException("Invalid output dimensions");
+        // Add bias and activation function
+        double[] O = output.data();
+        int area = h_out * w_out;
+        Parallel.forEach(batch * this.kernelNum, map -> this.activation.apply(O, map * area, area, this.biases[map % this.kernelNum]));
+
+        this.output_tensor = output;
+        return output;
+    }
+
+    // Naive window scan : every kernel weight is read once per output pixel.
+    // Tasks are (sample, kernel, tile of TILE_ROWS output rows), each one owns its slice of the output
+    private void forwardDirect(Tensor input, Tensor output) {
+        int batch = input.shape(0);
+        int tiles = Parallel.tiles(this.output_height, TILE_ROWS);
+
+        Parallel.forEach(batch * this.kernelNum * tiles, task -> {
+            int tile = task % tiles;
+            int k = (task / tiles) % this.kernelNum;
+            int n = task / (tiles * this.kernelNum);
+            int fromY = tile * TILE_ROWS;
+            int toY = Math.min(this.output_height, fromY + TILE_ROWS);
+            int outBase = (n * this.kernelNum + k) * this.output_height * this.output_width;
+            if (this.stride == 1) {
+                forwardDirectRows(input, output.data(), outBase, n, k, fromY, toY);
+            } else {
+                forwardDirect(input, output.data(), outBase, n, k, fromY, toY);
+            }
+        });
+    }
+
+    // Stride 1 : each kernel weight scales a whole input row segment into an output row,
+    // so the window scan becomes AXPYs over contiguous rows (see ArrayOps).
+    // Both direct loops add output row y of map (n, k) into O[outBase + y * output_width ..]
+    private void forwardDirectRows(Tensor input, double[] O, int outBase, int n, int k, int fromY, int toY) {
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
+        int w_out = this.output_width;
+
+        double[] I = input.data();
+        double[] K = this.kernels.data();
+        ArrayOps ops = Config.ops();
+        int sampleBase = input.offset() + n * input.stride(0);
+
+        for (int channel = 0; channel < this.kernelChannels; channel++) {
+            int inBase = sampleBase + channel * h_in * w_in;
+            int kBase = (k * this.kernelChannels + channel) * this.kernelHeight * this.kernelWidth;
+
+            for (int outputY = fromY; outputY < toY; outputY++) {
+                int outRow = outBase + outputY * w_out;
+
+                for (int ky = 0; ky < this.kernelHeight; ky++) {
+                    int inputY = outputY + ky - this.padding;
+                    if (inputY < 0 || inputY >= h_in) {
+                        continue;
+                    }
+                    int inRow = inBase + inputY * w_in;
+
+                    for (int kx = 0; kx < this.kernelWidth; kx++) {
+                        // Output columns whose input column outputX + kx - padding is inside the input
+                        int fromX = Math.max(0, this.padding - kx);
+                        int toX = Math.min(w_out, w_in + this.padding - kx);
+                        if (fromX < toX) {
+                            ops.axpy(K[kBase + ky * this.kernelWidth + kx], I, inRow + fromX + kx - this.padding, O, outRow + fromX, toX - fromX);
+                        }
+                    }
+                }
+            }
         }
+    }
+
+    private void forwardDirect(Tensor input, double[] O, int outBase, int n, int k, int fromY, int toY) {
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
+        int w_out = this.output_width;
 
-        double[][][] output = new double[this.kernelNum][h_out][w_out];
+        double[] I = input.data();
+        double[] K = this.kernels.data();
+        int sampleBase = input.offset() + n * input.stride(0);
 
-        // For each kernel
-        for (int k = 0; k < this.kernelNum; k++) {
+        // Scan the input
+        for (int channel = 0; channel < this.kernelChannels; channel++) {
+            int inBase = sampleBase + channel * h_in * w_in;
+            int kBase = (k * this.kernelChannels + channel) * this.kernelHeight * this.kernelWidth;
+
+            for (int outputY = fromY; outputY < toY; outputY++) {
+                for (int outputX = 0; outputX < w_out; outputX++) {
+                    double sum = 0.0;
 
-            // Scan the input
-            for (int channel = 0; channel < c_in; channel++) {
-                for (int outputY = 0; outputY < h_out; outputY++) {
-                    for (int outputX = 0; outputX < w_out; outputX++) {
-                        double sum = 0.0;
-
-                        // Compute product of kernel and input region
-                        for (int ky = 0; ky < this.kernelHeight; ky++) {
-                            for (int kx = 0; kx < this.kernelWidth; kx++) {
-                                int inputY = outputY * this.stride + ky - this.padding;
-                                int inputX = outputX * this.stride + kx - this.padding;
-                                sum += input[channel][inputY][inputX] * this.kernels[k][channel][ky][kx];
+                    // Compute product of kernel and input region (zero padding outside the input)
+                    for (int ky = 0; ky < this.kernelHeight; ky++) {
+                        int inputY = outputY * this.stride + ky - this.padding;
+                        if (inputY < 0 || inputY >= h_in) {
+                            continue;
+                        }
+                        for (int kx = 0; kx < this.kernelWidth; kx++) {
+                            int inputX = outputX * this.stride + kx - this.padding;
+                            if (inputX < 0 || inputX >= w_in) {
+                                continue;
                             }
+                            sum += I[inBase + inputY * w_in + inputX] * K[kBase + ky * this.kernelWidth + kx];
                         }
-
-                        output[k][outputY][outputX] = Activation.relu(sum + this.biases[k]);
                     }
+
+                    O[outBase + outputY * w_out + outputX] += sum;
                 }
             }
         }
+    }
 
-        // PRINT FEATURE MAPS
-        if (Config.verbose()) {
-            Utils.displayFeatureMaps(output);
-        }
+    // Conv -> bias -> ReLU -> max pool in one pass (see ConvPoolLayer), for a compiled layer and a contiguous input.
+    // Each task runs the direct loops for the conv rows under a tile of pooled rows into a small per-thread strip
+    // and pools it right away, so the full-resolution activation is never written out.
+    // max(f(z + b)) = f(max(z) + b) for a monotonic activation f : the bias and f are applied once per pooled value.
+    // argmax receives, for every pooled value, the position in its conv map of the maximum
+    void forwardPooled(Tensor input, int poolHeight, int poolWidth, int poolStride, Tensor output, int[] argmax) {
+        int batch = input.shape(0);
+        int w_out = this.output_width;
+        int pooledHeight = output.shape(2);
+        int pooledWidth = output.shape(3);
+        double[] O = output.data();
+        this.input_tensor = this.inference ? null : input;
+
+        int tiles = Parallel.tiles(pooledHeight, POOLED_TILE_ROWS);
+        Parallel.forEach(batch * this.kernelNum * tiles, task -> {
+            int tile = task % tiles;
+            int k = (task / tiles) % this.kernelNum;
+            int n = task / (tiles * this.kernelNum);
+            int fromPooled = tile * POOLED_TILE_ROWS;
+            int toPooled = Math.min(pooledHeight, fromPooled + POOLED_TILE_ROWS);
+            int fromY = fromPooled * poolStride;
+            int toY = (toPooled - 1) * poolStride + poolHeight;
+
+            double[] strip = STRIP.get();
+            if (strip.length < (toY - fromY) * w_out) {
+                strip = new double[(toY - fromY) * w_out];
+                STRIP.set(strip);
+            }
+            Arrays.fill(strip, 0, (toY - fromY) * w_out, 0.0);
+            // Row y lands at strip[(y - fromY) * w_out]
+            if (this.stride == 1) {
+                forwardDirectRows(input, strip, -fromY * w_out, n, k, fromY, toY);
+            } else {
+                forwardDirect(input, strip, -fromY * w_out, n, k, fromY, toY);
+            }
 
-        return output;
+            double bias = this.biases[k];
+            int outBase = (n * this.kernelNum + k) * pooledHeight * pooledWidth;
+            for (int py = fromPooled; py < toPooled; py++) {
+                for (int px = 0; px < pooledWidth; px++) {
+                    double max = Double.NEGATIVE_INFINITY;
+                    int position = -1;
+                    for (int wy = 0; wy < poolHeight; wy++) {
+                        int y = py * poolStride + wy;
+                        for (int wx = 0; wx < poolWidth; wx++) {
+                            int x = px * poolStride + wx;
+                            double value = strip[(y - fromY) * w_out + x];
+                            if (value > max) {
+                                max = value;
+                                position = y * w_out + x;
+                            }
+                        }
+                    }
+
+                    int index = outBase + py * pooledWidth + px;
+                    O[index] = max;
+                    if (argmax != null) {
+                        argmax[index] = position;
+                    }
+                }
+                this.activation.apply(O, outBase + py * pooledWidth, pooledWidth, bias);
+            }
+        });
     }
 
-    // To be implemented
-    public double[][][] backward(double[][][] delta_O, double learningRate) {
-        // input tensor shape (chanels, height width)
-        int c_in = this.input_tensor.length;
-        int h_in = this.input_tensor[0].length;
-        int w_in = this.input_tensor[0][0].length;
+    // im2col lowering : output[n] (kernelNum x outputArea) = kernels (kernelNum x c*kh*kw) * col (c*kh*kw x outputArea)
+    private void forwardIm2col(Tensor input, Tensor output) {
+        int batch = input.shape(0);
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
+        int area = this.output_height * this.output_width;
+        int patch = this.kernelChannels * this.kernelHeight * this.kernelWidth;
+        double[] col = columnBuffer(patch * area);
+
+        for (int n = 0; n < batch; n++) {
+            int inputOffset = input.offset() + n * input.stride(0);
+            Parallel.forEach(this.kernelChannels, c -> Im2Col.im2colChannel(input.data(), inputOffset, c, h_in, w_in,
+                    this.kernelHeight, this.kernelWidth, this.stride, this.padding, this.output_height, this.output_width, col));
+
+            Gemm.parallelMultiply(false, false, this.kernelNum, area, patch,
+                    this.kernels.data(), 0, patch,
+                    col, 0, area,
+                    output.data(), n * this.kernelNum * area, area, false);
+        }
+    }
 
-        // output tensor shape (chanels, height width)
+    // Winograd : output[n] is assembled from 16 GEMMs over (kernel x channel) by (channel x tile) matrices,
+    // see Winograd for the transforms. Every output value is written, so the output needs no clearing
+    private void forwardWinograd(Tensor input, Tensor output) {
+        int batch = input.shape(0);
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
+        int h_out = this.output_height;
+        int w_out = this.output_width;
+        int tilesY = Winograd.tiles(h_out);
+        int tilesX = Winograd.tiles(w_out);
+        int tiles = tilesY * tilesX;
+        int c_in = this.kernelChannels;
         int c_out = this.kernelNum;
+
+        double[] U = filterTransforms();
+        double[] V = columnBuffer(Winograd.POSITIONS * c_in * tiles);
+        double[] M = columnGradientBuffer(Winograd.POSITIONS * c_out * tiles);
+        double[] O = output.data();
+
+        for (int n = 0; n < batch; n++) {
+            int inputOffset = input.offset() + n * input.stride(0);
+            int outputOffset = n * c_out * h_out * w_out;
+
+            Parallel.forEach(c_in, c -> Winograd.transformInputChannel(input.data(), inputOffset, c, c_in, h_in, w_in,
+                    this.padding, tilesY, tilesX, V));
+
+            Parallel.forEach(Winograd.POSITIONS, xi -> Gemm.multiply(false, false, c_out, tiles, c_in,
+                    U, xi * c_out * c_in, c_in,
+                    V, xi * c_in * tiles, tiles,
+                    M, xi * c_out * tiles, tiles, false));
+
+            Parallel.forEach(c_out, k -> Winograd.transformOutputKernel(M, k, c_out, tilesY, tilesX,
+                    O, outputOffset + k * h_out * w_out, h_out, w_out));
+        }
+    }
+
+    // Cached between calls : the optimizers, ModelFile and anything else writing the kernels bump their version
+    private double[] filterTransforms() {
+        return this.kernelTransform.get(this.kernels, -1, Winograd.POSITIONS * this.kernelNum * this.kernelChannels,
+                U -> Winograd.transformFilters(this.kernels.data(), this.kernelNum, this.kernelChannels, U));
+    }
+
+    // FFT : output[n][k] = sum over c of input[n][c] correlated with kernels[k][c], computed as
+    // IFFT(sum_c X[c] * conj(K[k][c])) and read at (y * stride - padding, x * stride - padding).
+    // P >= height + 2 * padding keeps every value read back clear of the circular wrap-around (same for Q)
+    private void forwardFft(Tensor input, Tensor output) {
+        int batch = input.shape(0);
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
         int h_out = this.output_height;
         int w_out = this.output_width;
+        int c_in = this.kernelChannels;
+        int c_out = this.kernelNum;
+        int P = Fft.size(h_in + 2 * this.padding);
+        int Q = Fft.size(w_in + 2 * this.padding);
+        int S = Fft.spectrumSize(P, Q);
+
+        double[] spectra = kernelSpectra(P, Q);
+        double[] X = columnBuffer(c_in * S);
+        double[] Y = columnGradientBuffer(c_out * S);
+        double[] O = output.data();
 
-        // In case of mismatch between input channels and kernel channels
-        if (c_in != this.kernelChannels) {
-            System.out.println("[WARNING] input channels do not match kernel channels");
+        for (int n = 0; n < batch; n++) {
+            int inputOffset = input.offset() + n * input.stride(0);
+            int outputOffset = n * c_out * h_out * w_out;
+
+            Parallel.forEach(c_in, c -> Fft.forward(input.data(), inputOffset + c * h_in * w_in, h_in, w_in, w_in, 1, P, Q, X, c * S));
+
+            Parallel.forEach(c_out, k -> {
+                Arrays.fill(Y, k * S, (k + 1) * S, 0.0);
+                for (int c = 0; c < c_in; c++) {
+                    Fft.multiplyAccumulate(X, c * S, spectra, (k * c_in + c) * S, true, Y, k * S, S / 2);
+                }
+                Fft.inverse(Y, k * S, P, Q, -this.padding, -this.padding, this.stride, h_out, w_out,
+                        O, outputOffset + k * h_out * w_out, w_out);
+            });
         }
+    }
+
+    // Spectra of every kernels[k][c] for P x Q transforms, reused across the batch and across calls
+    private double[] kernelSpectra(int P, int Q) {
+        int S = Fft.spectrumSize(P, Q);
+        int kernelArea = this.kernelHeight * this.kernelWidth;
+        return this.kernelTransform.get(this.kernels, ((long) P << 32) | Q, this.kernelNum * this.kernelChannels * S,
+                spectra -> Parallel.forEach(this.kernelNum * this.kernelChannels, kc -> Fft.forward(this.kernels.data(), kc * kernelArea,
+                        this.kernelHeight, this.kernelWidth, this.kernelWidth, 1, P, Q, spectra, kc * S)));
+    }
+
+    // The column and spectrum workspaces hold a single sample and are kept
+    void release() {
+        this.input_tensor = null;
+        this.output_tensor = null;
+        this.input_gradient = null;
+        this.output_gradient = null;
+    }
+
+    public Tensor backward(Tensor delta_O) {
+        delta_O = delta_O.contiguous();
+        Tensor delta_Z = preActivationGradient(this.input_tensor.shape(0));
 
-        System.out.println("Shapes :");
-        System.out.println("c_in =" + c_in);
-        System.out.println("h_in =" + h_in);
-        System.out.println("w_in =" + w_in);
-        System.out.println("c_out =" + c_out);
-        System.out.println("h_out =" + h_out);
-        System.out.println("w_out =" + w_out);
+        double[] dZ = delta_Z.data();
+        double[] dO = delta_O.data();
+        double[] O = this.output_tensor.data();
+        int o0 = delta_O.offset();
 
-        System.out.println("\n************");
+        // Apply derivative on delta_O, to obtain pre-activation gradient (delta Z)
+        System.arraycopy(dO, o0, dZ, 0, delta_Z.size());
+        this.activation.backward(O, 0, dZ, 0, delta_Z.size());
+
+        return backwardPreActivation(delta_Z);
+    }
 
-        // System.out.println("\nDelta_O:");
-        // Utils.displayFeatureMaps(delta_O);
-        // System.out.println("\ninput tensor:");
-        // Utils.displayFeatureMaps(this.input_tensor);
+    // Workspace for delta_Z [N][c_out][h_out][w_out], the gradient before the activation
+    Tensor preActivationGradient(int batch) {
+        this.output_gradient = Tensor.reuse(this.output_gradient, batch, this.kernelNum, this.output_height, this.output_width);
+        return this.output_gradient;
+    }
+
+    // Input and parameter gradients from delta_Z (ConvPoolLayer enters the backward pass here)
+    Tensor backwardPreActivation(Tensor delta_Z) {
+        // input tensor shape (batch, chanels, height width)
+        int batch = this.input_tensor.shape(0);
+        int c_in = this.kernelChannels;
+        int h_in = this.input_tensor.shape(2);
+        int w_in = this.input_tensor.shape(3);
+
+        // output tensor shape (batch, chanels, height width)
+        int c_out = this.kernelNum;
+        int h_out = this.output_height;
+        int w_out = this.output_width;
 
         // delta shapes (N = batch size) :
-        // delta_I  (N)[c_in][h_in][w_in]
+        // delta_I  [N][c_in][h_in][w_in]
         // delta_B  [c_out]
         // delta_F  [c_out][c_in][k_h][k_w]
-        // delta_O  (N)[c_out][h_out][w_out]
-        double[] delta_B = new double[c_out];
-        double[][][] delta_I = new double[c_in][h_in][w_in];
-        double[][][][] delta_F =  new double[c_out][c_in][kernelHeight][kernelWidth]; // also called delta K in papers
+        // delta_Z  [N][c_out][h_out][w_out]
+        // delta_B and delta_F are summed over the whole batch into the parameter gradients
+        double[] delta_B = this.biasParameter.gradient.data();
+        Tensor delta_I = Tensor.reuse(this.input_gradient, batch, c_in, h_in, w_in).fill(0.0);
+        Tensor delta_F = this.kernelParameter.gradient; // also called delta K in papers
+        this.input_gradient = delta_I;
+        double[] dZ = delta_Z.data();
+
+        switch (this.activeEngine) {
+            case DIRECT:
+                backwardDirect(delta_Z, delta_I, delta_F, c_in);
+                break;
+
+            case FFT:
+                backwardFft(delta_Z, delta_I, delta_F);
+                break;
+
+            default:
+                backwardIm2col(delta_Z, delta_I, delta_F);
+                break;
+        }
 
-        // Apply derivative on delta_O, to obtain pre-activation gradient (delta Z)
+        // Bias gradient (sum of elements in dZ[n][k]), one task per kernel
+        int area = h_out * w_out;
+        Parallel.forEach(c_out, k -> {
+            for (int n = 0; n < batch; n++) {
+                int outBase = (n * c_out + k) * area;
+                for (int i = outBase; i < outBase + area; i++) {
+                    delta_B[k] += dZ[i]; // adding the values of kernel's output delta (kernel, height, width)
+                }
+            }
+        });
+
+        return delta_I;
+    }
+
+    // delta_I is split by (sample, input channel) and delta_F by kernel, so no two tasks write the same value
+    private void backwardDirect(Tensor delta_Z, Tensor delta_I, Tensor delta_F, int c_in) {
+        int batch = this.input_tensor.shape(0);
 
-        System.out.println("Delta_O before ReLU derivative:");
-        Utils.displayFeatureMaps(delta_O);
+        Parallel.forEach(batch * c_in, task -> inputGradientDirect(delta_Z, delta_I, task / c_in, task % c_in));
+        Parallel.forEach(this.kernelNum, k -> filterGradientDirect(delta_Z, delta_F, c_in, k));
+    }
+
+    // Compute Delta I for input channel c of sample n
+    private void inputGradientDirect(Tensor delta_Z, Tensor delta_I, int n, int c) {
+        int h_in = this.input_tensor.shape(2);
+        int w_in = this.input_tensor.shape(3);
+        int c_out = this.kernelNum;
+        int h_out = this.output_height;
+        int w_out = this.output_width;
+
+        double[] dI = delta_I.data();
+        double[] dZ = delta_Z.data();
+        double[] K = this.kernels.data();
+        int kernelArea = this.kernelHeight * this.kernelWidth;
+        int inBase = n * delta_I.stride(0) + c * h_in * w_in;
+        int dZBase = n * c_out * h_out * w_out;
 
-        for (int c = 0; c < c_out; c++) {
+        // For each filter
+        for (int k = 0; k < c_out; k++) {
+            int kBase = (k * this.kernelChannels + c) * kernelArea;
+
+            // For every element of delta_O[n][k]
             for (int h = 0; h < h_out; h++) {
                 for (int w = 0; w < w_out; w++) {
-                    delta_O[c][h][w] = Activation.reluDerivative(delta_O[c][h][w]);
-                }
-            }
-        }
-
-        // Compute Delta I
-        // For each input channel
-        for (int c = 0; c < c_in; c++) {
-            delta_I[c] = Utils.zeroMatrix(h_in, w_in);
-
-            // For each filter
-            for (int k = 0; k < c_out; k++) {
-
-            // For every element of delta_O[k]
-                for (int h = 0; h < h_out; h++) {
-                    for (int w = 0; w < w_out; w++) {
-                        
-                        // Convolution of delta_O and rotated filter to compute delta_I
-                        for (int k_h = 0; k_h < this.kernelHeight; k_h++) {
-                            for (int k_w = 0; k_w < this.kernelWidth; k_w++) {
-                                // 180° rotation of filter is like browsing values from the end: [h][w] -> [h][0] -> [0][w] -> [0][0]
-                                delta_I[c][h + k_h][w + k_w] +=
-                                delta_O[k][h][w] * this.kernels[k][c][this.kernelHeight - k_h - 1][this.kernelWidth - k_w - 1];
+                    double delta = dZ[dZBase + (k * h_out + h) * w_out + w];
+
+                    // Every input pixel that contributed to output (h, w) receives delta * weight
+                    // (equivalent to a full convolution of delta_Z with the 180° rotated filter)
+                    for (int k_h = 0; k_h < this.kernelHeight; k_h++) {
+                        int in_h = h * this.stride + k_h - this.padding;
+                        if (in_h < 0 || in_h >= h_in) {
+                            continue;
+                        }
+                        for (int k_w = 0; k_w < this.kernelWidth; k_w++) {
+                            int in_w = w * this.stride + k_w - this.padding;
+                            if (in_w < 0 || in_w >= w_in) {
+                                continue;
                             }
+                            dI[inBase + in_h * w_in + in_w] += delta * K[kBase + k_h * this.kernelWidth + k_w];
                         }
                     }
                 }
             }
         }
+    }
 
-        // Compute delta_B and delta_F (for each filter)
-        for (int k = 0; k < c_out; k++) {
-            // Compute bias gradient (sum of elements in dO[k])
-            delta_B[k] = 0;
-            for (int h = 0; h < h_out; h++) {
-                for (int w = 0; w < w_out; w++) {
-                    delta_B[k] += delta_O[k][h][w]; // adding the values of kernel's output delta (kernel, height, width)
-                }
-            }
+    // Accumulate delta_F of filter k over the whole batch
+    private void filterGradientDirect(Tensor delta_Z, Tensor delta_F, int c_in, int k) {
+        int batch = this.input_tensor.shape(0);
+        int h_in = this.input_tensor.shape(2);
+        int w_in = this.input_tensor.shape(3);
+        int h_out = this.output_height;
+        int w_out = this.output_width;
+
+        double[] dF = delta_F.data();
+        double[] dZ = delta_Z.data();
+        double[] I = this.input_tensor.data();
+        int kernelArea = this.kernelHeight * this.kernelWidth;
+        int inSize = this.input_tensor.stride(0);
+
+        for (int n = 0; n < batch; n++) {
+            int outBase = (n * this.kernelNum + k) * h_out * w_out;
 
             // Compute delta_F for each input chanel
             for (int c = 0; c < c_in; c++) {
+                int inBase = this.input_tensor.offset() + n * inSize + c * h_in * w_in;
+                int kBase = (k * this.kernelChannels + c) * kernelArea;
 
                 // Y padding applied to input tensor
                 for (int y = 0; y < this.kernelHeight; y++) {
 
                     // X padding applied to input tensor
                     for (int x = 0; x < this.kernelWidth; x++) {
-                        
+
                         double delta_F_sum = 0;
                         // Compute local gradient
                         for (int h = 0; h < h_out; h++) {
+                            int in_h = h * this.stride + y - padding;
+                            if (in_h < 0 || in_h >= h_in) {
+                                continue;
+                            }
                             for (int w = 0; w < w_out; w++) {
-                                int in_h = h * this.stride + y - padding;
                                 int in_w = w * this.stride + x - padding;
-
-                                delta_F_sum += this.input_tensor[c][in_h][in_w] * delta_O[k][h][w];
+                                if (in_w < 0 || in_w >= w_in) {
+                                    continue;
+                                }
+                                delta_F_sum += I[inBase + in_h * w_in + in_w] * dZ[outBase + h * w_out + w];
                             }
                         }
-                        delta_F[k][c][y][x] = delta_F_sum;
+                        dF[kBase + y * this.kernelWidth + x] += delta_F_sum;
                     }
                 }
             }
+        }
+    }
 
-            Utils.displayFeatureMaps(delta_F[k]);
+    // delta_F += delta_Z[n] * col^T  and  delta_I[n] = col2im(kernels^T * delta_Z[n])
+    // The columns are rebuilt from the cached input rather than kept from the forward pass
+    private void backwardIm2col(Tensor delta_Z, Tensor delta_I, Tensor delta_F) {
+        int batch = this.input_tensor.shape(0);
+        int h_in = this.input_tensor.shape(2);
+        int w_in = this.input_tensor.shape(3);
+        int area = this.output_height * this.output_width;
+        int patch = this.kernelChannels * this.kernelHeight * this.kernelWidth;
+        double[] col = columnBuffer(patch * area);
+        double[] colGradient = columnGradientBuffer(patch * area);
+
+        for (int n = 0; n < batch; n++) {
+            int dZBase = n * this.kernelNum * area;
+            int inputOffset = this.input_tensor.offset() + n * this.input_tensor.stride(0);
+            int deltaOffset = n * delta_I.stride(0);
+
+            Parallel.forEach(this.kernelChannels, c -> Im2Col.im2colChannel(this.input_tensor.data(), inputOffset, c,
+                    h_in, w_in, this.kernelHeight, this.kernelWidth, this.stride, this.padding,
+                    this.output_height, this.output_width, col));
+
+            Gemm.parallelMultiply(false, true, this.kernelNum, patch, area,
+                    delta_Z.data(), dZBase, area,
+                    col, 0, area,
+                    delta_F.data(), 0, patch, true);
+
+            Gemm.parallelMultiply(true, false, patch, area, this.kernelNum,
+                    this.kernels.data(), 0, patch,
+                    delta_Z.data(), dZBase, area,
+                    colGradient, 0, area, false);
+
+            Parallel.forEach(this.kernelChannels, c -> Im2Col.col2imChannel(colGradient, c, h_in, w_in,
+                    this.kernelHeight, this.kernelWidth, this.stride, this.padding,
+                    this.output_height, this.output_width, delta_I.data(), deltaOffset));
         }
+    }
 
-        // OPTIMISER STEP : TO BE SEPARATED FROM BACKWARD LATER
-        for (int k = 0; k < this.kernelNum; k++) {
-            biases[k] -= delta_B[k] * learningRate;
+    // With DZ[k] the spectrum of delta_Z[n][k] spread out by the stride :
+    // delta_F[k][c] = IFFT(sum_n X[n][c] * conj(DZ[k])) read at (ky - padding, kx - padding)
+    // delta_I[n][c] = IFFT(sum_k DZ[k] * K[k][c]) read at (y + padding, x + padding)
+    private void backwardFft(Tensor delta_Z, Tensor delta_I, Tensor delta_F) {
+        int batch = this.input_tensor.shape(0);
+        int h_in = this.input_tensor.shape(2);
+        int w_in = this.input_tensor.shape(3);
+        int h_out = this.output_height;
+        int w_out = this.output_width;
+        int c_in = this.kernelChannels;
+        int c_out = this.kernelNum;
+        int P = Fft.size(h_in + 2 * this.padding);
+        int Q = Fft.size(w_in + 2 * this.padding);
+        int S = Fft.spectrumSize(P, Q);
+
+        double[] spectra = kernelSpectra(P, Q);
+        double[] X = columnBuffer(c_in * S);
+        double[] DZ = columnGradientBuffer(c_out * S);
+        if (this.filterGradientSpectra == null || this.filterGradientSpectra.length < c_out * c_in * S) {
+            this.filterGradientSpectra = new double[c_out * c_in * S];
+        }
+        double[] DF = this.filterGradientSpectra;
+        Arrays.fill(DF, 0, c_out * c_in * S, 0.0);
+        double[] dZ = delta_Z.data();
+        double[] dI = delta_I.data();
+
+        for (int n = 0; n < batch; n++) {
+            int inputOffset = this.input_tensor.offset() + n * this.input_tensor.stride(0);
+            int dZBase = n * c_out * h_out * w_out;
+            int deltaOffset = n * delta_I.stride(0);
+
+            Parallel.forEach(c_in, c -> Fft.forward(this.input_tensor.data(), inputOffset + c * h_in * w_in, h_in, w_in, w_in, 1, P, Q, X, c * S));
+            Parallel.forEach(c_out, k -> Fft.forward(dZ, dZBase + k * h_out * w_out, h_out, w_out, w_out, this.stride, P, Q, DZ, k * S));
+
+            Parallel.forEach(c_out, k -> {
+                for (int c = 0; c < c_in; c++) {
+                    Fft.multiplyAccumulate(X, c * S, DZ, k * S, true, DF, (k * c_in + c) * S, S / 2);
+                }
+            });
 
-            for (int c = 0; c < this.kernelChannels; c++) {
-                for (int y = 0; y < this.kernelHeight; y++) {
-                    for (int x = 0; x < this.kernelWidth; x++) {
-                        this.kernels[k][c][y][x] -= delta_F[k][c][y][x] * learningRate;
-                    }
+            // X[c] is no longer needed and receives the input gradient spectrum
+            Parallel.forEach(c_in, c -> {
+                Arrays.fill(X, c * S, (c + 1) * S, 0.0);
+                for (int k = 0; k < c_out; k++) {
+                    Fft.multiplyAccumulate(DZ, k * S, spectra, (k * c_in + c) * S, false, X, c * S, S / 2);
                 }
-            }
+                Fft.inverse(X, c * S, P, Q, this.padding, this.padding, 1, h_in, w_in, dI, deltaOffset + c * h_in * w_in, w_in);
+            });
         }
 
-        return delta_I;
+        int kernelArea = this.kernelHeight * this.kernelWidth;
+        Parallel.forEach(c_out * c_in, kc -> Fft.inverse(DF, kc * S, P, Q, -this.padding, -this.padding, 1,
+                this.kernelHeight, this.kernelWidth, delta_F.data(), kc * kernelArea, this.kernelWidth));
+    }
+
+    private double[] columnBuffer(int size) {
+        if (this.columns == null || this.columns.length < size) {
+            this.columns = new double[size];
+        }
+        return this.columns;
+    }
+
+    private double[] columnGradientBuffer(int size) {
+        if (this.columnGradients == null || this.columnGradients.length < size) {
+            this.columnGradients = new double[size];
+        }
+        return this.columnGradients;
     }
 
     public void displayKernels() {
         System.out.println("[Conv Layer] Kernels:");
         for (int k = 0; k < this.kernelNum; k++) {
             System.out.println("Kernel " + k + ":");
-            for (int y = 0; y < this.kernelHeight; y++) {
-                for (int x = 0; x < this.kernelWidth; x++) {
-                    System.out.print(String.format("%.3f", this.kernels[k][y][x]) + " ");
-                }
-                System.out.println();
-            }
+            Utils.displayFeatureMaps(this.kernels.slice(k));
             System.out.println("Bias: " + String.format("%.3f", this.biases[k]));
             System.out.println();
         }
     }
 
     // Setters and getters for layer properties
+    // Stride and padding change the output shape, and the engine the workspaces : the layer (and its network) has to be compiled again
     public void setStride(int stride) {
         this.stride = stride;
+        this.inputShape = null;
     }
 
     public void setPadding(int padding) {
         this.padding = padding;
+        this.inputShape = null;
+    }
+
+    // ReLU by default. Only monotonic activations let CNN fuse the layer with a following max pool
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+        this.inputShape = null;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    void approximateActivations() {
+        setActivation(getActivation().approximation());
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+        this.inputShape = null;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    // Engine actually running the layer (AUTO resolved), null until the layer is compiled
+    public Engine getActiveEngine() {
+        return activeEngine;
     }
 
     public int getStride() {
@@ -288,4 +935,4 @@ class ConvLayer extends Layer {
     public int getPadding() {
         return padding;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,109 @@
+package cnn;
+import java.util.List;
+
+// Conv -> max pool pair fused by CNN.compile : the pooled output is computed directly (see ConvLayer.forwardPooled)
+// instead of writing the full-resolution activation and reading it back, which halves the memory traffic of the pair.
+// Neither layer sizes its own output buffers : the full-resolution activation is never allocated, and its gradient
+// only once training runs backward. It only lives in the compiled plan : the network keeps the two layers, which
+// own the weights and are saved as usual.
+// Backward scatters the pooled gradient to the recorded argmax positions and continues in the conv layer
+class ConvPoolLayer extends Layer {
+    private final ConvLayer conv;
+    private final PoolLayer pool;
+
+    private Tensor output;
+    private int[] outputShape;
+    // Position in its conv map of the maximum behind every pooled value
+    private int[] argmax;
+
+    ConvPoolLayer(ConvLayer conv, PoolLayer pool) {
+        this.type = Type.CONV_POOL;
+        this.conv = conv;
+        this.pool = pool;
+    }
+
+    // Only unpadded max pooling over conv layers that run the direct loops on inputShape, with a monotonic activation,
+    // which can be applied after the max. The im2col, Winograd and FFT engines produce whole maps at once, so their
+    // pairs are not fused : that includes every 3x3 stride 1 conv left on AUTO, which resolves to Winograd
+    static boolean canFuse(Layer first, Layer second, int[] inputShape) {
+        return first instanceof ConvLayer conv && second instanceof PoolLayer pool
+                && conv.resolveEngine(inputShape) == ConvLayer.Engine.DIRECT && conv.getActivation().isMonotonic()
+                && pool.getMode() == PoolLayer.Mode.MAX && pool.getPadding() == 0;
+    }
+
+    public int[] compile(int[] inputShape) {
+        int[] shape = this.pool.outputShape(this.conv.compile(inputShape, true));
+        // Buffers the pool sized when it last ran on its own
+        this.pool.release();
+        this.inputShape = inputShape.clone();
+        this.outputShape = shape.clone();
+        this.output = Tensor.reuse(this.output, shape[0], shape[1], shape[2], shape[3]);
+        int size = this.output.size();
+        if (this.argmax == null || this.argmax.length < size) {
+            this.argmax = new int[size];
+        }
+        return shape;
+    }
+
+    // The pool is never compiled on its own : its comparisons are counted from the pooled shape
+    public long flops(int batch) {
+        int[] shape = this.outputShape;
+        long windows = (long) batch * shape[1] * shape[2] * shape[3];
+        return this.conv.flops(batch) + windows * this.pool.getPoolHeight() * this.pool.getPoolWidth();
+    }
+
+    public long backwardFlops(int batch) {
+        return this.conv.backwardFlops(batch);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
+
+        int[] shape = this.outputShape;
+        Tensor output = Tensor.reuse(this.output, input.shape(0), shape[1], shape[2], shape[3]);
+        this.output = output;
+        if (this.argmax == null || this.argmax.length < output.size()) {
+            this.argmax = new int[output.size()];
+        }
+        this.conv.forwardPooled(input, this.pool.getPoolHeight(), this.pool.getPoolWidth(), this.pool.getStride(),
+                output, this.conv.inference ? null : this.argmax);
+        return output;
+    }
+
+    void release() {
+        this.conv.release();
+        this.output = null;
+        this.argmax = null;
+    }
+
+    public Tensor backward(Tensor gradient) {
+        gradient = gradient.contiguous();
+        int maps = gradient.shape(0) * gradient.shape(1);
+        int pooledArea = gradient.shape(2) * gradient.shape(3);
+
+        Tensor delta_Z = this.conv.preActivationGradient(gradient.shape(0)).fill(0.0);
+        int convArea = delta_Z.shape(2) * delta_Z.shape(3);
+        double[] dZ = delta_Z.data();
+        double[] dP = gradient.data();
+        double[] P = this.output.data();
+        int g0 = gradient.offset();
+        Activation activation = this.conv.getActivation();
+
+        // The gradient at a maximum is the pooled one times f' at the pooled value.
+        // Overlapping windows may share a maximum : one task per map keeps the sums in a fixed order
+        Parallel.forEach(maps, map -> {
+            for (int i = map * pooledArea; i < (map + 1) * pooledArea; i++) {
+                dZ[map * convArea + this.argmax[i]] += dP[g0 + i] * activation.derivative(P[i]);
+            }
+        });
+
+        return this.conv.backwardPreActivation(delta_Z);
+    }
+
+    public List<Parameter> parameters() {
+        return this.conv.parameters();
+    }
+}
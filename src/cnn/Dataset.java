@@ -0,0 +1,15 @@
+package cnn;
+
+// Indexed collection of (input, target) samples used by CNN.train
+public interface Dataset {
+    int size();
+
+    // Shape of a single sample, without the batch dimension
+    int[] inputShape();
+
+    int[] targetShape();
+
+    // Copy sample `index` into the given views (shaped like inputShape() and targetShape()).
+    // Called from the loader threads of Prefetcher, possibly several at once
+    void get(int index, Tensor input, Tensor target);
+}
@@ -1,27 +1,100 @@
 package cnn;
+import java.util.List;
+
 public class DenseLayer extends Layer {
     private int size;
     public int previousLayerSize;
 
     private double[] biases;
-    private double[][] weights;
+    private Tensor weights; // [size][previousLayerSize]
+
+    // weights and biases with their gradient accumulators
+    private Parameter weightParameter;
+    private Parameter biasParameter;
+
+    private Activation activation;
+
+    private Tensor lastOutput;
+    private Tensor lastInput;
 
-    private double[][][] lastOutput;
-    private double[][][] lastInput;
+    // Gradient workspaces for the previous layer and before the activation, reused across calls
+    private Tensor lastDelta;
+    private Tensor preActivationDelta;
 
     public DenseLayer(int size, int previousLayerSize) {
         this.size = size;
+        this.activation = Activation.SIGMOID;
         init(previousLayerSize);
     }
 
+    // Input size inferred when the layer is compiled
+    public DenseLayer(int size) {
+        this.type = Type.DENSE;
+        this.size = size;
+        this.activation = Activation.SIGMOID;
+    }
+
+    // Replica sharing the weights and biases of source, which must be compiled
+    private DenseLayer(DenseLayer source) {
+        if (source.weights == null) {
+            throw new IllegalStateException("Dense layer must be compiled before it is replicated.");
+        }
+        this.type = Type.DENSE;
+        this.size = source.size;
+        this.previousLayerSize = source.previousLayerSize;
+        this.activation = source.activation;
+
+        this.biases = source.biases;
+        this.weights = source.weights;
+        this.weightParameter = source.weightParameter.replicate();
+        this.biasParameter = source.biasParameter.replicate();
+
+        this.lastOutput = new Tensor(1, size);
+        this.lastInput = new Tensor(1, previousLayerSize);
+    }
+
+    public Layer replicate() {
+        return new DenseLayer(this);
+    }
+
+    public List<Parameter> parameters() {
+        if (this.weights == null) {
+            return List.of();
+        }
+        return List.of(this.weightParameter, this.biasParameter);
+    }
+
+    // previousLayerSize is 0 while the input size is left to inference
+    int[] config() {
+        return new int[] {this.size, this.weights == null ? 0 : this.previousLayerSize, Activation.code(this.activation)};
+    }
+
+    // [N][...] -> [N][size], every input dimension but the batch is seen as one feature vector.
+    // The weights are created here when the input size was left to inference
+    public int[] compile(int[] inputShape) {
+        int features = Tensor.count(inputShape) / inputShape[0];
+        if (this.weights == null) {
+            init(features);
+        } else if (features != this.previousLayerSize) {
+            throw new IllegalArgumentException("Dense layer expects " + this.previousLayerSize + " inputs, got " + features);
+        }
+
+        this.inputShape = inputShape.clone();
+        this.lastOutput = Tensor.reuse(this.lastOutput, inputShape[0], this.size);
+        this.lastDelta = Tensor.reuse(this.lastDelta, inputShape[0], this.previousLayerSize);
+        return new int[] {inputShape[0], this.size};
+    }
+
     public void init(int previousLayerSize) {
         this.previousLayerSize = previousLayerSize;
 
         this.biases = new double[size];
-        this.weights = new double[size][previousLayerSize];
+        this.weights = new Tensor(size, previousLayerSize);
+        this.weightParameter = new Parameter(this.weights);
+        this.biasParameter = new Parameter(Tensor.wrap(this.biases, size));
 
-        this.lastOutput = new double[1][1][size];
-        this.lastInput = new double[1][1][previousLayerSize];
+        this.lastOutput = new Tensor(1, size);
+        this.lastInput = new Tensor(1, previousLayerSize);
 
         this.type = Type.DENSE;
 
@@ -30,84 +103,125 @@ public class DenseLayer extends Layer {
             biases[i] = Math.random();
         }
 
-        // Set all weights to random values from 0 to 1
-        for (int i = 0; i < this.size; i++) {
-            for (int j = 0; j < this.previousLayerSize; j++) {
-                // this.weights[i][j] = Math.random();
-                this.weights[i][j] = (Math.random() - 0.5) * 2;
-            }
+        // Set all weights to random values from -1 to 1
+        double[] W = this.weights.data();
+        for (int i = 0; i < W.length; i++) {
+            W[i] = (Math.random() - 0.5) * 2;
         }
     }
 
-    public double[][][] forward(double[][][] input) {
-        System.out.println("[Dense Layer] Initiating forward pass");
-        // display();
+    // Weighted sums, bias and activation of every neuron
+    public long flops(int batch) {
+        return (long) batch * this.size * (2L * this.previousLayerSize + 2);
+    }
 
-        if (input[0][0].length != this.previousLayerSize) {
+    // input shape [N][previousLayerSize] -> output shape [N][size]
+    public Tensor forward(Tensor input) {
+        if (this.weights == null) {
+            compile(input.shape());
+        }
+
+        int batch = input.shape(0);
+        if (input.size() != batch * this.previousLayerSize) {
             throw new IllegalArgumentException("Input size does not match the previous layer size.");
         }
 
-        // (can also use the existing member lastOutput instead)
-        double[][][] output = new double[1][1][this.size];
+        input = input.contiguous();
+
+        // The previous output buffer is reused when the batch size allows it
+        Tensor output = Tensor.reuse(this.lastOutput, batch, this.size);
+
+        double[] X = input.data();
+        double[] W = this.weights.data();
+        double[] Y = output.data();
+        ArrayOps ops = Config.ops();
 
-        for (int neuron = 0; neuron < this.weights.length; neuron++) {
-            double sum_weighted_input = 0;
+        for (int n = 0; n < batch; n++) {
+            int x0 = input.offset() + n * this.previousLayerSize;
+            int y0 = n * this.size;
 
-            // Sum of every input * corresponding weight
-            for (int k = 0; k < this.previousLayerSize; k++) {
-                sum_weighted_input += input[0][0][k] * this.weights[neuron][k];
+            for (int neuron = 0; neuron < this.size; neuron++) {
+                // Sum of every input * corresponding weight, plus bias
+                Y[y0 + neuron] = ops.dot(X, x0, W, neuron * this.previousLayerSize, this.previousLayerSize) + this.biases[neuron];
             }
 
-            // Add bias and activation function
-            output[0][0][neuron] = Activation.sigmoid(sum_weighted_input + this.biases[neuron]);
+            // Activation function
+            this.activation.apply(Y, y0, this.size);
         }
 
-        this.lastInput = input;
+        this.lastInput = this.inference ? null : input;
         this.lastOutput = output;
 
-        if (Config.verbose()) {
-            System.out.println("[Dense Layer] Output:");
-            for (double value : output[0][0]) {
-                System.out.printf("%.6f ", value);
-            }
-            System.out.println("\n====================");
-        }
-
         return output;
     }
 
-    public double[][][] backward(double[][][] delta, double learningRate) {
-        System.out.println("[Dense Layer] delta");
-        Utils.displayFeatureMaps(delta);
+    void release() {
+        this.lastOutput = null;
+        this.lastInput = null;
+        this.lastDelta = null;
+        this.preActivationDelta = null;
+    }
+
+    public Tensor backward(Tensor delta) {
+        delta = delta.contiguous();
+        int batch = this.lastOutput.shape(0);
+        Tensor newDelta = Tensor.reuse(this.lastDelta, batch, this.previousLayerSize).fill(0.0);
+        this.lastDelta = newDelta;
+
+        double[] D = delta.data();
+        double[] ND = newDelta.data();
+        double[] W = this.weights.data();
+        double[] X = this.lastInput.data();
 
-        double[][][] newDelta = new double[1][1][this.previousLayerSize];
+        // Gradient before the activation
+        Tensor preActivation = Tensor.reuse(this.preActivationDelta, batch, this.size);
+        this.preActivationDelta = preActivation;
+        double[] dZ = preActivation.data();
+        System.arraycopy(D, delta.offset(), dZ, 0, batch * this.size);
+        this.activation.backward(this.lastOutput.data(), 0, dZ, 0, batch * this.size);
 
-        // For each neuron in this layer
-        for (int neuron = 0; neuron < this.size; neuron++) {
-            // Compute delta (error)
-            double derivative = Activation.derivativeSigmoid(this.lastOutput[0][0][neuron]);
-            double delta_i = delta[0][0][neuron] * derivative;
+        // Gradients are summed over the whole batch into the parameter gradients
+        double[] weightGradients = this.weightParameter.gradient.data();
+        double[] biasGradients = this.biasParameter.gradient.data();
+        ArrayOps ops = Config.ops();
 
-            for (int i = 0; i < this.previousLayerSize; i++) {
-                // Update weight using gradient descent
-                double gradient = delta_i * this.lastInput[0][0][i];
-                weights[neuron][i] -= learningRate * gradient;
+        for (int n = 0; n < batch; n++) {
+            int d0 = n * this.size;
+            int x0 = this.lastInput.offset() + n * this.previousLayerSize;
+            int nd0 = n * this.previousLayerSize;
+
+            // For each neuron in this layer
+            for (int neuron = 0; neuron < this.size; neuron++) {
+                int row = neuron * this.previousLayerSize;
+
+                double delta_i = dZ[d0 + neuron];
+
+                ops.axpy(delta_i, X, x0, weightGradients, row, this.previousLayerSize);
 
                 // Accumulate delta to propagate to previous layer
-                newDelta[0][0][i] += delta_i * weights[neuron][i];
-            }
+                ops.axpy(delta_i, W, row, ND, nd0, this.previousLayerSize);
 
-            // Update bias
-            biases[neuron] -= learningRate * delta_i;
+                biasGradients[neuron] += delta_i;
+            }
         }
 
-        System.out.println("[Dense Layer] new delta");
-        Utils.displayFeatureMaps(newDelta);
-
         return newDelta;
     }
 
-    public double[][][] getLastOutput() {
+    // Sigmoid by default. Applies from the next forward pass
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+    }
+
+    public Activation getActivation() {
+        return this.activation;
+    }
+
+    void approximateActivations() {
+        setActivation(getActivation().approximation());
+    }
+
+    public Tensor getLastOutput() {
         return lastOutput;
     }
 
@@ -122,12 +236,12 @@ public class DenseLayer extends Layer {
             System.out.printf("%-10d %-15.6f ", i, biases[i]);
     
             // Print all weights for this neuron
-            for (int j = 0; j < weights[i].length; j++) {
-                System.out.printf("%.6f ", weights[i][j]);
+            for (int j = 0; j < this.previousLayerSize; j++) {
+                System.out.printf("%.6f ", weights.get(i, j));
             }
             System.out.println();
         }
 
         System.out.println("======================================================\n");
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
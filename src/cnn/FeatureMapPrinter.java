@@ -0,0 +1,22 @@
+package cnn;
+import java.util.Arrays;
+
+// Debug listener printing the output and the propagated gradient of every layer call.
+// Replaces the printing that used to happen inside the layers
+public class FeatureMapPrinter implements LayerListener {
+    public synchronized void forward(int index, Layer layer, Tensor input, Tensor output, long nanos, long allocatedBytes) {
+        System.out.println("[" + layer.type + " Layer " + index + "] output " + shape(output));
+        Utils.displayFeatureMaps(output);
+    }
+
+    public synchronized void backward(int index, Layer layer, Tensor gradient, Tensor delta, long nanos, long allocatedBytes) {
+        System.out.println("[" + layer.type + " Layer " + index + "] delta " + shape(gradient));
+        Utils.displayFeatureMaps(gradient);
+        System.out.println("[" + layer.type + " Layer " + index + "] new delta " + shape(delta));
+        Utils.displayFeatureMaps(delta);
+    }
+
+    private static String shape(Tensor tensor) {
+        return Arrays.toString(tensor.shape());
+    }
+}
@@ -0,0 +1,167 @@
+package cnn;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Radix-2 FFTs for the FFT convolution engine of ConvLayer.
+// A spectrum is the 2D DFT of a real block zero-padded to P x Q (powers of two). Real blocks have Hermitian spectra,
+// so only the columns v = 0 .. Q/2 are kept : spectrum[u][v] as interleaved (re, im) pairs, P x (Q/2 + 1) of them.
+// Products of spectra are circular correlations / convolutions : the caller sizes P and Q so that nothing wraps
+// onto the values it reads back, and reads them at an origin taken modulo P and Q (see inverse).
+public final class Fft {
+    // cos and -sin of 2 pi k / n for k < n / 2, per transform length
+    private static final Map<Integer, double[]> TWIDDLES = new ConcurrentHashMap<>();
+
+    // Row / column buffer reused by each thread across calls
+    private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+
+    private Fft() {
+    }
+
+    // Smallest power of two >= n
+    public static int size(int n) {
+        int power = Integer.highestOneBit(Math.max(1, n));
+        return power == n ? n : power << 1;
+    }
+
+    // Doubles held by one P x Q spectrum
+    public static int spectrumSize(int P, int Q) {
+        return 2 * P * (Q / 2 + 1);
+    }
+
+    // Spectrum of the rows x cols block at block[offset] (row length ld), value (r, c) placed at (r * step, c * step)
+    public static void forward(double[] block, int offset, int rows, int cols, int ld, int step,
+                               int P, int Q, double[] spectrum, int spectrumOffset) {
+        int half = Q / 2 + 1;
+        double[] line = scratch(2 * Math.max(P, Q));
+        Arrays.fill(spectrum, spectrumOffset, spectrumOffset + 2 * P * half, 0.0);
+
+        for (int r = 0; r < rows; r++) {
+            Arrays.fill(line, 0, 2 * Q, 0.0);
+            for (int c = 0; c < cols; c++) {
+                line[2 * c * step] = block[offset + r * ld + c];
+            }
+            transform(line, Q, false);
+            System.arraycopy(line, 0, spectrum, spectrumOffset + 2 * r * step * half, 2 * half);
+        }
+        columns(spectrum, spectrumOffset, P, half, line, false);
+    }
+
+    // Adds the real inverse transform, read at (y0 + y * step, x0 + x * step) modulo (P, Q),
+    // to output[offset + y * ld + x] for y < rows and x < cols. The spectrum is overwritten
+    public static void inverse(double[] spectrum, int spectrumOffset, int P, int Q, int y0, int x0, int step,
+                               int rows, int cols, double[] output, int offset, int ld) {
+        int half = Q / 2 + 1;
+        double[] line = scratch(2 * Math.max(P, Q));
+        double scale = 1.0 / ((double) P * Q);
+        columns(spectrum, spectrumOffset, P, half, line, true);
+
+        // Only the rows that are read back go through the row transform
+        for (int y = 0; y < rows; y++) {
+            int u = Math.floorMod(y0 + y * step, P);
+            System.arraycopy(spectrum, spectrumOffset + 2 * u * half, line, 0, 2 * half);
+            // Each row is still Hermitian : z[Q - v] = conj(z[v])
+            for (int v = half; v < Q; v++) {
+                line[2 * v] = line[2 * (Q - v)];
+                line[2 * v + 1] = -line[2 * (Q - v) + 1];
+            }
+            transform(line, Q, true);
+
+            int outRow = offset + y * ld;
+            for (int x = 0; x < cols; x++) {
+                output[outRow + x] += scale * line[2 * Math.floorMod(x0 + x * step, Q)];
+            }
+        }
+    }
+
+    // c += a * b (or a * conj(b)) over `count` complex values
+    public static void multiplyAccumulate(double[] a, int aOffset, double[] b, int bOffset, boolean conjugate,
+                                          double[] c, int cOffset, int count) {
+        double sign = conjugate ? -1.0 : 1.0;
+        for (int i = 0; i < 2 * count; i += 2) {
+            double ar = a[aOffset + i];
+            double ai = a[aOffset + i + 1];
+            double br = b[bOffset + i];
+            double bi = sign * b[bOffset + i + 1];
+            c[cOffset + i] += ar * br - ai * bi;
+            c[cOffset + i + 1] += ar * bi + ai * br;
+        }
+    }
+
+    // Transform the `half` stored columns of length P in place
+    private static void columns(double[] spectrum, int spectrumOffset, int P, int half, double[] line, boolean inverse) {
+        for (int v = 0; v < half; v++) {
+            int base = spectrumOffset + 2 * v;
+            for (int u = 0; u < P; u++) {
+                line[2 * u] = spectrum[base + 2 * u * half];
+                line[2 * u + 1] = spectrum[base + 2 * u * half + 1];
+            }
+            transform(line, P, inverse);
+            for (int u = 0; u < P; u++) {
+                spectrum[base + 2 * u * half] = line[2 * u];
+                spectrum[base + 2 * u * half + 1] = line[2 * u + 1];
+            }
+        }
+    }
+
+    // Iterative in-place radix-2 FFT of n interleaved complex values (unscaled in both directions)
+    private static void transform(double[] a, int n, boolean inverse) {
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double re = a[2 * i];
+                double im = a[2 * i + 1];
+                a[2 * i] = a[2 * j];
+                a[2 * i + 1] = a[2 * j + 1];
+                a[2 * j] = re;
+                a[2 * j + 1] = im;
+            }
+        }
+
+        double[] w = twiddles(n);
+        double sign = inverse ? -1.0 : 1.0;
+        for (int length = 2; length <= n; length <<= 1) {
+            int half = length >> 1;
+            int stride = n / length;
+            for (int i = 0; i < n; i += length) {
+                for (int k = 0; k < half; k++) {
+                    double wr = w[2 * k * stride];
+                    double wi = sign * w[2 * k * stride + 1];
+                    int p = 2 * (i + k);
+                    int q = 2 * (i + k + half);
+                    double xr = a[q] * wr - a[q + 1] * wi;
+                    double xi = a[q] * wi + a[q + 1] * wr;
+                    a[q] = a[p] - xr;
+                    a[q + 1] = a[p + 1] - xi;
+                    a[p] += xr;
+                    a[p + 1] += xi;
+                }
+            }
+        }
+    }
+
+    private static double[] twiddles(int n) {
+        return TWIDDLES.computeIfAbsent(n, size -> {
+            double[] w = new double[Math.max(2, size)];
+            for (int k = 0; k < size / 2; k++) {
+                double angle = 2 * Math.PI * k / size;
+                w[2 * k] = Math.cos(angle);
+                w[2 * k + 1] = -Math.sin(angle);
+            }
+            return w;
+        });
+    }
+
+    private static double[] scratch(int size) {
+        double[] buffer = SCRATCH.get();
+        if (buffer.length < size) {
+            buffer = new double[size];
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+}
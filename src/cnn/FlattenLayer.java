@@ -1,51 +1,66 @@
 package cnn;
+import java.util.Arrays;
+
 public class FlattenLayer extends Layer {
     private int c_in;
     private int h_in;
     private int w_in;
 
-    public double[][][] forward(double[][][] input) {
-        this.c_in = input.length;
-        this.h_in = input[0].length;
-        this.w_in = input[0][0].length;
+    // Views handed out by the last calls : upstream layers reuse their buffers, so these are usually reused as well
+    private Tensor lastInput;
+    private Tensor output;
+    private Tensor lastGradient;
+    private Tensor new_delta;
 
-        double[][][] output = new double[1][1][c_in * h_in * w_in];
+    public FlattenLayer() {
+        this.type = Type.FLATTEN;
+    }
 
-        for (int z = 0; z < c_in; z++) {
-            for (int y = 0; y < h_in; y++) {
-                for (int x = 0; x < w_in; x++) {
-                    int index = z * (h_in * w_in) + y * w_in + x;
-                    output[0][0][index] = input[z][y][x];
-                }
-            }
+    // [N][c][h][w] -> [N][c * h * w]
+    public int[] compile(int[] inputShape) {
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Flatten layer expects [N][channel][height][width] inputs, got " + Arrays.toString(inputShape));
         }
-
-        return output;
+        this.inputShape = inputShape.clone();
+        this.c_in = inputShape[1];
+        this.h_in = inputShape[2];
+        this.w_in = inputShape[3];
+        return new int[] {inputShape[0], this.c_in * this.h_in * this.w_in};
     }
 
-    public double[][][] backward(double[][][] gradient, double learningRate) {
+    // Flattening is a pure reshape : the output is a view over the input storage, nothing is copied
+    public Tensor forward(Tensor input) {
+        if (input == this.lastInput) {
+            return this.output;
+        }
 
-        System.out.println("[Flatten Layer] delta");
-        Utils.displayFeatureMaps(gradient);
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
 
-        int c_in = this.c_in;
-        int h_in = this.h_in;
-        int w_in = this.w_in;
+        this.lastInput = input;
+        this.lastGradient = null;
+        this.output = input.reshape(input.shape(0), c_in * h_in * w_in);
+        return this.output;
+    }
 
-        double[][][] new_delta = new double[c_in][h_in][w_in];
-        int delta_idx = 0;
+    // The views keep the buffers of the neighbouring layers alive
+    void release() {
+        this.lastInput = null;
+        this.output = null;
+        this.lastGradient = null;
+        this.new_delta = null;
+    }
 
-        for (int c = 0; c < c_in; c++) {
-            for (int h = 0; h < h_in; h++) {
-                for (int w = 0; w < w_in; w++) {
-                    new_delta[c][h][w] = gradient[0][0][delta_idx++];
-                }
-            }
+    public Tensor backward(Tensor gradient) {
+        if (gradient != this.lastGradient) {
+            this.lastGradient = gradient;
+            this.new_delta = gradient.reshape(gradient.shape(0), this.c_in, this.h_in, this.w_in);
         }
+        return this.new_delta;
+    }
 
-        System.out.println("[Flatten Layer] new delta");
-        Utils.displayFeatureMaps(new_delta);
-
-        return new_delta;
+    public Layer replicate() {
+        return new FlattenLayer();
     }
 }
@@ -0,0 +1,189 @@
+package cnn;
+import java.util.Arrays;
+
+// Cache-blocked, register-tiled matrix multiplication on row-major flat arrays :
+// C[m][n] (+)= op(A)[m][k] * op(B)[k][n], where op() optionally transposes the stored matrix.
+// Blocks of A and B are packed into contiguous panels (A in MR-row panels, B in NR-column panels)
+// so that the MR x NR micro-kernel streams both operands sequentially from L1/L2.
+public final class Gemm {
+    // Micro-kernel tile (kept in registers)
+    static final int MR = 4;
+    static final int NR = 4;
+
+    // Cache blocks : a KC x NR panel of B stays in L1, an MC x KC block of A in L2, a KC x NC block of B in L3
+    static final int MC = 64;
+    static final int KC = 256;
+    static final int NC = 1024;
+
+    // Width of the C tiles handed to each task by parallelMultiply
+    static final int TILE_N = 256;
+
+    // Packing buffers are reused by each thread across calls
+    private static final ThreadLocal<double[]> PACKED_A = ThreadLocal.withInitial(() -> new double[MC * KC]);
+    private static final ThreadLocal<double[]> PACKED_B = ThreadLocal.withInitial(() -> new double[KC * NC]);
+
+    private Gemm() {
+    }
+
+    // lda, ldb and ldc are the row lengths of A, B and C as they are stored (before any transposition)
+    public static void multiply(boolean transA, boolean transB, int m, int n, int k,
+                                double[] A, int aOffset, int lda,
+                                double[] B, int bOffset, int ldb,
+                                double[] C, int cOffset, int ldc,
+                                boolean accumulate) {
+        if (!accumulate) {
+            for (int i = 0; i < m; i++) {
+                Arrays.fill(C, cOffset + i * ldc, cOffset + i * ldc + n, 0.0);
+            }
+        }
+        if (m == 0 || n == 0 || k == 0) {
+            return;
+        }
+
+        double[] packedA = PACKED_A.get();
+        double[] packedB = PACKED_B.get();
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(transB, B, bOffset, ldb, pc, jc, kc, nc, packedB);
+
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    packA(transA, A, aOffset, lda, ic, pc, mc, kc, packedA);
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            microKernel(kc, packedA, ir * kc, packedB, jr * kc,
+                                    C, cOffset + (ic + ir) * ldc + jc + jr, ldc,
+                                    Math.min(MR, mc - ir), Math.min(NR, nc - jr));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Same as multiply, with C split into MC x TILE_N tiles computed in parallel on the Config pool.
+    // Each element of C is still summed in the same order, so the result does not depend on the thread count
+    public static void parallelMultiply(boolean transA, boolean transB, int m, int n, int k,
+                                        double[] A, int aOffset, int lda,
+                                        double[] B, int bOffset, int ldb,
+                                        double[] C, int cOffset, int ldc,
+                                        boolean accumulate) {
+        int rowTiles = Parallel.tiles(m, MC);
+        int colTiles = Parallel.tiles(n, TILE_N);
+
+        Parallel.forEach(rowTiles * colTiles, tile -> {
+            int row = (tile / colTiles) * MC;
+            int col = (tile % colTiles) * TILE_N;
+
+            multiply(transA, transB, Math.min(MC, m - row), Math.min(TILE_N, n - col), k,
+                    A, aOffset + (transA ? row : row * lda), lda,
+                    B, bOffset + (transB ? col * ldb : col), ldb,
+                    C, cOffset + row * ldc + col, ldc, accumulate);
+        });
+    }
+
+    // Element (i, p) of op(A)
+    private static void packA(boolean transA, double[] A, int aOffset, int lda, int row, int col, int mc, int kc, double[] packed) {
+        int index = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            for (int p = 0; p < kc; p++) {
+                for (int i = 0; i < MR; i++) {
+                    if (ir + i < mc) {
+                        int r = row + ir + i;
+                        int c = col + p;
+                        packed[index++] = transA ? A[aOffset + c * lda + r] : A[aOffset + r * lda + c];
+                    } else {
+                        packed[index++] = 0.0;
+                    }
+                }
+            }
+        }
+    }
+
+    // Element (p, j) of op(B)
+    private static void packB(boolean transB, double[] B, int bOffset, int ldb, int row, int col, int kc, int nc, double[] packed) {
+        int index = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            for (int p = 0; p < kc; p++) {
+                for (int j = 0; j < NR; j++) {
+                    if (jr + j < nc) {
+                        int r = row + p;
+                        int c = col + jr + j;
+                        packed[index++] = transB ? B[bOffset + c * ldb + r] : B[bOffset + r * ldb + c];
+                    } else {
+                        packed[index++] = 0.0;
+                    }
+                }
+            }
+        }
+    }
+
+    // C[MR][NR] += Apanel[kc][MR] * Bpanel[kc][NR], only the top-left rows x cols corner is written back
+    private static void microKernel(int kc, double[] a, int aIndex, double[] b, int bIndex,
+                                    double[] C, int cIndex, int ldc, int rows, int cols) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < kc; p++) {
+            double a0 = a[aIndex];
+            double a1 = a[aIndex + 1];
+            double a2 = a[aIndex + 2];
+            double a3 = a[aIndex + 3];
+            double b0 = b[bIndex];
+            double b1 = b[bIndex + 1];
+            double b2 = b[bIndex + 2];
+            double b3 = b[bIndex + 3];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+
+            aIndex += MR;
+            bIndex += NR;
+        }
+
+        if (rows == MR && cols == NR) {
+            C[cIndex] += c00; C[cIndex + 1] += c01; C[cIndex + 2] += c02; C[cIndex + 3] += c03;
+            cIndex += ldc;
+            C[cIndex] += c10; C[cIndex + 1] += c11; C[cIndex + 2] += c12; C[cIndex + 3] += c13;
+            cIndex += ldc;
+            C[cIndex] += c20; C[cIndex + 1] += c21; C[cIndex + 2] += c22; C[cIndex + 3] += c23;
+            cIndex += ldc;
+            C[cIndex] += c30; C[cIndex + 1] += c31; C[cIndex + 2] += c32; C[cIndex + 3] += c33;
+            return;
+        }
+
+        // Edge tile
+        storeRow(C, cIndex, cols, c00, c01, c02, c03);
+        if (rows > 1) {
+            storeRow(C, cIndex + ldc, cols, c10, c11, c12, c13);
+        }
+        if (rows > 2) {
+            storeRow(C, cIndex + 2 * ldc, cols, c20, c21, c22, c23);
+        }
+        if (rows > 3) {
+            storeRow(C, cIndex + 3 * ldc, cols, c30, c31, c32, c33);
+        }
+    }
+
+    private static void storeRow(double[] C, int index, int cols, double v0, double v1, double v2, double v3) {
+        C[index] += v0;
+        if (cols > 1) {
+            C[index + 1] += v1;
+        }
+        if (cols > 2) {
+            C[index + 2] += v2;
+        }
+        if (cols > 3) {
+            C[index + 3] += v3;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package cnn;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Convolution whose channels are split into `groups` independent groups : kernel k only sees the
+// channels / groups input channels of its group (k / (kernelNum / groups)), so kernels are [k][channels / groups][h][w]
+// and weights and FLOPs are divided by the number of groups. groups == 1 is the dense ConvLayer,
+// groups == channels is a depthwise convolution (see depthwise and SeparableConvLayer).
+// Runs the direct loops : every kernel weight scales a row segment of the input, which is one ArrayOps call at stride 1
+public class GroupedConvLayer extends Layer {
+    private final int kernelNum;
+    private final int channels;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int groups;
+
+    private final Tensor kernels; // [k][channels / groups][h][w]
+    private final double[] biases;
+    private final Parameter kernelParameter;
+    private final Parameter biasParameter;
+
+    private int stride;
+    private int padding;
+    private Activation activation;
+
+    private int outputHeight;
+    private int outputWidth;
+
+    // Batch buffers kept for backward, reused across calls
+    private Tensor input;
+    private Tensor output;
+    private Tensor outputGradient;
+    private Tensor inputGradient;
+
+    private static final int TILE_ROWS = 8;
+
+    public GroupedConvLayer(int kernelNum, int channels, int kernelHeight, int kernelWidth, int groups) {
+        if (groups < 1 || channels % groups != 0 || kernelNum % groups != 0) {
+            throw new IllegalArgumentException(groups + " groups do not divide " + channels + " channels and " + kernelNum + " kernels");
+        }
+        this.type = Type.GROUPED_CONV;
+        this.kernelNum = kernelNum;
+        this.channels = channels;
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.groups = groups;
+        this.stride = 1;
+        this.padding = 0;
+        this.activation = Activation.RELU;
+
+        this.kernels = new Tensor(kernelNum, channels / groups, kernelHeight, kernelWidth);
+        this.biases = new double[kernelNum];
+        this.kernelParameter = new Parameter(this.kernels);
+        this.biasParameter = new Parameter(Tensor.wrap(this.biases, kernelNum));
+
+        Random rand = new Random();
+        double[] K = this.kernels.data();
+        for (int i = 0; i < K.length; i++) {
+            K[i] = rand.nextGaussian() * 0.01;
+        }
+    }
+
+    // One kernel per channel
+    public static GroupedConvLayer depthwise(int channels, int kernelHeight, int kernelWidth) {
+        return new GroupedConvLayer(channels, channels, kernelHeight, kernelWidth, channels);
+    }
+
+    // Replica sharing the kernels and biases of source
+    private GroupedConvLayer(GroupedConvLayer source) {
+        this.type = Type.GROUPED_CONV;
+        this.kernelNum = source.kernelNum;
+        this.channels = source.channels;
+        this.kernelHeight = source.kernelHeight;
+        this.kernelWidth = source.kernelWidth;
+        this.groups = source.groups;
+        this.stride = source.stride;
+        this.padding = source.padding;
+        this.activation = source.activation;
+
+        this.kernels = source.kernels;
+        this.biases = source.biases;
+        this.kernelParameter = source.kernelParameter.replicate();
+        this.biasParameter = source.biasParameter.replicate();
+    }
+
+    public Layer replicate() {
+        return new GroupedConvLayer(this);
+    }
+
+    public List<Parameter> parameters() {
+        return List.of(this.kernelParameter, this.biasParameter);
+    }
+
+    int[] config() {
+        return new int[] {this.kernelNum, this.channels, this.kernelHeight, this.kernelWidth, this.stride, this.padding, this.groups,
+                Activation.code(this.activation)};
+    }
+
+    // [N][channel][height][width] -> [N][kernel][outputHeight][outputWidth]
+    public int[] compile(int[] inputShape) {
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Grouped conv layer expects [N][channel][height][width] inputs, got " + Arrays.toString(inputShape));
+        }
+        if (inputShape[1] != this.channels) {
+            throw new IllegalArgumentException("Grouped conv layer expects " + this.channels + " input channels, got " + inputShape[1]);
+        }
+
+        int h_out = (inputShape[2] - this.kernelHeight + 2 * this.padding) / this.stride + 1;
+        int w_out = (inputShape[3] - this.kernelWidth + 2 * this.padding) / this.stride + 1;
+        if (h_out < 1 || w_out < 1) {
+            throw new IllegalArgumentException("Invalid output dimensions " + h_out + "x" + w_out + " for input " + Arrays.toString(inputShape));
+        }
+
+        this.inputShape = inputShape.clone();
+        this.outputHeight = h_out;
+        this.outputWidth = w_out;
+        this.output = Tensor.reuse(this.output, inputShape[0], this.kernelNum, h_out, w_out);
+        return new int[] {inputShape[0], this.kernelNum, h_out, w_out};
+    }
+
+    // A multiply and an add per weight of the group, plus bias and activation, for every output value
+    public long flops(int batch) {
+        long outputs = (long) batch * this.kernelNum * this.outputHeight * this.outputWidth;
+        return outputs * (2L * (this.channels / this.groups) * this.kernelHeight * this.kernelWidth + 2);
+    }
+
+    // Output columns [fromX, toX) whose input column x * stride + kx - padding is inside the input
+    private int fromX(int kx) {
+        return Math.max(0, Math.floorDiv(this.padding - kx + this.stride - 1, this.stride));
+    }
+
+    private int toX(int kx, int w_in) {
+        return Math.min(this.outputWidth, Math.floorDiv(w_in - 1 + this.padding - kx, this.stride) + 1);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
+        int batch = input.shape(0);
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
+        int h_out = this.outputHeight;
+        int w_out = this.outputWidth;
+        int groupChannels = this.channels / this.groups;
+        int groupKernels = this.kernelNum / this.groups;
+
+        Tensor output = Tensor.reuse(this.output, batch, this.kernelNum, h_out, w_out).fill(0.0);
+        this.output = output;
+        this.input = this.inference ? null : input;
+
+        double[] I = input.data();
+        double[] K = this.kernels.data();
+        double[] O = output.data();
+        int i0 = input.offset();
+        ArrayOps ops = Config.ops();
+
+        // Tasks are (sample, kernel, tile of TILE_ROWS output rows), each one owns its slice of the output
+        int tiles = Parallel.tiles(h_out, TILE_ROWS);
+        Parallel.forEach(batch * this.kernelNum * tiles, task -> {
+            int fromY = (task % tiles) * TILE_ROWS;
+            int toY = Math.min(h_out, fromY + TILE_ROWS);
+            int k = (task / tiles) % this.kernelNum;
+            int n = task / (tiles * this.kernelNum);
+            int firstChannel = (k / groupKernels) * groupChannels;
+            int outBase = (n * this.kernelNum + k) * h_out * w_out;
+
+            for (int c = 0; c < groupChannels; c++) {
+                int inBase = i0 + (n * this.channels + firstChannel + c) * h_in * w_in;
+                int kBase = (k * groupChannels + c) * this.kernelHeight * this.kernelWidth;
+
+                for (int y = fromY; y < toY; y++) {
+                    int outRow = outBase + y * w_out;
+                    for (int ky = 0; ky < this.kernelHeight; ky++) {
+                        int inputY = y * this.stride + ky - this.padding;
+                        if (inputY < 0 || inputY >= h_in) {
+                            continue;
+                        }
+                        for (int kx = 0; kx < this.kernelWidth; kx++) {
+                            int fromX = fromX(kx);
+                            int toX = toX(kx, w_in);
+                            int inRow = inBase + inputY * w_in + kx - this.padding;
+                            double weight = K[kBase + ky * this.kernelWidth + kx];
+                            if (this.stride == 1) {
+                                if (fromX < toX) {
+                                    ops.axpy(weight, I, inRow + fromX, O, outRow + fromX, toX - fromX);
+                                }
+                            } else {
+                                for (int x = fromX; x < toX; x++) {
+                                    O[outRow + x] += weight * I[inRow + x * this.stride];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        int area = h_out * w_out;
+        Parallel.forEach(batch * this.kernelNum, map -> this.activation.apply(O, map * area, area, this.biases[map % this.kernelNum]));
+        return output;
+    }
+
+    // Input gradients are split by (sample, input channel) and kernel gradients by kernel, so no two tasks write the same value
+    public Tensor backward(Tensor gradient) {
+        gradient = gradient.contiguous();
+        int batch = this.input.shape(0);
+        int h_in = this.input.shape(2);
+        int w_in = this.input.shape(3);
+        int h_out = this.outputHeight;
+        int w_out = this.outputWidth;
+        int area = h_out * w_out;
+        int groupChannels = this.channels / this.groups;
+        int groupKernels = this.kernelNum / this.groups;
+
+        // Gradient before the activation
+        Tensor delta_Z = Tensor.reuse(this.outputGradient, batch, this.kernelNum, h_out, w_out);
+        this.outputGradient = delta_Z;
+        double[] dZ = delta_Z.data();
+        System.arraycopy(gradient.data(), gradient.offset(), dZ, 0, delta_Z.size());
+        this.activation.backward(this.output.data(), 0, dZ, 0, delta_Z.size());
+
+        Tensor delta_I = Tensor.reuse(this.inputGradient, batch, this.channels, h_in, w_in).fill(0.0);
+        this.inputGradient = delta_I;
+        double[] dI = delta_I.data();
+        double[] I = this.input.data();
+        int i0 = this.input.offset();
+        double[] K = this.kernels.data();
+        double[] dK = this.kernelParameter.gradient.data();
+        double[] dB = this.biasParameter.gradient.data();
+        ArrayOps ops = Config.ops();
+
+        // dI[n][c] += w * dZ[n][k] over the kernels of the group of c, the transpose of the forward AXPYs
+        Parallel.forEach(batch * this.channels, task -> {
+            int n = task / this.channels;
+            int channel = task % this.channels;
+            int group = channel / groupChannels;
+            int c = channel % groupChannels;
+            int inBase = (n * this.channels + channel) * h_in * w_in;
+
+            for (int k = group * groupKernels; k < (group + 1) * groupKernels; k++) {
+                int outBase = (n * this.kernelNum + k) * area;
+                int kBase = (k * groupChannels + c) * this.kernelHeight * this.kernelWidth;
+                for (int y = 0; y < h_out; y++) {
+                    for (int ky = 0; ky < this.kernelHeight; ky++) {
+                        int inputY = y * this.stride + ky - this.padding;
+                        if (inputY < 0 || inputY >= h_in) {
+                            continue;
+                        }
+                        for (int kx = 0; kx < this.kernelWidth; kx++) {
+                            int fromX = fromX(kx);
+                            int toX = toX(kx, w_in);
+                            int inRow = inBase + inputY * w_in + kx - this.padding;
+                            double weight = K[kBase + ky * this.kernelWidth + kx];
+                            if (this.stride == 1) {
+                                if (fromX < toX) {
+                                    ops.axpy(weight, dZ, outBase + y * w_out + fromX, dI, inRow + fromX, toX - fromX);
+                                }
+                            } else {
+                                for (int x = fromX; x < toX; x++) {
+                                    dI[inRow + x * this.stride] += weight * dZ[outBase + y * w_out + x];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        // dK[k][c] = sum over the batch of dZ[n][k] . the input rows each weight scaled, dB[k] = sum of dZ[n][k]
+        Parallel.forEach(this.kernelNum, k -> {
+            int firstChannel = (k / groupKernels) * groupChannels;
+            for (int n = 0; n < batch; n++) {
+                int outBase = (n * this.kernelNum + k) * area;
+                for (int i = outBase; i < outBase + area; i++) {
+                    dB[k] += dZ[i];
+                }
+
+                for (int c = 0; c < groupChannels; c++) {
+                    int inBase = i0 + (n * this.channels + firstChannel + c) * h_in * w_in;
+                    int kBase = (k * groupChannels + c) * this.kernelHeight * this.kernelWidth;
+                    for (int ky = 0; ky < this.kernelHeight; ky++) {
+                        for (int kx = 0; kx < this.kernelWidth; kx++) {
+                            int fromX = fromX(kx);
+                            int toX = toX(kx, w_in);
+                            double sum = 0.0;
+                            for (int y = 0; y < h_out; y++) {
+                                int inputY = y * this.stride + ky - this.padding;
+                                if (inputY < 0 || inputY >= h_in || fromX >= toX) {
+                                    continue;
+                                }
+                                int inRow = inBase + inputY * w_in + kx - this.padding;
+                                if (this.stride == 1) {
+                                    sum += ops.dot(dZ, outBase + y * w_out + fromX, I, inRow + fromX, toX - fromX);
+                                } else {
+                                    for (int x = fromX; x < toX; x++) {
+                                        sum += dZ[outBase + y * w_out + x] * I[inRow + x * this.stride];
+                                    }
+                                }
+                            }
+                            dK[kBase + ky * this.kernelWidth + kx] += sum;
+                        }
+                    }
+                }
+            }
+        });
+
+        return delta_I;
+    }
+
+    void release() {
+        this.input = null;
+        this.output = null;
+        this.outputGradient = null;
+        this.inputGradient = null;
+    }
+
+    public void setStride(int stride) {
+        this.stride = stride;
+        this.inputShape = null;
+    }
+
+    public void setPadding(int padding) {
+        this.padding = padding;
+        this.inputShape = null;
+    }
+
+    // ReLU by default
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+    }
+
+    public Activation getActivation() {
+        return this.activation;
+    }
+
+    void approximateActivations() {
+        setActivation(getActivation().approximation());
+    }
+
+    public int getGroups() {
+        return this.groups;
+    }
+}
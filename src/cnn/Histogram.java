@@ -0,0 +1,69 @@
+package cnn;
+
+// Distribution of non-negative values (wall times in nanoseconds) in power-of-two buckets :
+// bucket b counts the values in [2^(b-1), 2^b), so percentiles are exact to a factor of 2.
+// Not thread-safe, Metrics synchronizes around it
+public final class Histogram {
+    private final long[] buckets;
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    public Histogram() {
+        this.buckets = new long[65];
+        this.min = Long.MAX_VALUE;
+    }
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.buckets[64 - Long.numberOfLeadingZeros(value)]++;
+        this.count++;
+        this.sum += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    // Upper bound of the bucket holding the p-th percentile (0 < p <= 100), capped by the largest value
+    public long percentile(double p) {
+        long rank = (long) Math.ceil(p / 100.0 * count);
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b];
+            if (seen >= rank && seen > 0) {
+                return b == 0 ? 0 : Math.min(max, b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+            }
+        }
+        return max;
+    }
+
+    public Histogram copy() {
+        Histogram copy = new Histogram();
+        System.arraycopy(this.buckets, 0, copy.buckets, 0, this.buckets.length);
+        copy.count = this.count;
+        copy.sum = this.sum;
+        copy.min = this.min;
+        copy.max = this.max;
+        return copy;
+    }
+}
@@ -0,0 +1,123 @@
+package cnn;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+// Images and labels in the IDX format of MNIST / Fashion-MNIST, read from memory-mapped files.
+// Images [N][rows][cols] become [1][rows][cols] inputs scaled to [0, 1] (then (x - mean) / std),
+// labels [N] become one-hot targets of `classes` values.
+// Unsigned byte (0x08) and float (0x0D) images are supported, labels must be unsigned bytes
+public class IdxDataset implements Dataset {
+    private static final int UNSIGNED_BYTE = 0x08;
+    private static final int FLOAT = 0x0D;
+
+    private final MappedFile images;
+    private final MappedFile labels;
+    private final int type;
+    private final int count;
+    private final int rows;
+    private final int cols;
+    private final int classes;
+
+    private double mean;
+    private double std;
+
+    public IdxDataset(Path images, Path labels, int classes) throws IOException {
+        int[] imageDims = dimensions(images, 3);
+        int[] labelDims = dimensions(labels, 1);
+        if (imageDims[0] != labelDims[0]) {
+            throw new IOException(images + " holds " + imageDims[0] + " images but " + labels + " holds " + labelDims[0] + " labels");
+        }
+        if (typeOf(labels) != UNSIGNED_BYTE) {
+            throw new IOException("Labels of " + labels + " must be unsigned bytes");
+        }
+
+        this.type = typeOf(images);
+        if (this.type != UNSIGNED_BYTE && this.type != FLOAT) {
+            throw new IOException("Unsupported IDX element type 0x" + Integer.toHexString(this.type) + " in " + images);
+        }
+        this.count = labelDims[0];
+        this.rows = imageDims[1];
+        this.cols = imageDims[2];
+        this.classes = classes;
+        this.mean = 0.0;
+        this.std = 1.0;
+
+        int elementBytes = this.type == FLOAT ? Float.BYTES : 1;
+        this.images = new MappedFile(images, 4 + 4 * 3, this.rows * this.cols * elementBytes, ByteOrder.BIG_ENDIAN);
+        this.labels = new MappedFile(labels, 4 + 4, 1, ByteOrder.BIG_ENDIAN);
+        if (this.images.records() < this.count || this.labels.records() < this.count) {
+            throw new IOException("IDX files " + images + " and " + labels + " are truncated");
+        }
+    }
+
+    // 10 classes, as in MNIST and Fashion-MNIST
+    public IdxDataset(Path images, Path labels) throws IOException {
+        this(images, labels, 10);
+    }
+
+    // Applied after scaling to [0, 1], e.g. 0.1307 and 0.3081 for MNIST
+    public void setNormalization(double mean, double std) {
+        this.mean = mean;
+        this.std = std;
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public int[] inputShape() {
+        return new int[] {1, this.rows, this.cols};
+    }
+
+    public int[] targetShape() {
+        return new int[] {this.classes};
+    }
+
+    public void get(int index, Tensor input, Tensor target) {
+        ByteBuffer pixels = this.images.buffer(index);
+        int from = this.images.offset(index);
+        double[] X = input.data();
+        int x0 = input.offset();
+        int area = this.rows * this.cols;
+        double scale = 1.0 / (255.0 * this.std);
+        double shift = this.mean / this.std;
+
+        if (this.type == UNSIGNED_BYTE) {
+            for (int i = 0; i < area; i++) {
+                X[x0 + i] = (pixels.get(from + i) & 0xFF) * scale - shift;
+            }
+        } else {
+            for (int i = 0; i < area; i++) {
+                X[x0 + i] = (pixels.getFloat(from + i * Float.BYTES) - this.mean) / this.std;
+            }
+        }
+
+        int label = this.labels.buffer(index).get(this.labels.offset(index)) & 0xFF;
+        if (label >= this.classes) {
+            throw new IllegalStateException("Label " + label + " of sample " + index + " is outside of the " + this.classes + " classes");
+        }
+        double[] T = target.data();
+        for (int c = 0; c < this.classes; c++) {
+            T[target.offset() + c] = c == label ? 1.0 : 0.0;
+        }
+    }
+
+    // Header : two zero bytes, element type, rank, then one big-endian int per dimension
+    private static int[] dimensions(Path path, int rank) throws IOException {
+        ByteBuffer header = MappedFile.header(path, 4 + 4 * rank, ByteOrder.BIG_ENDIAN);
+        if (header.get(0) != 0 || header.get(1) != 0 || header.get(3) != rank) {
+            throw new IOException(path + " is not a rank " + rank + " IDX file");
+        }
+        int[] dims = new int[rank];
+        for (int d = 0; d < rank; d++) {
+            dims[d] = header.getInt(4 + 4 * d);
+        }
+        return dims;
+    }
+
+    private static int typeOf(Path path) throws IOException {
+        return MappedFile.header(path, 4, ByteOrder.BIG_ENDIAN).get(2) & 0xFF;
+    }
+}
@@ -0,0 +1,92 @@
+package cnn;
+
+// Lowering of a convolution window scan to a matrix, so that the convolution becomes a single GEMM.
+// Column matrix layout : col[(c * kernelHeight + ky) * kernelWidth + kx][outY * outputWidth + outX],
+// which matches the row layout of the kernels [k][c][ky][kx] seen as a [k][c * kh * kw] matrix.
+// The per-channel variants only touch the rows of one channel, so channels can be processed in parallel.
+public final class Im2Col {
+    private Im2Col() {
+    }
+
+    // Unfold one [channels][height][width] sample into col (zero where the window hits padding)
+    public static void im2col(double[] input, int inputOffset, int channels, int height, int width,
+                              int kernelHeight, int kernelWidth, int stride, int padding,
+                              int outputHeight, int outputWidth, double[] col) {
+        for (int c = 0; c < channels; c++) {
+            im2colChannel(input, inputOffset, c, height, width, kernelHeight, kernelWidth, stride, padding, outputHeight, outputWidth, col);
+        }
+    }
+
+    public static void im2colChannel(double[] input, int inputOffset, int c, int height, int width,
+                                     int kernelHeight, int kernelWidth, int stride, int padding,
+                                     int outputHeight, int outputWidth, double[] col) {
+        int outputArea = outputHeight * outputWidth;
+        int channelBase = inputOffset + c * height * width;
+        int row = c * kernelHeight * kernelWidth;
+
+        for (int ky = 0; ky < kernelHeight; ky++) {
+            for (int kx = 0; kx < kernelWidth; kx++) {
+                int colBase = row * outputArea;
+
+                for (int outY = 0; outY < outputHeight; outY++) {
+                    int inY = outY * stride + ky - padding;
+                    int colRow = colBase + outY * outputWidth;
+
+                    if (inY < 0 || inY >= height) {
+                        for (int outX = 0; outX < outputWidth; outX++) {
+                            col[colRow + outX] = 0.0;
+                        }
+                        continue;
+                    }
+
+                    int inRow = channelBase + inY * width;
+                    for (int outX = 0; outX < outputWidth; outX++) {
+                        int inX = outX * stride + kx - padding;
+                        col[colRow + outX] = (inX < 0 || inX >= width) ? 0.0 : input[inRow + inX];
+                    }
+                }
+                row++;
+            }
+        }
+    }
+
+    // Fold col back into a [channels][height][width] gradient, summing overlapping windows (adjoint of im2col)
+    public static void col2im(double[] col, int channels, int height, int width,
+                              int kernelHeight, int kernelWidth, int stride, int padding,
+                              int outputHeight, int outputWidth, double[] output, int outputOffset) {
+        for (int c = 0; c < channels; c++) {
+            col2imChannel(col, c, height, width, kernelHeight, kernelWidth, stride, padding, outputHeight, outputWidth, output, outputOffset);
+        }
+    }
+
+    public static void col2imChannel(double[] col, int c, int height, int width,
+                                     int kernelHeight, int kernelWidth, int stride, int padding,
+                                     int outputHeight, int outputWidth, double[] output, int outputOffset) {
+        int outputArea = outputHeight * outputWidth;
+        int channelBase = outputOffset + c * height * width;
+        int row = c * kernelHeight * kernelWidth;
+
+        for (int ky = 0; ky < kernelHeight; ky++) {
+            for (int kx = 0; kx < kernelWidth; kx++) {
+                int colBase = row * outputArea;
+
+                for (int outY = 0; outY < outputHeight; outY++) {
+                    int inY = outY * stride + ky - padding;
+                    if (inY < 0 || inY >= height) {
+                        continue;
+                    }
+
+                    int inRow = channelBase + inY * width;
+                    int colRow = colBase + outY * outputWidth;
+                    for (int outX = 0; outX < outputWidth; outX++) {
+                        int inX = outX * stride + kx - padding;
+                        if (inX >= 0 && inX < width) {
+                            output[inRow + inX] += col[colRow + outX];
+                        }
+                    }
+                }
+                row++;
+            }
+        }
+    }
+}
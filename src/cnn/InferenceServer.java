@@ -0,0 +1,284 @@
+package cnn;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Embeddable serving front for a compiled network : single-sample requests from any number of threads are
+// coalesced into micro-batches, so every weight read serves a whole batch instead of one sample.
+// A batch closes when it holds maxBatchSize requests or when its oldest request has waited maxDelayMicros,
+// then one batched predict runs and every caller gets its own row of the output.
+// Callers block in predict (cheap on virtual threads) or use submit. The batches run on one platform thread,
+// the layers spread each of them over the Config pool. startHttp adds a small HTTP front end on localhost whose
+// handlers run on virtual threads : POST /predict takes the sample values separated by commas or whitespace and
+// answers the outputs separated by commas, GET /metrics answers stats()
+public final class InferenceServer implements AutoCloseable {
+    private final CNN network;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    // [channel][height][width] or [features] : the compiled input shape without the batch
+    private final int[] sampleShape;
+    private final int sampleSize;
+
+    private final BlockingQueue<Request> queue;
+    private final Thread batcher;
+    private volatile boolean running;
+    private Tensor batch;
+    private HttpServer http;
+    private ExecutorService handlers;
+
+    // Queue times in nanoseconds and batch sizes, guarded by this
+    private final Histogram queueTimes;
+    private final Histogram batchSizes;
+
+    private static final class Request {
+        final Tensor input;
+        final long enqueued;
+        final CompletableFuture<Tensor> result;
+
+        Request(Tensor input) {
+            this.input = input;
+            this.enqueued = System.nanoTime();
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+    // Snapshot of the server metrics, queue times in nanoseconds
+    public static final class Stats {
+        public final long requests;
+        public final long batches;
+        public final Histogram queueTime;
+        public final Histogram batchSize;
+
+        private Stats(Histogram queueTime, Histogram batchSize) {
+            this.requests = batchSize.sum();
+            this.batches = batchSize.count();
+            this.queueTime = queueTime;
+            this.batchSize = batchSize;
+        }
+
+        public String toString() {
+            return String.format("requests %d%nbatches %d%nbatch size mean %.2f max %d%nqueue time us mean %.1f p50 %.1f p99 %.1f max %.1f%n",
+                    this.requests, this.batches, this.batchSize.mean(), this.batchSize.max(), this.queueTime.mean() / 1e3,
+                    this.queueTime.percentile(50) / 1e3, this.queueTime.percentile(99) / 1e3, this.queueTime.max() / 1e3);
+        }
+    }
+
+    // network must be compiled, only the shape of its samples matters (the batch size is maxBatchSize)
+    public InferenceServer(CNN network, int maxBatchSize, long maxDelayMicros) {
+        int[] inputShape = network.getInputShape();
+        if (inputShape == null) {
+            throw new IllegalStateException("The network must be compiled before it is served.");
+        }
+        if (maxBatchSize < 1 || maxDelayMicros < 0) {
+            throw new IllegalArgumentException("Invalid batch size " + maxBatchSize + " or delay " + maxDelayMicros);
+        }
+        this.network = network;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayMicros * 1000;
+        this.sampleShape = new int[inputShape.length - 1];
+        System.arraycopy(inputShape, 1, this.sampleShape, 0, this.sampleShape.length);
+        this.sampleSize = Tensor.count(this.sampleShape);
+        this.batch = new Tensor(CNN.batchShape(maxBatchSize, this.sampleShape));
+
+        this.queue = new LinkedBlockingQueue<>();
+        this.queueTimes = new Histogram();
+        this.batchSizes = new Histogram();
+        this.running = true;
+        this.batcher = new Thread(this::run, "cnn-inference-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    // Output of one sample, of the sample shape or with a leading batch dimension of 1
+    public CompletableFuture<Tensor> submit(Tensor sample) {
+        if (sample.size() != this.sampleSize) {
+            throw new IllegalArgumentException("Sample of " + sample.size() + " values, the network takes " + this.sampleSize);
+        }
+        if (!this.running) {
+            throw new IllegalStateException("Inference server is closed.");
+        }
+        Request request = new Request(sample);
+        this.queue.add(request);
+        // close() may have drained the queue before this request got in
+        if (!this.running && this.queue.remove(request)) {
+            request.result.completeExceptionally(new IllegalStateException("Inference server is closed."));
+        }
+        return request.result;
+    }
+
+    // Blocks until the batch holding the sample has run
+    public Tensor predict(Tensor sample) {
+        try {
+            return submit(sample).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a prediction", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Prediction failed", e.getCause());
+        }
+    }
+
+    // Batcher loop : waits for a first request, then collects more until the batch is full or the first one is due
+    private void run() {
+        List<Request> requests = new ArrayList<>(this.maxBatchSize);
+        try {
+            while (this.running) {
+                Request first = this.queue.take();
+                requests.add(first);
+                long deadline = first.enqueued + this.maxDelayNanos;
+
+                while (requests.size() < this.maxBatchSize) {
+                    Request next = this.queue.poll();
+                    if (next == null) {
+                        long wait = deadline - System.nanoTime();
+                        next = wait > 0 ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                    requests.add(next);
+                }
+
+                runBatch(requests);
+                requests.clear();
+            }
+        } catch (InterruptedException e) {
+            // close() stops the loop
+        }
+        fail(requests);
+    }
+
+    private void runBatch(List<Request> requests) {
+        int count = requests.size();
+        long start = System.nanoTime();
+        try {
+            double[] B = this.batch.data();
+            for (int i = 0; i < count; i++) {
+                Tensor input = requests.get(i).input.contiguous();
+                System.arraycopy(input.data(), input.offset(), B, i * this.sampleSize, this.sampleSize);
+            }
+            this.batch.markModified();
+
+            // predict hands back a copy owned by this batch : its rows can be given out as they are
+            Tensor output = this.network.predict(this.batch.narrow(0, count));
+            synchronized (this) {
+                for (Request request : requests) {
+                    this.queueTimes.record(start - request.enqueued);
+                }
+                this.batchSizes.record(count);
+            }
+            for (int i = 0; i < count; i++) {
+                requests.get(i).result.complete(output.slice(i));
+            }
+        } catch (RuntimeException e) {
+            for (Request request : requests) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void fail(List<Request> requests) {
+        for (Request request = this.queue.poll(); request != null; request = this.queue.poll()) {
+            requests.add(request);
+        }
+        for (Request request : requests) {
+            request.result.completeExceptionally(new IllegalStateException("Inference server is closed."));
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(this.queueTimes.copy(), this.batchSizes.copy());
+    }
+
+    // Serves the HTTP front end on localhost, port 0 picks a free port. Returns the port
+    public synchronized int startHttp(int port) throws IOException {
+        if (this.http != null) {
+            throw new IllegalStateException("HTTP front end already started on port " + this.http.getAddress().getPort());
+        }
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.handlers = Executors.newVirtualThreadPerTaskExecutor();
+        this.http.setExecutor(this.handlers);
+        this.http.createContext("/predict", this::handlePredict);
+        this.http.createContext("/metrics", exchange -> respond(exchange, 200, stats().toString()));
+        this.http.start();
+        return this.http.getAddress().getPort();
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "POST the sample values to /predict\n");
+            return;
+        }
+
+        Tensor sample;
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+            String[] fields = body.isEmpty() ? new String[0] : body.split("[,\\s]+");
+            if (fields.length != this.sampleSize) {
+                respond(exchange, 400, "Expected " + this.sampleSize + " values, got " + fields.length + "\n");
+                return;
+            }
+            double[] values = new double[this.sampleSize];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Double.parseDouble(fields[i]);
+            }
+            sample = Tensor.wrap(values, this.sampleShape);
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "Invalid number : " + e.getMessage() + "\n");
+            return;
+        }
+
+        try {
+            double[] output = predict(sample).toArray();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < output.length; i++) {
+                text.append(i == 0 ? "" : ",").append(output[i]);
+            }
+            respond(exchange, 200, text.append('\n').toString());
+        } catch (RuntimeException e) {
+            respond(exchange, 503, e.getMessage() + "\n");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Stops the HTTP front end and the batcher, requests still queued fail with an IllegalStateException
+    public void close() {
+        this.running = false;
+        synchronized (this) {
+            if (this.http != null) {
+                this.http.stop(0);
+                this.handlers.shutdownNow();
+            }
+        }
+        this.batcher.interrupt();
+        try {
+            this.batcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,20 +1,98 @@
 package cnn;
+import java.util.List;
+
 public class Layer {
     enum Type {
         DENSE,
         CONV,
         POOLING,
+        FLATTEN,
+        // Fused conv and pooling, only found in compiled plans (see ConvPoolLayer)
+        CONV_POOL,
+        // Inference-only layers reading their weights from a mapped model file (see ModelFile.map)
+        MAPPED_DENSE,
+        MAPPED_CONV,
+        // Inference-only int8 layers built by Quantizer
+        QUANTIZED_DENSE,
+        QUANTIZED_CONV,
+        // Pruned dense layer in compressed sparse rows (see Pruning)
+        SPARSE_DENSE,
+        GROUPED_CONV,
+        // Depthwise then pointwise convolution
+        SEPARABLE_CONV,
     }
 
     protected Type type;
 
-    public double[][][] forward(double[][][] input) {
+    // Shape [N][...] of the input this layer was compiled for, null until compile() runs
+    protected int[] inputShape;
+
+    // Inference only : forward keeps nothing for backpropagation (set on CNN.predict replicas)
+    protected boolean inference;
+
+    // Checks that inputs of shape [N][...] are valid for this layer, sizes its buffers for them
+    // and returns the output shape. Throws IllegalArgumentException when the shape is not accepted
+    public int[] compile(int[] inputShape) {
+        // This method should be overridden in subclasses
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be compiled.");
+    }
+
+    // True when input has the sample shape this layer was compiled for (the batch size may differ)
+    protected boolean isCompiledFor(Tensor input) {
+        if (this.inputShape == null || input.rank() != this.inputShape.length) {
+            return false;
+        }
+        for (int d = 1; d < this.inputShape.length; d++) {
+            if (input.shape(d) != this.inputShape[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Tensor forward(Tensor input) {
         // This method should be overridden in subclasses
         throw new UnsupportedOperationException("Forward method not implemented in Layer class.");
     }
 
-    public double[][][] backward(double[][][] gradient, double learningRate) {
+    // Propagates the gradient to the previous layer and accumulates parameter gradients (no weight update)
+    public Tensor backward(Tensor gradient) {
         // This method should be overridden in subclasses
         throw new UnsupportedOperationException("Backward method not implemented in Layer class.");
     }
-}
+
+    // Floating point operations of a forward pass over `batch` samples of the compiled shape
+    public long flops(int batch) {
+        return 0;
+    }
+
+    // Same for the backward pass : input and parameter gradients cost about twice the forward pass
+    public long backwardFlops(int batch) {
+        return 2 * flops(batch);
+    }
+
+    // Trainable parameters, empty for layers without weights
+    public List<Parameter> parameters() {
+        return List.of();
+    }
+
+    // Constructor arguments and options saved by ModelFile, the weights are saved from parameters()
+    int[] config() {
+        return new int[0];
+    }
+
+    // Drops the buffers sized for the batch that are kept between calls : the output, what backward reads and the
+    // gradient workspaces. The next forward allocates them again (see CNN.setCheckpointing)
+    void release() {
+    }
+
+    // Switches the activation of this layer to its fast approximation (see Activation.approximation), on the
+    // predict replicas of a network with fast inference on. Layers without an activation keep this default
+    void approximateActivations() {
+    }
+
+    // Copy of this layer sharing its parameter values, with its own caches and gradient buffers
+    public Layer replicate() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be replicated.");
+    }
+}
\ No newline at end of file
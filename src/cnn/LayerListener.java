@@ -0,0 +1,16 @@
+package cnn;
+
+// Observer of every layer call made by a CNN (see CNN.addListener).
+// Listeners run on the thread that called the layer (training workers and predict threads included),
+// so implementations must be thread-safe. The tensors are layer workspaces, only valid during the call.
+// allocatedBytes is -1 when the JVM cannot measure per-thread allocation
+public interface LayerListener {
+    void forward(int index, Layer layer, Tensor input, Tensor output, long nanos, long allocatedBytes);
+
+    void backward(int index, Layer layer, Tensor gradient, Tensor delta, long nanos, long allocatedBytes);
+
+    // Forward call run again by gradient checkpointing (see CNN.setCheckpointing) to rebuild the activations of a
+    // segment before going back through it. Reported apart from forward, which sees every sample once per pass
+    default void recompute(int index, Layer layer, Tensor input, Tensor output, long nanos, long allocatedBytes) {
+    }
+}
@@ -0,0 +1,30 @@
+package cnn;
+
+public final class Loss {
+    private Loss() {
+    }
+
+    // Half squared error averaged over batchSize samples : 0.5 * sum((output - target)^2) / batchSize.
+    // dLoss/dOutput is written into gradient. batchSize can be larger than output.shape(0) when
+    // output is only one shard of the batch, so that shard gradients add up to the full batch gradient
+    public static double meanSquaredError(Tensor output, Tensor target, Tensor gradient, int batchSize) {
+        if (output.size() != target.size() || output.size() != gradient.size()) {
+            throw new IllegalArgumentException("Output, target and gradient must hold the same number of values");
+        }
+        Tensor y = output.contiguous();
+        Tensor t = target.contiguous();
+        double[] Y = y.data();
+        double[] T = t.data();
+        double[] G = gradient.data();
+        int g0 = gradient.offset();
+        double loss = 0.0;
+
+        for (int i = 0; i < y.size(); i++) {
+            double error = Y[y.offset() + i] - T[t.offset() + i];
+            loss += error * error;
+            G[g0 + i] = error / batchSize;
+        }
+
+        return 0.5 * loss / batchSize;
+    }
+}
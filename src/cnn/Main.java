@@ -1,30 +1,81 @@
 package cnn;
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class Main {
-    public static void main(String[] args) {
+    // With the paths of an IDX image file and its label file (e.g. MNIST train-images-idx3-ubyte and
+    // train-labels-idx1-ubyte) a small network is trained on them, otherwise a toy batch is run through one
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2) {
+            trainIdx(Path.of(args[0]), Path.of(args[1]));
+            return;
+        }
+
         // Example usage
         ConvLayer convLayer = new ConvLayer(1, 1, 2, 2);
-        // Backward pass to be implemented
-        // PoolLayer poolLayer = new PoolLayer(2, 2);
+        PoolLayer poolLayer = new PoolLayer(2, 2);
         FlattenLayer flattenLayer = new FlattenLayer();
-        DenseLayer denseLayer = new DenseLayer(10, 2);
-        Config.setVerbose(true);
+        // Input size inferred by compile (1 pooled value)
+        DenseLayer denseLayer = new DenseLayer(10);
 
-        double[][][] input = new double[1][3][3];
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                input[0][i][j] = i + j;
+        // Batch of 2 single channel 3x3 samples
+        Tensor input = new Tensor(2, 1, 3, 3);
+        for (int n = 0; n < 2; n++) {
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++) {
+                    input.set(i + j + n, n, 0, i, j);
+                }
             }
         }
 
         // Create a CNN and add layers
         CNN network = new CNN();
         network.addLayer(convLayer);
-        // network.addLayer(poolLayer);
+        network.addLayer(poolLayer);
         network.addLayer(flattenLayer);
         network.addLayer(denseLayer);
+        network.compile(input.shape());
+
+        // Print every feature map and gradient, and time every layer
+        Metrics metrics = new Metrics();
+        network.addListener(new FeatureMapPrinter());
+        network.addListener(metrics);
 
         // Forward pass
-        double[][][] cnnOutput = network.forward(input);
+        Tensor cnnOutput = network.forward(input);
         network.backward(cnnOutput);
+
+        System.out.println(metrics);
+    }
+
+    private static void trainIdx(Path images, Path labels) throws IOException {
+        IdxDataset dataset = new IdxDataset(images, labels);
+        dataset.setNormalization(0.1307, 0.3081);
+
+        ConvLayer first = new ConvLayer(8, 1, 5, 5);
+        first.setStride(2);
+        first.setEngine(ConvLayer.Engine.IM2COL);
+        ConvLayer second = new ConvLayer(16, 8, 3, 3);
+        second.setStride(2);
+        second.setEngine(ConvLayer.Engine.IM2COL);
+
+        CNN network = new CNN();
+        network.addLayer(first);
+        network.addLayer(second);
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(10));
+        network.setVerbose(true);
+        network.setPrefetch(2, 4);
+        network.train(dataset, 1, 64);
+
+        // int8 version calibrated on the first 256 images, compared with the trained network on every image
+        int calibrationSize = Math.min(256, dataset.size());
+        Tensor calibration = new Tensor(CNN.batchShape(calibrationSize, dataset.inputShape()));
+        Tensor target = new Tensor(dataset.targetShape());
+        for (int i = 0; i < calibrationSize; i++) {
+            dataset.get(i, calibration.slice(i), target);
+        }
+        CNN quantized = Quantizer.quantize(network, calibration);
+        System.out.println(Quantizer.compare(network, quantized, dataset, 64));
     }
 }
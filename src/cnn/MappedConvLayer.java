@@ -0,0 +1,134 @@
+package cnn;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+// Inference-only ConvLayer reading its kernels from a mapped model file, built by ModelFile.map (see MappedDenseLayer).
+// The convolution runs the direct window scan whatever engine was saved, one task per (sample, kernel) : each task
+// copies its kernel out of the mapping once, then scans the input with it
+class MappedConvLayer extends Layer {
+    private final int kernelNum;
+    private final int kernelChannels;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int stride;
+    private final int padding;
+    private Activation activation;
+
+    // [k][channel][h][w] and [k], views of the mapping
+    private final DoubleBuffer kernels;
+    private final DoubleBuffer biases;
+
+    private int output_height;
+    private int output_width;
+    private Tensor output;
+
+    MappedConvLayer(int kernelNum, int channels, int kernelHeight, int kernelWidth, int stride, int padding,
+            Activation activation, DoubleBuffer kernels, DoubleBuffer biases) {
+        this.type = Type.MAPPED_CONV;
+        this.kernelNum = kernelNum;
+        this.kernelChannels = channels;
+        this.kernelHeight = kernelHeight;
+        this.kernelWidth = kernelWidth;
+        this.stride = stride;
+        this.padding = padding;
+        this.activation = activation;
+        this.kernels = kernels;
+        this.biases = biases;
+    }
+
+    // Replica reading the same mapping : absolute reads leave the shared views untouched
+    public Layer replicate() {
+        return new MappedConvLayer(this.kernelNum, this.kernelChannels, this.kernelHeight, this.kernelWidth,
+                this.stride, this.padding, this.activation, this.kernels, this.biases);
+    }
+
+    void approximateActivations() {
+        this.activation = this.activation.approximation();
+    }
+
+    public int[] compile(int[] inputShape) {
+        if (inputShape.length != 4 || inputShape[1] != this.kernelChannels) {
+            throw new IllegalArgumentException("Mapped conv layer expects [N][" + this.kernelChannels + "][height][width] inputs, got " + Arrays.toString(inputShape));
+        }
+        int h_out = (inputShape[2] - this.kernelHeight + 2 * this.padding) / this.stride + 1;
+        int w_out = (inputShape[3] - this.kernelWidth + 2 * this.padding) / this.stride + 1;
+        if (h_out < 1 || w_out < 1) {
+            throw new IllegalArgumentException("Invalid output dimensions " + h_out + "x" + w_out + " for input " + Arrays.toString(inputShape));
+        }
+        this.inputShape = inputShape.clone();
+        this.output_height = h_out;
+        this.output_width = w_out;
+        this.output = Tensor.reuse(this.output, inputShape[0], this.kernelNum, h_out, w_out);
+        return new int[] {inputShape[0], this.kernelNum, h_out, w_out};
+    }
+
+    public long flops(int batch) {
+        long outputs = (long) batch * this.kernelNum * this.output_height * this.output_width;
+        return outputs * (2L * this.kernelChannels * this.kernelHeight * this.kernelWidth + 2);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        Tensor source = input.contiguous();
+        int batch = source.shape(0);
+        Tensor output = Tensor.reuse(this.output, batch, this.kernelNum, this.output_height, this.output_width);
+        this.output = output;
+
+        Parallel.forEach(batch * this.kernelNum, task -> forward(source, output, task / this.kernelNum, task % this.kernelNum));
+        return output;
+    }
+
+    // Output map k of sample n : window scan, then bias and activation
+    private void forward(Tensor input, Tensor output, int n, int k) {
+        int h_in = input.shape(2);
+        int w_in = input.shape(3);
+        int h_out = this.output_height;
+        int w_out = this.output_width;
+        int kernelArea = this.kernelHeight * this.kernelWidth;
+
+        double[] K = new double[this.kernelChannels * kernelArea];
+        this.kernels.get(k * K.length, K, 0, K.length);
+
+        double[] I = input.data();
+        double[] O = output.data();
+        int sampleBase = input.offset() + n * input.stride(0);
+        int outBase = (n * this.kernelNum + k) * h_out * w_out;
+        Arrays.fill(O, outBase, outBase + h_out * w_out, 0.0);
+
+        for (int channel = 0; channel < this.kernelChannels; channel++) {
+            int inBase = sampleBase + channel * h_in * w_in;
+            int kBase = channel * kernelArea;
+
+            for (int outputY = 0; outputY < h_out; outputY++) {
+                for (int outputX = 0; outputX < w_out; outputX++) {
+                    double sum = 0.0;
+
+                    // Zero padding outside the input
+                    for (int ky = 0; ky < this.kernelHeight; ky++) {
+                        int inputY = outputY * this.stride + ky - this.padding;
+                        if (inputY < 0 || inputY >= h_in) {
+                            continue;
+                        }
+                        for (int kx = 0; kx < this.kernelWidth; kx++) {
+                            int inputX = outputX * this.stride + kx - this.padding;
+                            if (inputX < 0 || inputX >= w_in) {
+                                continue;
+                            }
+                            sum += I[inBase + inputY * w_in + inputX] * K[kBase + ky * this.kernelWidth + kx];
+                        }
+                    }
+
+                    O[outBase + outputY * w_out + outputX] += sum;
+                }
+            }
+        }
+
+        this.activation.apply(O, outBase, h_out * w_out, this.biases.get(k));
+    }
+
+    public Tensor backward(Tensor gradient) {
+        throw new UnsupportedOperationException("Mapped layers are inference-only, use ModelFile.load to train a saved model.");
+    }
+}
@@ -0,0 +1,82 @@
+package cnn;
+import java.nio.DoubleBuffer;
+
+// Inference-only DenseLayer reading its weights from a mapped model file, built by ModelFile.map.
+// The weights stay in the page cache, shared by every process that maps the same file, instead of being copied
+// into the heap of each one. A weight row is copied into a scratch row once per batch and applied to every sample
+class MappedDenseLayer extends Layer {
+    private final int size;
+    private final int previousLayerSize;
+    private Activation activation;
+
+    // [size][previousLayerSize] and [size], views of the mapping
+    private final DoubleBuffer weights;
+    private final DoubleBuffer biases;
+
+    // Workspaces : the weight row being applied and the output
+    private final double[] row;
+    private Tensor output;
+
+    MappedDenseLayer(int size, int previousLayerSize, Activation activation, DoubleBuffer weights, DoubleBuffer biases) {
+        this.type = Type.MAPPED_DENSE;
+        this.size = size;
+        this.previousLayerSize = previousLayerSize;
+        this.activation = activation;
+        this.weights = weights;
+        this.biases = biases;
+        this.row = new double[previousLayerSize];
+    }
+
+    // Replica reading the same mapping : absolute reads leave the shared views untouched
+    public Layer replicate() {
+        return new MappedDenseLayer(this.size, this.previousLayerSize, this.activation, this.weights, this.biases);
+    }
+
+    void approximateActivations() {
+        this.activation = this.activation.approximation();
+    }
+
+    public int[] compile(int[] inputShape) {
+        int features = Tensor.count(inputShape) / inputShape[0];
+        if (features != this.previousLayerSize) {
+            throw new IllegalArgumentException("Mapped dense layer expects " + this.previousLayerSize + " inputs, got " + features);
+        }
+        this.inputShape = inputShape.clone();
+        this.output = Tensor.reuse(this.output, inputShape[0], this.size);
+        return new int[] {inputShape[0], this.size};
+    }
+
+    public long flops(int batch) {
+        return (long) batch * this.size * (2L * this.previousLayerSize + 2);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
+        int batch = input.shape(0);
+        Tensor output = Tensor.reuse(this.output, batch, this.size);
+        this.output = output;
+
+        double[] X = input.data();
+        double[] W = this.row;
+        double[] Y = output.data();
+        ArrayOps ops = Config.ops();
+
+        for (int neuron = 0; neuron < this.size; neuron++) {
+            this.weights.get(neuron * this.previousLayerSize, W, 0, this.previousLayerSize);
+            double bias = this.biases.get(neuron);
+
+            for (int n = 0; n < batch; n++) {
+                Y[n * this.size + neuron] = ops.dot(X, input.offset() + n * this.previousLayerSize, W, 0, this.previousLayerSize) + bias;
+            }
+        }
+        this.activation.apply(Y, 0, batch * this.size);
+        return output;
+    }
+
+    public Tensor backward(Tensor gradient) {
+        throw new UnsupportedOperationException("Mapped layers are inference-only, use ModelFile.load to train a saved model.");
+    }
+}
@@ -0,0 +1,67 @@
+package cnn;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Read-only mapping of a file made of a header followed by fixed-size records.
+// Files larger than one mapping (2 GB) are mapped in chunks holding whole records, so a record never
+// spans two buffers. Pages are loaded by the OS on demand and never count against the heap.
+// Only absolute reads are used on the buffers, so any number of threads can read at once
+final class MappedFile {
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    private final ByteBuffer[] chunks;
+    private final int recordBytes;
+    private final int recordsPerChunk;
+    private final int records;
+
+    MappedFile(Path path, long headerBytes, int recordBytes, ByteOrder order) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long available = (channel.size() - headerBytes) / recordBytes;
+            if (headerBytes > channel.size() || available > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected size of " + channel.size() + " bytes for " + path);
+            }
+
+            this.recordBytes = recordBytes;
+            this.records = (int) available;
+            this.recordsPerChunk = (int) Math.max(1, CHUNK_BYTES / recordBytes);
+            this.chunks = new ByteBuffer[Math.max(1, (this.records + this.recordsPerChunk - 1) / this.recordsPerChunk)];
+
+            for (int c = 0; c < this.chunks.length; c++) {
+                long from = headerBytes + (long) c * this.recordsPerChunk * recordBytes;
+                long length = (long) Math.min(this.recordsPerChunk, this.records - c * this.recordsPerChunk) * recordBytes;
+                this.chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.max(0, length)).order(order);
+            }
+        }
+    }
+
+    int records() {
+        return records;
+    }
+
+    // Buffer holding record `index`, which starts at offset(index)
+    ByteBuffer buffer(int index) {
+        return this.chunks[index / this.recordsPerChunk];
+    }
+
+    int offset(int index) {
+        return (index % this.recordsPerChunk) * this.recordBytes;
+    }
+
+    // Header of a file, read without mapping it
+    static ByteBuffer header(Path path, int bytes, ByteOrder order) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(bytes).order(order);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            if (header.hasRemaining()) {
+                throw new IOException(path + " is too short");
+            }
+            return header.flip();
+        }
+    }
+}
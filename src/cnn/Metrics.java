@@ -0,0 +1,159 @@
+package cnn;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+// Per-layer performance registry : wall time histograms, FLOPs, bytes allocated and activation sizes.
+// Attach it with CNN.addListener, a network without listeners runs the plain layer loop and pays nothing.
+// Recording is synchronized so one registry can observe training workers and predict threads at once
+public final class Metrics implements LayerListener {
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final List<LayerStats> layers;
+
+    public Metrics() {
+        this.layers = new ArrayList<>();
+    }
+
+    public synchronized void forward(int index, Layer layer, Tensor input, Tensor output, long nanos, long allocatedBytes) {
+        LayerStats stats = stats(index, layer);
+        int batch = input.shape(0);
+        stats.forwardTime.record(nanos);
+        stats.forwardFlops += layer.flops(batch);
+        stats.samples += batch;
+        stats.bytesAllocated += Math.max(0, allocatedBytes);
+        stats.activationBytes = (long) output.size() * Double.BYTES;
+        stats.maxActivationBytes = Math.max(stats.maxActivationBytes, stats.activationBytes);
+    }
+
+    public synchronized void backward(int index, Layer layer, Tensor gradient, Tensor delta, long nanos, long allocatedBytes) {
+        LayerStats stats = stats(index, layer);
+        stats.backwardTime.record(nanos);
+        stats.backwardFlops += layer.backwardFlops(gradient.shape(0));
+        stats.bytesAllocated += Math.max(0, allocatedBytes);
+    }
+
+    // Checkpointing overhead, kept out of the forward counters
+    public synchronized void recompute(int index, Layer layer, Tensor input, Tensor output, long nanos, long allocatedBytes) {
+        LayerStats stats = stats(index, layer);
+        stats.recomputeTime.record(nanos);
+        stats.recomputeFlops += layer.flops(input.shape(0));
+        stats.bytesAllocated += Math.max(0, allocatedBytes);
+    }
+
+    // Independent copy of the current values, one entry per layer index
+    public synchronized List<LayerStats> snapshot() {
+        List<LayerStats> copy = new ArrayList<>();
+        for (LayerStats stats : this.layers) {
+            copy.add(stats.copy());
+        }
+        return copy;
+    }
+
+    public synchronized void reset() {
+        this.layers.clear();
+    }
+
+    // Snapshot as CSV, one line per layer, times in microseconds
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder("layer,type,forward_calls,forward_mean_us,forward_p50_us,forward_p99_us,"
+                + "backward_calls,backward_mean_us,backward_p99_us,samples,forward_gflops,backward_gflops,bytes_allocated,activation_bytes,"
+                + "recompute_calls,recompute_mean_us,recompute_gflops\n");
+        for (LayerStats s : snapshot()) {
+            csv.append(s.index).append(',').append(s.type).append(',')
+                    .append(s.forwardTime.count()).append(',').append(s.forwardTime.mean() / 1e3).append(',')
+                    .append(s.forwardTime.percentile(50) / 1e3).append(',').append(s.forwardTime.percentile(99) / 1e3).append(',')
+                    .append(s.backwardTime.count()).append(',').append(s.backwardTime.mean() / 1e3).append(',')
+                    .append(s.backwardTime.percentile(99) / 1e3).append(',').append(s.samples).append(',')
+                    .append(s.forwardFlops / 1e9).append(',').append(s.backwardFlops / 1e9).append(',')
+                    .append(s.bytesAllocated).append(',').append(s.maxActivationBytes).append(',')
+                    .append(s.recomputeTime.count()).append(',').append(s.recomputeTime.mean() / 1e3).append(',')
+                    .append(s.recomputeFlops / 1e9).append('\n');
+        }
+        return csv.toString();
+    }
+
+    public String toString() {
+        StringBuilder table = new StringBuilder(String.format("%-6s %-8s %10s %12s %12s %12s %10s %12s%n",
+                "Layer", "Type", "Forwards", "Fwd mean us", "Bwd mean us", "GFLOP/s", "Alloc KB", "Activ. KB"));
+        for (LayerStats s : snapshot()) {
+            long nanos = s.forwardTime.sum() + s.backwardTime.sum() + s.recomputeTime.sum();
+            double gflops = nanos == 0 ? 0.0 : (s.forwardFlops + s.backwardFlops + s.recomputeFlops) / (double) nanos;
+            table.append(String.format("%-6d %-8s %10d %12.1f %12.1f %12.3f %10d %12d%n",
+                    s.index, s.type, s.forwardTime.count(), s.forwardTime.mean() / 1e3, s.backwardTime.mean() / 1e3,
+                    gflops, s.bytesAllocated / 1024, s.maxActivationBytes / 1024));
+        }
+        return table.toString();
+    }
+
+    private LayerStats stats(int index, Layer layer) {
+        while (this.layers.size() <= index) {
+            this.layers.add(null);
+        }
+        LayerStats stats = this.layers.get(index);
+        if (stats == null) {
+            stats = new LayerStats(index, String.valueOf(layer.type));
+            this.layers.set(index, stats);
+        }
+        return stats;
+    }
+
+    // Bytes allocated so far by the calling thread, -1 if the JVM does not track it.
+    // Work forked to other pool threads by the layer is not included
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // jdk.management not available
+        }
+        return null;
+    }
+
+    // Values recorded for one layer of the network
+    public static final class LayerStats {
+        public final int index;
+        public final String type;
+        public final Histogram forwardTime;
+        public final Histogram backwardTime;
+        // Forward calls run again by gradient checkpointing
+        public final Histogram recomputeTime;
+        public long samples;
+        public long forwardFlops;
+        public long backwardFlops;
+        public long recomputeFlops;
+        public long bytesAllocated;
+        public long activationBytes;
+        public long maxActivationBytes;
+
+        private LayerStats(int index, String type) {
+            this(index, type, new Histogram(), new Histogram(), new Histogram());
+        }
+
+        private LayerStats(int index, String type, Histogram forwardTime, Histogram backwardTime, Histogram recomputeTime) {
+            this.index = index;
+            this.type = type;
+            this.forwardTime = forwardTime;
+            this.backwardTime = backwardTime;
+            this.recomputeTime = recomputeTime;
+        }
+
+        private LayerStats copy() {
+            LayerStats copy = new LayerStats(this.index, this.type, this.forwardTime.copy(), this.backwardTime.copy(), this.recomputeTime.copy());
+            copy.samples = this.samples;
+            copy.forwardFlops = this.forwardFlops;
+            copy.backwardFlops = this.backwardFlops;
+            copy.recomputeFlops = this.recomputeFlops;
+            copy.bytesAllocated = this.bytesAllocated;
+            copy.activationBytes = this.activationBytes;
+            copy.maxActivationBytes = this.maxActivationBytes;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package cnn;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// Binary model format, all values little-endian :
+//   header  : magic "CNNM", version, layer count, input shape rank, input shape (rank 0 if not compiled)
+//   layers  : type code, config length, config (see Layer.config), parameter count,
+//             then for every parameter its element count, padding to 8 bytes and the values as doubles
+// Every weight block is one contiguous 8-byte aligned run of doubles. load copies each block into the heap arrays
+// of a trainable network with one bulk read from the mapped pages. map leaves the dense and conv blocks in the
+// mapping and serves them through inference-only layers (MappedDenseLayer, MappedConvLayer) : processes that map
+// the same file share its pages in the page cache instead of each holding a copy of the weights. The other layers
+// with weights (sparse dense, grouped and separable conv) have no mapped version and are loaded as by load
+public final class ModelFile {
+    static final int MAGIC = 0x4D4E4E43; // "CNNM" in file order
+    static final int VERSION = 1;
+
+    // Type codes are part of the format, they must never be reused
+    private static final int DENSE = 1;
+    private static final int CONV = 2;
+    private static final int POOLING = 3;
+    private static final int FLATTEN = 4;
+    private static final int SPARSE_DENSE = 5;
+    private static final int GROUPED_CONV = 6;
+    private static final int SEPARABLE_CONV = 7;
+
+    // Config length of every type code. Sparse dense configs carry the row structure after their first 5 values,
+    // one value per row and per stored weight, so theirs is a minimum
+    private static final int[] CONFIG_LENGTHS = {-1, 3, 8, 5, 0, 5, 8, 7};
+
+    private ModelFile() {
+    }
+
+    public static void save(CNN network, Path path) throws IOException {
+        long size = encode(network, null);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Model of " + size + " bytes is larger than a single mapping (2 GB)");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            encode(network, out);
+            out.force();
+        }
+    }
+
+    // The network comes back compiled for the saved input shape, if there was one
+    public static CNN load(Path path) throws IOException {
+        return read(path, false);
+    }
+
+    // Same network for inference only : its dense and conv layers read their weights from the mapping, which
+    // stays alive as long as they do. Other layers are loaded as by load. The network cannot be trained or saved,
+    // and the file must not be written while it is in use
+    public static CNN map(Path path) throws IOException {
+        return read(path, true);
+    }
+
+    private static CNN read(Path path, boolean mapped) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model file larger than a single mapping (2 GB)");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            return decode(in, path, mapped);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | ArithmeticException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted model file " + path, e);
+        }
+    }
+
+    // Writes the network into out, or only measures it when out is null. Returns the size in bytes
+    private static long encode(CNN network, ByteBuffer out) {
+        List<Layer> layers = network.layers();
+        int[] inputShape = network.getInputShape() == null ? new int[0] : network.getInputShape();
+
+        long position = 0;
+        position = putInt(out, position, MAGIC);
+        position = putInt(out, position, VERSION);
+        position = putInt(out, position, layers.size());
+        position = putInt(out, position, inputShape.length);
+        for (int dim : inputShape) {
+            position = putInt(out, position, dim);
+        }
+
+        for (Layer layer : layers) {
+            int[] config = layer.config();
+            List<Parameter> parameters = layer.parameters();
+
+            position = putInt(out, position, typeCode(layer));
+            position = putInt(out, position, config.length);
+            for (int value : config) {
+                position = putInt(out, position, value);
+            }
+
+            position = putInt(out, position, parameters.size());
+            for (Parameter parameter : parameters) {
+                Tensor value = parameter.value.contiguous();
+                position = putInt(out, position, value.size());
+                position = align(position);
+                if (out != null) {
+                    out.position((int) position);
+                    out.asDoubleBuffer().put(value.data(), value.offset(), value.size());
+                }
+                position += (long) value.size() * Double.BYTES;
+            }
+        }
+        return position;
+    }
+
+    private static CNN decode(ByteBuffer in, Path path, boolean mapped) throws IOException {
+        if (in.remaining() < 16 || in.getInt() != MAGIC) {
+            throw new IOException(path + " is not a model file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model version " + version + " in " + path + " (expected " + VERSION + ")");
+        }
+
+        int layerCount = length(in, "layer count", path);
+        int[] inputShape = new int[length(in, "input rank", path)];
+        long inputSize = 1;
+        for (int d = 0; d < inputShape.length; d++) {
+            inputShape[d] = in.getInt();
+            inputSize *= inputShape[d];
+            if (inputShape[d] < 1 || inputSize > Integer.MAX_VALUE) {
+                throw new IOException("Invalid input shape " + Arrays.toString(inputShape) + " in " + path);
+            }
+        }
+
+        CNN network = new CNN();
+        for (int l = 0; l < layerCount; l++) {
+            int type = in.getInt();
+            if (type < 1 || type >= CONFIG_LENGTHS.length) {
+                throw new IOException("Unknown layer type " + type + " in " + path);
+            }
+            int[] config = new int[length(in, "config length", path)];
+            if (type == SPARSE_DENSE ? config.length < CONFIG_LENGTHS[type] : config.length != CONFIG_LENGTHS[type]) {
+                throw new IOException("Layer " + l + " of " + path + " has a config of " + config.length + " values, expected " + CONFIG_LENGTHS[type]);
+            }
+            for (int i = 0; i < config.length; i++) {
+                config[i] = in.getInt();
+                if (config[i] < 0) {
+                    throw new IOException("Layer " + l + " of " + path + " has a negative config value " + config[i]);
+                }
+            }
+
+            // Weight blocks as views of the file, their sizes are checked against the layer below
+            DoubleBuffer[] blocks = new DoubleBuffer[length(in, "weight block count", path)];
+            for (int b = 0; b < blocks.length; b++) {
+                int size = in.getInt();
+                in.position((int) align(in.position()));
+                if (size < 0 || size > in.remaining() / Double.BYTES) {
+                    throw new IOException("Layer " + l + " of " + path + " has a block of " + size + " values, the file is too short");
+                }
+                blocks[b] = in.slice(in.position(), size * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                in.position(in.position() + size * Double.BYTES);
+            }
+
+            Layer layer = mapped ? mappedLayer(type, config, blocks, l, path) : null;
+            network.addLayer(layer != null ? layer : loadedLayer(type, config, blocks, l, path));
+        }
+
+        if (inputShape.length > 0) {
+            network.compile(inputShape);
+        }
+        return network;
+    }
+
+    // Layer built from its config, with the blocks copied into its parameters
+    private static Layer loadedLayer(int type, int[] config, DoubleBuffer[] blocks, int l, Path path) throws IOException {
+        // The layer allocates its weights from the config : the blocks read must hold that many
+        long weights = 0;
+        for (DoubleBuffer block : blocks) {
+            weights += block.capacity();
+        }
+        if (weightCount(type, config) != weights) {
+            throw new IOException("Layer " + l + " of " + path + " needs " + weightCount(type, config) + " weights, the file holds " + weights);
+        }
+
+        Layer layer = create(type, config, path);
+        List<Parameter> parameters = layer.parameters();
+        if (blocks.length != parameters.size()) {
+            throw new IOException("Layer " + l + " of " + path + " has " + blocks.length + " weight blocks, expected " + parameters.size());
+        }
+        for (int b = 0; b < blocks.length; b++) {
+            Tensor value = parameters.get(b).value;
+            if (blocks[b].capacity() != value.size()) {
+                throw new IOException("Layer " + l + " of " + path + " has a block of " + blocks[b].capacity() + " values, expected " + value.size());
+            }
+            blocks[b].get(0, value.data(), value.offset(), value.size());
+            value.markModified();
+        }
+        return layer;
+    }
+
+    // Mapped version of a dense or conv layer with weights, null for the other layers
+    private static Layer mappedLayer(int type, int[] config, DoubleBuffer[] blocks, int l, Path path) throws IOException {
+        switch (type) {
+            case DENSE:
+                if (config[1] == 0) {
+                    return null;
+                }
+                checkBlocks(blocks, l, path, (long) config[0] * config[1], config[0]);
+                return new MappedDenseLayer(config[0], config[1], activation(config[2], path), blocks[0], blocks[1]);
+
+            case CONV:
+                checkBlocks(blocks, l, path, (long) config[0] * config[1] * config[2] * config[3], config[0]);
+                return new MappedConvLayer(config[0], config[1], config[2], config[3], config[4], config[5],
+                        activation(config[7], path), blocks[0], blocks[1]);
+
+            default:
+                return null;
+        }
+    }
+
+    private static void checkBlocks(DoubleBuffer[] blocks, int l, Path path, long... sizes) throws IOException {
+        if (blocks.length != sizes.length) {
+            throw new IOException("Layer " + l + " of " + path + " has " + blocks.length + " weight blocks, expected " + sizes.length);
+        }
+        for (int b = 0; b < blocks.length; b++) {
+            if (blocks[b].capacity() != sizes[b]) {
+                throw new IOException("Layer " + l + " of " + path + " has a block of " + blocks[b].capacity() + " values, expected " + sizes[b]);
+            }
+        }
+    }
+
+    private static int typeCode(Layer layer) {
+        switch (layer.type) {
+            case Layer.Type.DENSE:
+                return DENSE;
+            case Layer.Type.CONV:
+                return CONV;
+            case Layer.Type.POOLING:
+                return POOLING;
+            case Layer.Type.FLATTEN:
+                return FLATTEN;
+            case Layer.Type.SPARSE_DENSE:
+                return SPARSE_DENSE;
+            case Layer.Type.GROUPED_CONV:
+                return GROUPED_CONV;
+            case Layer.Type.SEPARABLE_CONV:
+                return SEPARABLE_CONV;
+            default:
+                throw new IllegalArgumentException("Layer " + layer.getClass().getSimpleName() + " cannot be saved");
+        }
+    }
+
+    // Reads a length and checks that that many ints are left in the file
+    private static int length(ByteBuffer in, String name, Path path) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / Integer.BYTES) {
+            throw new IOException("Invalid " + name + " " + length + " in " + path);
+        }
+        return length;
+    }
+
+    // Weights and biases the layer of that config allocates, in long arithmetic so that corrupt configs cannot overflow
+    private static long weightCount(int type, int[] config) {
+        switch (type) {
+            case DENSE:
+                return config[1] == 0 ? 0 : (long) config[0] * config[1] + config[0];
+            case CONV:
+                return (long) config[0] * config[1] * config[2] * config[3] + config[0];
+            case SPARSE_DENSE:
+                return (long) config[3] + config[0];
+            case GROUPED_CONV:
+                return (long) config[0] * (config[6] == 0 ? 0 : config[1] / config[6]) * config[2] * config[3] + config[0];
+            case SEPARABLE_CONV:
+                return (long) config[1] * config[2] * config[3] + config[1] + (long) config[0] * config[1] + config[0];
+            default:
+                return 0;
+        }
+    }
+
+    private static Layer create(int type, int[] config, Path path) throws IOException {
+        switch (type) {
+            case DENSE:
+                DenseLayer dense = config[1] == 0 ? new DenseLayer(config[0]) : new DenseLayer(config[0], config[1]);
+                dense.setActivation(activation(config[2], path));
+                return dense;
+
+            case CONV:
+                ConvLayer conv = new ConvLayer(config[0], config[1], config[2], config[3]);
+                conv.setStride(config[4]);
+                conv.setPadding(config[5]);
+                conv.setEngine(ConvLayer.Engine.values()[config[6]]);
+                conv.setActivation(activation(config[7], path));
+                return conv;
+
+            case POOLING:
+                PoolLayer pool = new PoolLayer(config[0], config[1]);
+                pool.setStride(config[2]);
+                pool.setPadding(config[3]);
+                pool.setMode(PoolLayer.Mode.values()[config[4]]);
+                return pool;
+
+            case FLATTEN:
+                return new FlattenLayer();
+
+            case SPARSE_DENSE:
+                int rows = config[0];
+                if (config.length != 5L + rows + config[3]) {
+                    throw new IOException("Sparse layer config of " + config.length + " values in " + path + " does not hold " + rows + " rows and " + config[3] + " weights");
+                }
+                SparseDenseLayer sparse = new SparseDenseLayer(rows, config[1], Arrays.copyOfRange(config, 4, 5 + rows), Arrays.copyOfRange(config, 5 + rows, config.length));
+                sparse.setActivation(activation(config[2], path));
+                return sparse;
+
+            case GROUPED_CONV:
+                GroupedConvLayer grouped = new GroupedConvLayer(config[0], config[1], config[2], config[3], config[6]);
+                grouped.setStride(config[4]);
+                grouped.setPadding(config[5]);
+                grouped.setActivation(activation(config[7], path));
+                return grouped;
+
+            case SEPARABLE_CONV:
+                SeparableConvLayer separable = new SeparableConvLayer(config[0], config[1], config[2], config[3]);
+                separable.setStride(config[4]);
+                separable.setPadding(config[5]);
+                separable.setActivation(activation(config[6], path));
+                return separable;
+
+            default:
+                throw new IOException("Unknown layer type " + type + " in " + path);
+        }
+    }
+
+    private static Activation activation(int code, Path path) throws IOException {
+        Activation activation = Activation.forCode(code);
+        if (activation == null) {
+            throw new IOException("Unknown activation " + code + " in " + path);
+        }
+        return activation;
+    }
+
+    private static long putInt(ByteBuffer out, long position, int value) {
+        if (out != null) {
+            out.putInt((int) position, value);
+        }
+        return position + Integer.BYTES;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+}
@@ -0,0 +1,9 @@
+package cnn;
+import java.util.List;
+
+// Updates parameter values from the gradients accumulated by the backward pass.
+// Implementations make a single fused pass over each flat parameter array (state update, value update
+// and gradient reset together) and allocate their state once, the first time a parameter is seen.
+public interface Optimizer {
+    void step(List<Parameter> parameters);
+}
@@ -0,0 +1,70 @@
+package cnn;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+// Runs independent tasks 0 .. count - 1 on the Config pool.
+// Callers give every task its own slice of the output, so results are identical for any thread count.
+final class Parallel {
+    private Parallel() {
+    }
+
+    static void forEach(int count, IntConsumer task) {
+        ForkJoinPool pool = Config.pool();
+        if (count == 1 || pool.getParallelism() == 1) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+        if (count > 1) {
+            RangeTask root = new RangeTask(0, count, task);
+            if (ForkJoinTask.getPool() == pool) {
+                // Already running inside the pool (nested parallel section), fork from the current worker
+                root.invoke();
+            } else {
+                try {
+                    pool.invoke(root);
+                } catch (RejectedExecutionException e) {
+                    // Config.setThreads retired the pool between the lookup and the submission, nothing ran yet
+                    ForkJoinPool current = Config.pool();
+                    if (current == pool) {
+                        throw e;
+                    }
+                    current.invoke(new RangeTask(0, count, task));
+                }
+            }
+        }
+    }
+
+    // Number of row tiles of `tileRows` rows needed to cover `rows`
+    static int tiles(int rows, int tileRows) {
+        return (rows + tileRows - 1) / tileRows;
+    }
+
+    // Only ever run in memory, ForkJoinTask being Serializable is not used
+    @SuppressWarnings("serial")
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer task;
+
+        RangeTask(int from, int to, IntConsumer task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                this.task.accept(this.from);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new RangeTask(this.from, middle, this.task), new RangeTask(middle, this.to, this.task));
+        }
+    }
+}
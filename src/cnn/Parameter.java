@@ -0,0 +1,26 @@
+package cnn;
+
+// Trainable values of a layer together with the buffer their gradients are accumulated into.
+// Layer replicas share `value` but each owns its `gradient`, so several threads can run backward at once.
+public class Parameter {
+    public final Tensor value;
+    public final Tensor gradient;
+
+    public Parameter(Tensor value) {
+        this(value, new Tensor(value.shape()));
+    }
+
+    private Parameter(Tensor value, Tensor gradient) {
+        this.value = value;
+        this.gradient = gradient;
+    }
+
+    // Same values, fresh gradient buffer
+    public Parameter replicate() {
+        return new Parameter(this.value);
+    }
+
+    public void zeroGradient() {
+        this.gradient.fill(0.0);
+    }
+}
@@ -0,0 +1,256 @@
+package cnn;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Pipeline-parallel training (see CNN.setPipeline) : the compiled plan is cut into `stages` runs of consecutive
+// steps of about the same cost, each one driven by its own thread. A training batch is split into micro-batches
+// that flow from stage to stage through bounded queues, activations forward and gradients backward, so the stages
+// work on different micro-batches at the same time.
+// Micro-batch m runs on slot m % slots, a replica of the network (shared weights, own buffers and gradients) :
+// a stage only touches its own steps of a slot, and a slot is reused once every stage is done with its previous
+// micro-batch. The slot gradients are summed into the network in slot order, so the update is the one of the
+// whole batch (up to the order of the sums) and does not depend on the timing of the threads
+public final class Pipeline implements AutoCloseable {
+    public enum Schedule {
+        // All the forward passes, then all the backward passes : one slot per micro-batch
+        GPIPE,
+        // Stage s runs stages - s - 1 forward passes ahead, then alternates one forward and one backward pass :
+        // at most `stages` micro-batches are in flight, so slots are bounded by the number of stages
+        ONE_F_ONE_B,
+    }
+
+    private final CNN network;
+    private final Schedule schedule;
+    private final int microBatches;
+    // Stage s runs steps [bounds[s], bounds[s + 1]) of the plan
+    private final int[] bounds;
+    private final List<CNN> slots;
+    private final Tensor[] lossGradients;
+    private final double[] losses;
+    private final ExecutorService threads;
+
+    // Activations from stage s to s + 1 and gradients from stage s + 1 to s, as micro-batch indices and tensors
+    private final List<BlockingQueue<Message>> activations;
+    private final List<BlockingQueue<Message>> gradients;
+
+    private Tensor inputs;
+    private Tensor targets;
+    private int batch;
+
+    private static final class Message {
+        final int microBatch;
+        final Tensor tensor;
+
+        Message(int microBatch, Tensor tensor) {
+            this.microBatch = microBatch;
+            this.tensor = tensor;
+        }
+    }
+
+    // network must be compiled for its training batches of batchSize samples
+    Pipeline(CNN network, int stages, int microBatches, Schedule schedule, int batchSize) {
+        if (stages < 1 || microBatches < 1) {
+            throw new IllegalArgumentException("Stages and micro-batches must be at least 1, got " + stages + " and " + microBatches);
+        }
+        this.network = network;
+        this.schedule = schedule;
+        this.microBatches = Math.min(microBatches, batchSize);
+
+        int[] inputShape = network.getInputShape();
+        inputShape[0] = (batchSize + this.microBatches - 1) / this.microBatches;
+
+        // The stages run steps of the slot plans : they are cut from the plan of a slot, which must be the plan
+        // of the network since the gradients of both are matched step by step
+        this.slots = new ArrayList<>();
+        CNN first = network.replicate(inputShape);
+        if (first.steps() != network.steps()) {
+            throw new IllegalStateException("Pipeline slots compiled " + first.steps() + " steps, the network " + network.steps());
+        }
+        this.slots.add(first);
+        this.bounds = partition(first, Math.min(stages, first.steps()), inputShape[0]);
+        int stageCount = this.bounds.length - 1;
+
+        int slotCount = schedule == Schedule.GPIPE ? this.microBatches : Math.min(this.microBatches, stageCount);
+        for (int i = 1; i < slotCount; i++) {
+            this.slots.add(network.replicate(inputShape));
+        }
+        this.lossGradients = new Tensor[slotCount];
+        this.losses = new double[this.microBatches];
+
+        // Every queue holds at most the micro-batches of one batch, so a put never waits
+        this.activations = new ArrayList<>();
+        this.gradients = new ArrayList<>();
+        for (int s = 0; s + 1 < stageCount; s++) {
+            this.activations.add(new ArrayBlockingQueue<>(this.microBatches));
+            this.gradients.add(new ArrayBlockingQueue<>(this.microBatches));
+        }
+
+        this.threads = Executors.newFixedThreadPool(stageCount, task -> {
+            Thread thread = new Thread(task, "cnn-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Cuts the steps into at most `stages` runs minimising the cost of the most expensive one, where a step costs
+    // its forward and backward FLOPs on a micro-batch. Returns the stage bounds
+    private static int[] partition(CNN network, int stages, int microBatch) {
+        int steps = network.steps();
+        long[] prefix = new long[steps + 1];
+        for (int i = 0; i < steps; i++) {
+            Layer step = network.step(i);
+            // Layers without FLOPs (flatten) still cost a call
+            prefix[i + 1] = prefix[i] + Math.max(1, step.flops(microBatch) + step.backwardFlops(microBatch));
+        }
+
+        // best[s][i] : lowest maximum cost of the first i steps cut into s stages, cut[s][i] where the last one starts
+        long[][] best = new long[stages + 1][steps + 1];
+        int[][] cut = new int[stages + 1][steps + 1];
+        for (long[] row : best) {
+            Arrays.fill(row, Long.MAX_VALUE);
+        }
+        best[0][0] = 0;
+        for (int s = 1; s <= stages; s++) {
+            for (int i = s; i <= steps; i++) {
+                for (int j = s - 1; j < i; j++) {
+                    if (best[s - 1][j] == Long.MAX_VALUE) {
+                        continue;
+                    }
+                    long cost = Math.max(best[s - 1][j], prefix[i] - prefix[j]);
+                    if (cost < best[s][i]) {
+                        best[s][i] = cost;
+                        cut[s][i] = j;
+                    }
+                }
+            }
+        }
+
+        int[] bounds = new int[stages + 1];
+        bounds[stages] = steps;
+        for (int s = stages; s > 0; s--) {
+            bounds[s - 1] = cut[s][bounds[s]];
+        }
+        return bounds;
+    }
+
+    private int stages() {
+        return this.bounds.length - 1;
+    }
+
+    // Forward and backward passes over the first `batch` samples, the gradients are summed into the network.
+    // Returns the loss summed over the samples, divided by batch like the one of CNN.train
+    double trainBatch(Tensor inputs, Tensor targets, int batch) {
+        this.inputs = inputs;
+        this.targets = targets;
+        this.batch = batch;
+        int micro = Math.min(this.microBatches, batch);
+
+        ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(this.threads);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int s = 0; s < stages(); s++) {
+            int stage = s;
+            futures.add(completion.submit(() -> {
+                runStage(stage, micro);
+                return null;
+            }));
+        }
+
+        // A failed stage would leave its neighbours waiting on the queues : they are interrupted
+        try {
+            for (int s = 0; s < futures.size(); s++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training a pipelined batch", e);
+        } catch (ExecutionException e) {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            this.activations.forEach(BlockingQueue::clear);
+            this.gradients.forEach(BlockingQueue::clear);
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Pipeline stage failed", e.getCause());
+        }
+
+        this.network.reduceGradients(this.slots, this.slots.size());
+        double loss = 0.0;
+        for (int m = 0; m < micro; m++) {
+            loss += this.losses[m];
+        }
+        return loss;
+    }
+
+    private void runStage(int stage, int micro) throws InterruptedException {
+        // Forward passes run ahead of the first backward pass : all of them for GPipe
+        int ahead = this.schedule == Schedule.GPIPE ? micro : Math.min(micro, stages() - stage);
+        int forwards = 0;
+        int backwards = 0;
+        while (forwards < ahead) {
+            forward(stage, forwards++, micro);
+        }
+        while (backwards < micro) {
+            backward(stage, backwards++);
+            if (forwards < micro) {
+                forward(stage, forwards++, micro);
+            }
+        }
+    }
+
+    private void forward(int stage, int m, int micro) throws InterruptedException {
+        CNN slot = this.slots.get(m % this.slots.size());
+        Tensor input;
+        if (stage == 0) {
+            int from = m * this.batch / micro;
+            int to = (m + 1) * this.batch / micro;
+            input = this.inputs.narrow(from, to - from);
+        } else {
+            input = receive(this.activations.get(stage - 1), m);
+        }
+
+        Tensor output = slot.forward(this.bounds[stage], this.bounds[stage + 1], input);
+        if (stage + 1 < stages()) {
+            this.activations.get(stage).put(new Message(m, output));
+            return;
+        }
+
+        // Last stage : the loss gradient is ready as soon as the forward pass is done
+        int from = m * this.batch / micro;
+        int to = (m + 1) * this.batch / micro;
+        int index = m % this.slots.size();
+        this.lossGradients[index] = Tensor.reuse(this.lossGradients[index], output);
+        this.losses[m] = Loss.meanSquaredError(output, this.targets.narrow(from, to - from), this.lossGradients[index], this.batch);
+    }
+
+    private void backward(int stage, int m) throws InterruptedException {
+        CNN slot = this.slots.get(m % this.slots.size());
+        Tensor gradient = stage + 1 < stages() ? receive(this.gradients.get(stage), m) : this.lossGradients[m % this.slots.size()];
+        Tensor output = slot.backward(this.bounds[stage], this.bounds[stage + 1], gradient);
+        if (stage > 0) {
+            this.gradients.get(stage - 1).put(new Message(m, output));
+        }
+    }
+
+    // Both schedules send the micro-batches of a queue in increasing order
+    private static Tensor receive(BlockingQueue<Message> queue, int m) throws InterruptedException {
+        Message message = queue.take();
+        if (message.microBatch != m) {
+            throw new IllegalStateException("Pipeline expected micro-batch " + m + ", got " + message.microBatch);
+        }
+        return message.tensor;
+    }
+
+    public void close() {
+        this.threads.shutdownNow();
+    }
+}
@@ -1,91 +1,300 @@
 package cnn;
+import java.util.Arrays;
+
 public class PoolLayer extends Layer {
     private int poolHeight;
     private int poolWidth;
 
     private int stride;
-    // pooling type ? Max or average
-    // pooling "mode" -> valid (only pool complete windows)
-    // private int padding;
+    // Zero-size border around the input : padded cells never win a max and are not counted by an average
+    private int padding;
+    private Mode mode;
+
+    // Output rows per parallel task
+    private static final int TILE_ROWS = 8;
+
+    // Set by compile
+    private int outputHeight;
+    private int outputWidth;
+
+    // Workspaces reused across calls
+    private Tensor output;
+    private Tensor inputGradient;
+
+    // Max mode : position in its input map of the maximum behind every output value, so backward is a scatter
+    private int[] argmax;
+
+    // The ordinal is saved in model files (see ModelFile) : new modes go at the end
+    public enum Mode {
+        MAX,
+        AVERAGE,
+    }
 
     public PoolLayer(int poolHeight, int poolWidth) {
         this.type = Type.POOLING;
         this.poolHeight = poolHeight;
         this.poolWidth = poolWidth;
         this.stride = 2;
+        this.padding = 0;
+        this.mode = Mode.MAX;
     }
 
-    public double[][][] forward(double[][][] input) {
-        System.out.println("[POOL LAYER] initiating forward pass");
-        int inputHeight = input[0].length;
-        int inputWidth = input[0][0].length;
+    // [N][channel][height][width] -> [N][channel][outputHeight][outputWidth]
+    public int[] compile(int[] inputShape) {
+        int[] shape = outputShape(inputShape);
+        this.inputShape = inputShape.clone();
+        this.outputHeight = shape[2];
+        this.outputWidth = shape[3];
+        this.output = Tensor.reuse(this.output, shape[0], shape[1], shape[2], shape[3]);
+        this.inputGradient = Tensor.reuse(this.inputGradient, inputShape[0], inputShape[1], inputShape[2], inputShape[3]);
+        if (this.mode == Mode.MAX && (this.argmax == null || this.argmax.length < this.output.size())) {
+            this.argmax = new int[this.output.size()];
+        }
+        return shape;
+    }
+
+    // Validates inputShape and returns the output shape, without sizing any buffer (see ConvPoolLayer)
+    int[] outputShape(int[] inputShape) {
+        if (inputShape.length != 4) {
+            throw new IllegalArgumentException("Pool layer expects [N][channel][height][width] inputs, got " + Arrays.toString(inputShape));
+        }
+        if (this.padding >= this.poolHeight || this.padding >= this.poolWidth) {
+            throw new IllegalArgumentException("Padding " + this.padding + " leaves windows of " + this.poolHeight + "x" + this.poolWidth + " without any input");
+        }
 
         // Calculate output dimensions (downsampling)
-        int outputHeight = (inputHeight - this.poolHeight) / this.stride + 1;
-        int outputWidth = (inputWidth - poolWidth) / this.stride + 1;
+        int outputHeight = (inputShape[2] + 2 * this.padding - this.poolHeight) / this.stride + 1;
+        int outputWidth = (inputShape[3] + 2 * this.padding - this.poolWidth) / this.stride + 1;
+        if (outputHeight < 1 || outputWidth < 1) {
+            throw new IllegalArgumentException("Pooling window " + this.poolHeight + "x" + this.poolWidth + " does not fit input " + Arrays.toString(inputShape));
+        }
+        return new int[] {inputShape[0], inputShape[1], outputHeight, outputWidth};
+    }
 
-        System.out.println("outputHeight = " + outputHeight);
-        System.out.println("outputWidth = " + outputWidth);
+    // One comparison (or addition) per window element
+    public long flops(int batch) {
+        return (long) batch * this.inputShape[1] * this.outputHeight * this.outputWidth * this.poolHeight * this.poolWidth;
+    }
 
-        double[][][] output = new double[input.length][outputHeight][outputWidth];
+    // Max mode only touches one input per output value
+    public long backwardFlops(int batch) {
+        long outputs = (long) batch * this.inputShape[1] * this.outputHeight * this.outputWidth;
+        return this.mode == Mode.MAX ? outputs : outputs * this.poolHeight * this.poolWidth;
+    }
 
-        // For each feature map
-        for (double[][] featureMap : input) {
+    // input shape [N][channel][height][width] -> output shape [N][channel][outputHeight][outputWidth]
+    public Tensor forward(Tensor tensor) {
+        if (!isCompiledFor(tensor)) {
+            compile(tensor.shape());
+        }
+        Tensor input = tensor.contiguous();
+        int batch = input.shape(0);
+        int channels = input.shape(1);
+        int inputHeight = input.shape(2);
+        int inputWidth = input.shape(3);
+        int outputHeight = this.outputHeight;
+        int outputWidth = this.outputWidth;
 
-            // For each pooling window
-            for (int outY = 0; outY < outputHeight; outY += this.stride) {
-                for (int outX = 0; outX < outputWidth; outX += this.stride) {
-                    double max = Double.NEGATIVE_INFINITY;
+        Tensor output = Tensor.reuse(this.output, batch, channels, outputHeight, outputWidth);
+        this.output = output;
+        // Batches larger than the compiled one only grow the buffers
+        if (this.mode == Mode.MAX && !this.inference && (this.argmax == null || this.argmax.length < output.size())) {
+            this.argmax = new int[output.size()];
+        }
 
-                    // Find max value in the pooling window (MaxPooling)
-                    for (int windowY = 0; windowY < this.poolHeight; windowY++) {
-                        for (int windowX = 0; windowX < this.poolWidth; windowX++) {
-                            int inY = outY + windowY;
-                            int inX = outX + windowX;
+        double[] I = input.data();
+        double[] O = output.data();
+        int[] argmax = this.inference ? null : this.argmax;
 
-                            if (inY < inputHeight && inX < inputWidth) {
-                                max = Math.max(max, featureMap[inY][inX]);
-                            }
-                        }
+        // Feature maps are independent : one task per (map, tile of TILE_ROWS output rows)
+        int tiles = Parallel.tiles(outputHeight, TILE_ROWS);
+        Parallel.forEach(batch * channels * tiles, task -> {
+            int map = task / tiles;
+            int fromY = (task % tiles) * TILE_ROWS;
+            int toY = Math.min(outputHeight, fromY + TILE_ROWS);
+            int inBase = input.offset() + map * inputHeight * inputWidth;
+            int outBase = map * outputHeight * outputWidth;
+            if (this.mode == Mode.MAX) {
+                maxRows(I, inBase, inputHeight, inputWidth, O, outBase, argmax, fromY, toY);
+            } else {
+                averageRows(I, inBase, inputHeight, inputWidth, O, outBase, fromY, toY);
+            }
+        });
+
+        return output;
+    }
+
+    // Output rows fromY .. toY of one map, every window clipped to the input
+    private void maxRows(double[] I, int inBase, int inputHeight, int inputWidth, double[] O, int outBase, int[] argmax, int fromY, int toY) {
+        for (int outY = fromY; outY < toY; outY++) {
+            int y0 = outY * this.stride - this.padding;
+            int fromWy = Math.max(0, y0);
+            int toWy = Math.min(inputHeight, y0 + this.poolHeight);
+
+            for (int outX = 0; outX < this.outputWidth; outX++) {
+                int x0 = outX * this.stride - this.padding;
+                int fromWx = Math.max(0, x0);
+                int toWx = Math.min(inputWidth, x0 + this.poolWidth);
+
+                // Branch-free max first (which cell wins is unpredictable on real data),
+                // then the position of its first occurrence, a branch taken once per window
+                double max = Double.NEGATIVE_INFINITY;
+                for (int inY = fromWy; inY < toWy; inY++) {
+                    for (int inX = fromWx; inX < toWx; inX++) {
+                        max = Math.max(max, I[inBase + inY * inputWidth + inX]);
                     }
+                }
 
-                    output[0][outY][outX] = max;
+                int out = outBase + outY * this.outputWidth + outX;
+                O[out] = max;
+                if (argmax != null) {
+                    argmax[out] = position(I, inBase, inputWidth, fromWy, toWy, fromWx, toWx, max);
                 }
             }
         }
+    }
 
-        // DISPLAY OUTPUT
-        System.out.println("*****************");
-        System.out.println("dimensionality reduction");
-        System.out.println("*****************");
-        for (double[][] featureMap : output) {
-            for (double[] row : featureMap) {
-                for (double value : row) {
-                    System.out.print(value + " ");
+    // Windows always hold an input cell (padding < window) : a NaN maximum falls back to the first one
+    private static int position(double[] I, int inBase, int inputWidth, int fromWy, int toWy, int fromWx, int toWx, double max) {
+        for (int inY = fromWy; inY < toWy; inY++) {
+            for (int inX = fromWx; inX < toWx; inX++) {
+                if (I[inBase + inY * inputWidth + inX] == max) {
+                    return inY * inputWidth + inX;
                 }
-                System.out.println();
             }
         }
+        return fromWy * inputWidth + fromWx;
+    }
 
-        return output;
+    // Averages count the input cells of each window only
+    private void averageRows(double[] I, int inBase, int inputHeight, int inputWidth, double[] O, int outBase, int fromY, int toY) {
+        for (int outY = fromY; outY < toY; outY++) {
+            int y0 = outY * this.stride - this.padding;
+            int fromWy = Math.max(0, y0);
+            int toWy = Math.min(inputHeight, y0 + this.poolHeight);
+
+            for (int outX = 0; outX < this.outputWidth; outX++) {
+                int x0 = outX * this.stride - this.padding;
+                int fromWx = Math.max(0, x0);
+                int toWx = Math.min(inputWidth, x0 + this.poolWidth);
+
+                double sum = 0.0;
+                for (int inY = fromWy; inY < toWy; inY++) {
+                    for (int inX = fromWx; inX < toWx; inX++) {
+                        sum += I[inBase + inY * inputWidth + inX];
+                    }
+                }
+                O[outBase + outY * this.outputWidth + outX] = sum / ((toWy - fromWy) * (toWx - fromWx));
+            }
+        }
+    }
+
+    void release() {
+        this.output = null;
+        this.inputGradient = null;
+        this.argmax = null;
+    }
+
+    // Max mode scatters every output gradient to the recorded argmax, average mode spreads it over its window.
+    // Windows may overlap, so tasks own whole maps and sum into them in a fixed order
+    public Tensor backward(Tensor gradient) {
+        gradient = gradient.contiguous();
+        int batch = gradient.shape(0);
+        int channels = this.inputShape[1];
+        int inputHeight = this.inputShape[2];
+        int inputWidth = this.inputShape[3];
+        int outputHeight = this.outputHeight;
+        int outputWidth = this.outputWidth;
+
+        Tensor delta = Tensor.reuse(this.inputGradient, batch, channels, inputHeight, inputWidth).fill(0.0);
+        this.inputGradient = delta;
+        double[] dI = delta.data();
+        double[] dO = gradient.data();
+        int g0 = gradient.offset();
+
+        Parallel.forEach(batch * channels, map -> {
+            int inBase = map * inputHeight * inputWidth;
+            int outBase = map * outputHeight * outputWidth;
+
+            if (this.mode == Mode.MAX) {
+                for (int out = outBase; out < outBase + outputHeight * outputWidth; out++) {
+                    dI[inBase + this.argmax[out]] += dO[g0 + out];
+                }
+                return;
+            }
+
+            for (int outY = 0; outY < outputHeight; outY++) {
+                int y0 = outY * this.stride - this.padding;
+                int fromWy = Math.max(0, y0);
+                int toWy = Math.min(inputHeight, y0 + this.poolHeight);
+
+                for (int outX = 0; outX < outputWidth; outX++) {
+                    int x0 = outX * this.stride - this.padding;
+                    int fromWx = Math.max(0, x0);
+                    int toWx = Math.min(inputWidth, x0 + this.poolWidth);
+                    double share = dO[g0 + outBase + outY * outputWidth + outX] / ((toWy - fromWy) * (toWx - fromWx));
+
+                    for (int inY = fromWy; inY < toWy; inY++) {
+                        for (int inX = fromWx; inX < toWx; inX++) {
+                            dI[inBase + inY * inputWidth + inX] += share;
+                        }
+                    }
+                }
+            }
+        });
+
+        return delta;
+    }
+
+    int[] config() {
+        return new int[] {this.poolHeight, this.poolWidth, this.stride, this.padding, this.mode.ordinal()};
+    }
+
+    public Layer replicate() {
+        PoolLayer replica = new PoolLayer(this.poolHeight, this.poolWidth);
+        replica.stride = this.stride;
+        replica.padding = this.padding;
+        replica.mode = this.mode;
+        return replica;
     }
 
     public void setStride(int stride) {
         this.stride = stride;
+        this.inputShape = null;
+    }
+
+    public void setPadding(int padding) {
+        this.padding = padding;
+        this.inputShape = null;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        this.inputShape = null;
     }
 
     public void setPoolHeight(int poolHeight) {
         this.poolHeight = poolHeight;
+        this.inputShape = null;
     }
 
     public void setPoolWidth(int poolWidth) {
         this.poolWidth = poolWidth;
+        this.inputShape = null;
     }
 
     public int getStride() {
         return this.stride;
     }
 
+    public int getPadding() {
+        return this.padding;
+    }
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
     public int getPoolHeight() {
         return this.poolHeight;
     }
@@ -93,4 +302,4 @@ public class PoolLayer extends Layer {
     public int getPoolWidth() {
         return this.poolWidth;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
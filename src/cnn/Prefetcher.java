@@ -0,0 +1,178 @@
+package cnn;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Loads the batches of a pass over a dataset on background threads, ahead of the training loop.
+// Loader t decodes batches t, t + threads, t + 2 * threads ... into its own `depth` batch buffers,
+// so at most threads * depth batches are held and buffers are recycled (no allocation per batch).
+// Batches come out of next() in order, whatever the number of loaders
+public final class Prefetcher implements AutoCloseable {
+    private final Dataset dataset;
+    private final int batchSize;
+    private final Loader[] loaders;
+
+    private int batches;
+    private int nextBatch;
+
+    // A batch of `count` samples, the rows beyond count are left over from previous batches
+    public static final class Batch {
+        public final Tensor inputs;
+        public final Tensor targets;
+        public int count;
+
+        private final Tensor[] inputSamples;
+        private final Tensor[] targetSamples;
+        private Throwable failure;
+
+        private Batch(Dataset dataset, int batchSize) {
+            this.inputs = new Tensor(CNN.batchShape(batchSize, dataset.inputShape()));
+            this.targets = new Tensor(CNN.batchShape(batchSize, dataset.targetShape()));
+            this.inputSamples = new Tensor[batchSize];
+            this.targetSamples = new Tensor[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                this.inputSamples[i] = this.inputs.slice(i);
+                this.targetSamples[i] = this.targets.slice(i);
+            }
+        }
+    }
+
+    public Prefetcher(Dataset dataset, int batchSize, int threads, int depth) {
+        if (batchSize < 1 || threads < 1 || depth < 1) {
+            throw new IllegalArgumentException("Batch size, threads and depth must be at least 1");
+        }
+        this.dataset = dataset;
+        this.batchSize = batchSize;
+        this.loaders = new Loader[threads];
+        for (int t = 0; t < threads; t++) {
+            this.loaders[t] = new Loader(t, depth);
+        }
+    }
+
+    // Starts loading the batches of one pass, order holds the sample indices in training order.
+    // The previous pass must have been read to the end
+    public void start(int[] order) {
+        if (this.nextBatch < this.batches) {
+            throw new IllegalStateException("The previous pass still has " + (this.batches - this.nextBatch) + " batches to read");
+        }
+        this.batches = (order.length + this.batchSize - 1) / this.batchSize;
+        this.nextBatch = 0;
+
+        for (Loader loader : this.loaders) {
+            loader.start(order, this.batches);
+        }
+    }
+
+    // Next batch of the pass (waits for it if it is not decoded yet), null at the end of the pass.
+    // The batch must be handed back with release once it has been used
+    public Batch next() {
+        if (this.nextBatch == this.batches) {
+            return null;
+        }
+        Loader loader = this.loaders[this.nextBatch % this.loaders.length];
+        this.nextBatch++;
+
+        try {
+            Batch batch = loader.ready.take();
+            if (batch.failure != null) {
+                Throwable failure = batch.failure;
+                batch.failure = null;
+                loader.free.add(batch);
+                throw new IllegalStateException("Loading a batch failed", failure);
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch", e);
+        }
+    }
+
+    public void release(Batch batch) {
+        for (Loader loader : this.loaders) {
+            if (loader.owns(batch)) {
+                loader.free.add(batch);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Batch does not come from this prefetcher");
+    }
+
+    // Stops the loaders, a pass in progress is abandoned
+    public void close() {
+        for (Loader loader : this.loaders) {
+            loader.stop();
+        }
+    }
+
+    private void load(Batch batch, int[] order, int index) {
+        int start = index * this.batchSize;
+        batch.count = Math.min(this.batchSize, order.length - start);
+        for (int i = 0; i < batch.count; i++) {
+            this.dataset.get(order[start + i], batch.inputSamples[i], batch.targetSamples[i]);
+        }
+    }
+
+    // One background thread and its batch buffers
+    private final class Loader implements Runnable {
+        private final int id;
+        private final Batch[] buffers;
+        private final BlockingQueue<Batch> free;
+        private final BlockingQueue<Batch> ready;
+        private Thread thread;
+
+        // Pass handed to the next thread, published to it by Thread.start
+        private int[] order;
+        private int batches;
+
+        Loader(int id, int depth) {
+            this.id = id;
+            this.buffers = new Batch[depth];
+            this.free = new ArrayBlockingQueue<>(depth);
+            this.ready = new ArrayBlockingQueue<>(depth);
+            for (int i = 0; i < depth; i++) {
+                this.buffers[i] = new Batch(dataset, batchSize);
+                this.free.add(this.buffers[i]);
+            }
+        }
+
+        boolean owns(Batch batch) {
+            for (Batch buffer : this.buffers) {
+                if (buffer == batch) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void start(int[] order, int batches) {
+            this.order = order;
+            this.batches = batches;
+            this.thread = new Thread(this, "cnn-prefetch-" + this.id);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        void stop() {
+            if (this.thread != null) {
+                this.thread.interrupt();
+            }
+        }
+
+        public void run() {
+            int[] order = this.order;
+            int batches = this.batches;
+            try {
+                for (int index = this.id; index < batches; index += loaders.length) {
+                    Batch batch = this.free.take();
+                    try {
+                        load(batch, order, index);
+                    } catch (RuntimeException e) {
+                        batch.failure = e;
+                    }
+                    this.ready.put(batch);
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cnn;
+import java.util.Arrays;
+import java.util.List;
+
+// Magnitude pruning of fully connected layers. prune(layer, threshold) zeroes the weights of a DenseLayer
+// whose magnitude is below threshold, prune(layer, sparsity) the given share of its smallest weights.
+// prune(network, sparsity) does the latter for every DenseLayer of a network and replaces each one with
+// a SparseDenseLayer, which stores and computes the remaining weights only. Training the network
+// afterwards fine-tunes the kept weights, the pruned ones stay at zero since they are not stored.
+// The sparse layers come with new Parameters : optimizer state is kept per Parameter, so fine-tune with a fresh
+// optimizer (CNN.setOptimizer), or the old one keeps the state of the dense weights alive and starts the sparse
+// ones from zero. Pruned networks save and load like the others (see ModelFile)
+public final class Pruning {
+    private Pruning() {
+    }
+
+    // Returns the number of weights set to zero
+    public static int prune(DenseLayer layer, double threshold) {
+        Tensor weights = layer.parameters().get(0).value;
+        double[] W = weights.data();
+        int pruned = 0;
+        for (int i = weights.offset(); i < weights.offset() + weights.size(); i++) {
+            if (W[i] != 0.0 && Math.abs(W[i]) < threshold) {
+                W[i] = 0.0;
+                pruned++;
+            }
+        }
+        weights.markModified();
+        return pruned;
+    }
+
+    // Zeroes the round(sparsity * weights) smallest weights (ties at the cut go too). Returns the threshold used
+    public static double pruneToSparsity(DenseLayer layer, double sparsity) {
+        if (sparsity < 0.0 || sparsity > 1.0) {
+            throw new IllegalArgumentException("Sparsity must be between 0 and 1, got " + sparsity);
+        }
+        Tensor weights = layer.parameters().get(0).value.contiguous();
+        double[] magnitudes = new double[weights.size()];
+        for (int i = 0; i < magnitudes.length; i++) {
+            magnitudes[i] = Math.abs(weights.data()[weights.offset() + i]);
+        }
+        Arrays.sort(magnitudes);
+
+        int count = (int) Math.round(sparsity * magnitudes.length);
+        if (count == 0) {
+            return 0.0;
+        }
+        // Everything strictly below the next magnitude, so that exactly `count` weights go without ties
+        double threshold = count < magnitudes.length ? magnitudes[count] : Double.POSITIVE_INFINITY;
+        if (count < magnitudes.length && magnitudes[count - 1] == threshold) {
+            threshold = Math.nextUp(threshold);
+        }
+        prune(layer, threshold);
+        return threshold;
+    }
+
+    // Prunes every DenseLayer of a compiled network to sparsity and swaps it for a SparseDenseLayer.
+    // The network is compiled again for its input shape
+    public static Report prune(CNN network, double sparsity) {
+        if (network.getInputShape() == null) {
+            throw new IllegalStateException("The network must be compiled before it is pruned.");
+        }
+        Report report = new Report();
+        List<Layer> layers = network.layers();
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) instanceof DenseLayer dense) {
+                Tensor weights = dense.parameters().get(0).value;
+                report.denseWeightBytes += (long) (weights.size() + weights.shape(0)) * Double.BYTES;
+                pruneToSparsity(dense, sparsity);
+
+                SparseDenseLayer sparse = new SparseDenseLayer(dense);
+                report.sparseWeightBytes += sparse.weightBytes();
+                report.weights += weights.size();
+                report.nonZeros += sparse.nonZeros();
+                report.layers++;
+                network.replaceLayer(i, sparse);
+            }
+        }
+        network.compile(network.getInputShape());
+        return report;
+    }
+
+    // Dense layers pruned by prune(network, sparsity), before and after
+    public static final class Report {
+        public int layers;
+        public long weights;
+        public long nonZeros;
+        // Weights and biases, plus the column indices and row starts of the sparse layers
+        public long denseWeightBytes;
+        public long sparseWeightBytes;
+
+        public String toString() {
+            return String.format("%d dense layers pruned : %d of %d weights kept (%.1f%% sparse), %d KB -> %d KB",
+                    this.layers, this.nonZeros, this.weights, 100.0 * (this.weights - this.nonZeros) / Math.max(1, this.weights),
+                    this.denseWeightBytes / 1024, this.sparseWeightBytes / 1024);
+        }
+    }
+}
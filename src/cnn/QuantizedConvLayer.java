@@ -0,0 +1,180 @@
+package cnn;
+import java.util.Arrays;
+
+// Inference-only int8 version of a ConvLayer, built by Quantizer (see QuantizedDenseLayer for the arithmetic).
+// Every kernel has its own weight scale. The input is quantized once, then each sample is lowered into int8
+// patches [output pixel][channel * kernelHeight * kernelWidth] so that every output value is one contiguous
+// int8 dot product. Padded cells hold the input zero-point, which stands for 0.0
+class QuantizedConvLayer extends Layer {
+    private final int kernelNum;
+    private final int channels;
+    private final int kernelHeight;
+    private final int kernelWidth;
+    private final int stride;
+    private final int padding;
+
+    // [kernel][channel * kernelHeight * kernelWidth] int8 weights, their scale and sum per kernel
+    private final byte[] weights;
+    private final double[] scales;
+    private final int[] rowSums;
+    private final double[] biases;
+    private Activation activation;
+
+    private final double inputScale;
+    private final int inputZeroPoint;
+
+    // Set by compile
+    private int outputHeight;
+    private int outputWidth;
+
+    // Workspaces : quantized inputs and the output
+    private byte[] codes;
+    private Tensor output;
+
+    // Patches of one sample, reused by each thread across calls
+    private static final ThreadLocal<byte[]> PATCHES = ThreadLocal.withInitial(() -> new byte[0]);
+
+    QuantizedConvLayer(ConvLayer layer, double inputScale, int inputZeroPoint) {
+        Tensor kernels = layer.kernels.contiguous();
+        this.type = Type.QUANTIZED_CONV;
+        this.kernelNum = kernels.shape(0);
+        this.channels = kernels.shape(1);
+        this.kernelHeight = kernels.shape(2);
+        this.kernelWidth = kernels.shape(3);
+        this.stride = layer.getStride();
+        this.padding = layer.getPadding();
+
+        int patch = this.channels * this.kernelHeight * this.kernelWidth;
+        this.weights = new byte[this.kernelNum * patch];
+        this.scales = new double[this.kernelNum];
+        this.rowSums = new int[this.kernelNum];
+        Quantizer.quantizeRows(kernels.data(), kernels.offset(), this.kernelNum, patch, this.weights, this.scales, this.rowSums);
+        this.biases = layer.biases.clone();
+        this.activation = layer.getActivation();
+        this.inputScale = inputScale;
+        this.inputZeroPoint = inputZeroPoint;
+    }
+
+    // Replica sharing the weights
+    private QuantizedConvLayer(QuantizedConvLayer source) {
+        this.type = Type.QUANTIZED_CONV;
+        this.kernelNum = source.kernelNum;
+        this.channels = source.channels;
+        this.kernelHeight = source.kernelHeight;
+        this.kernelWidth = source.kernelWidth;
+        this.stride = source.stride;
+        this.padding = source.padding;
+        this.weights = source.weights;
+        this.scales = source.scales;
+        this.rowSums = source.rowSums;
+        this.biases = source.biases;
+        this.activation = source.activation;
+        this.inputScale = source.inputScale;
+        this.inputZeroPoint = source.inputZeroPoint;
+    }
+
+    public Layer replicate() {
+        return new QuantizedConvLayer(this);
+    }
+
+    // Replicas copy the activation, so this only changes the one replica
+    void approximateActivations() {
+        this.activation = this.activation.approximation();
+    }
+
+    // [N][channels][height][width] -> [N][kernelNum][outputHeight][outputWidth]
+    public int[] compile(int[] inputShape) {
+        if (inputShape.length != 4 || inputShape[1] != this.channels) {
+            throw new IllegalArgumentException("Quantized conv layer expects [N][" + this.channels + "][height][width] inputs, got " + Arrays.toString(inputShape));
+        }
+        int outputHeight = (inputShape[2] + 2 * this.padding - this.kernelHeight) / this.stride + 1;
+        int outputWidth = (inputShape[3] + 2 * this.padding - this.kernelWidth) / this.stride + 1;
+        if (outputHeight < 1 || outputWidth < 1) {
+            throw new IllegalArgumentException("Kernel " + this.kernelHeight + "x" + this.kernelWidth + " does not fit input " + Arrays.toString(inputShape));
+        }
+
+        this.inputShape = inputShape.clone();
+        this.outputHeight = outputHeight;
+        this.outputWidth = outputWidth;
+        this.output = Tensor.reuse(this.output, inputShape[0], this.kernelNum, outputHeight, outputWidth);
+        int inputSize = Tensor.count(inputShape);
+        if (this.codes == null || this.codes.length < inputSize) {
+            this.codes = new byte[inputSize];
+        }
+        return new int[] {inputShape[0], this.kernelNum, outputHeight, outputWidth};
+    }
+
+    public long flops(int batch) {
+        return (long) batch * this.kernelNum * this.outputHeight * this.outputWidth * (2L * this.channels * this.kernelHeight * this.kernelWidth + 2);
+    }
+
+    // Bytes of weights, scales, row sums and biases
+    long weightBytes() {
+        return this.weights.length + (long) this.kernelNum * (2 * Double.BYTES + Integer.BYTES);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input) || this.codes.length < input.size()) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
+        int batch = input.shape(0);
+        int height = input.shape(2);
+        int width = input.shape(3);
+        int outputHeight = this.outputHeight;
+        int outputWidth = this.outputWidth;
+        int area = outputHeight * outputWidth;
+        int patch = this.channels * this.kernelHeight * this.kernelWidth;
+
+        Tensor output = Tensor.reuse(this.output, batch, this.kernelNum, outputHeight, outputWidth);
+        this.output = output;
+        byte[] Q = this.codes;
+        double[] O = output.data();
+        Quantizer.quantize(input.data(), input.offset(), input.size(), this.inputScale, this.inputZeroPoint, Q, 0);
+        ArrayOps ops = Config.ops();
+
+        Parallel.forEach(batch, n -> {
+            byte[] patches = PATCHES.get();
+            if (patches.length < area * patch) {
+                patches = new byte[area * patch];
+                PATCHES.set(patches);
+            }
+            lower(Q, n * this.channels * height * width, height, width, patches);
+
+            for (int k = 0; k < this.kernelNum; k++) {
+                int map = (n * this.kernelNum + k) * area;
+                double scale = this.inputScale * this.scales[k];
+                int offset = this.inputZeroPoint * this.rowSums[k];
+                for (int p = 0; p < area; p++) {
+                    O[map + p] = (ops.dot(this.weights, k * patch, patches, p * patch, patch) - offset) * scale;
+                }
+                this.activation.apply(O, map, area, this.biases[k]);
+            }
+        });
+        return output;
+    }
+
+    // patches[p][c][ky][kx] = the input cell under kernel weight (c, ky, kx) for output pixel p
+    private void lower(byte[] Q, int sampleBase, int height, int width, byte[] patches) {
+        byte zero = (byte) this.inputZeroPoint;
+        int index = 0;
+        for (int outY = 0; outY < this.outputHeight; outY++) {
+            for (int outX = 0; outX < this.outputWidth; outX++) {
+                for (int c = 0; c < this.channels; c++) {
+                    int channelBase = sampleBase + c * height * width;
+                    for (int ky = 0; ky < this.kernelHeight; ky++) {
+                        int y = outY * this.stride - this.padding + ky;
+                        for (int kx = 0; kx < this.kernelWidth; kx++) {
+                            int x = outX * this.stride - this.padding + kx;
+                            patches[index++] = (y < 0 || y >= height || x < 0 || x >= width) ? zero : Q[channelBase + y * width + x];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public Tensor backward(Tensor gradient) {
+        throw new UnsupportedOperationException("Quantized layers are inference-only, train the double network and quantize it again.");
+    }
+}
@@ -0,0 +1,116 @@
+package cnn;
+
+// Inference-only int8 version of a DenseLayer, built by Quantizer.
+// Weights are int8 with one scale per neuron (symmetric, no zero-point), inputs are int8 with the scale and
+// zero-point calibrated for this layer. With x = s_x (q_x - z_x) and w = s_w q_w, each neuron is
+// y = s_x s_w (sum q_x q_w - z_x sum q_w) + b : an int32 dot product, then one requantizing multiply per output
+class QuantizedDenseLayer extends Layer {
+    private final int size;
+    private final int previousLayerSize;
+
+    // [size][previousLayerSize] int8 weights, their scale and sum per row
+    private final byte[] weights;
+    private final double[] scales;
+    private final int[] rowSums;
+    private final double[] biases;
+    private Activation activation;
+
+    private final double inputScale;
+    private final int inputZeroPoint;
+
+    // Workspaces : quantized inputs and the output
+    private byte[] codes;
+    private Tensor output;
+
+    QuantizedDenseLayer(DenseLayer layer, double inputScale, int inputZeroPoint) {
+        Tensor weights = layer.parameters().get(0).value.contiguous();
+        this.type = Type.QUANTIZED_DENSE;
+        this.size = weights.shape(0);
+        this.previousLayerSize = weights.shape(1);
+        this.weights = new byte[this.size * this.previousLayerSize];
+        this.scales = new double[this.size];
+        this.rowSums = new int[this.size];
+        Quantizer.quantizeRows(weights.data(), weights.offset(), this.size, this.previousLayerSize, this.weights, this.scales, this.rowSums);
+        this.biases = layer.parameters().get(1).value.toArray();
+        this.activation = layer.getActivation();
+        this.inputScale = inputScale;
+        this.inputZeroPoint = inputZeroPoint;
+    }
+
+    // Replica sharing the weights
+    private QuantizedDenseLayer(QuantizedDenseLayer source) {
+        this.type = Type.QUANTIZED_DENSE;
+        this.size = source.size;
+        this.previousLayerSize = source.previousLayerSize;
+        this.weights = source.weights;
+        this.scales = source.scales;
+        this.rowSums = source.rowSums;
+        this.biases = source.biases;
+        this.activation = source.activation;
+        this.inputScale = source.inputScale;
+        this.inputZeroPoint = source.inputZeroPoint;
+    }
+
+    public Layer replicate() {
+        return new QuantizedDenseLayer(this);
+    }
+
+    // Replicas copy the activation, so this only changes the one replica
+    void approximateActivations() {
+        this.activation = this.activation.approximation();
+    }
+
+    public int[] compile(int[] inputShape) {
+        int features = Tensor.count(inputShape) / inputShape[0];
+        if (features != this.previousLayerSize) {
+            throw new IllegalArgumentException("Quantized dense layer expects " + this.previousLayerSize + " inputs, got " + features);
+        }
+        this.inputShape = inputShape.clone();
+        this.output = Tensor.reuse(this.output, inputShape[0], this.size);
+        if (this.codes == null || this.codes.length < inputShape[0] * features) {
+            this.codes = new byte[inputShape[0] * features];
+        }
+        return new int[] {inputShape[0], this.size};
+    }
+
+    // Integer multiply-adds, counted like the double ones
+    public long flops(int batch) {
+        return (long) batch * this.size * (2L * this.previousLayerSize + 2);
+    }
+
+    // Bytes of weights, scales, row sums and biases
+    long weightBytes() {
+        return this.weights.length + (long) this.size * (2 * Double.BYTES + Integer.BYTES);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input) || this.codes.length < input.size()) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
+        int batch = input.shape(0);
+        Tensor output = Tensor.reuse(this.output, batch, this.size);
+        this.output = output;
+
+        byte[] Q = this.codes;
+        double[] Y = output.data();
+        Quantizer.quantize(input.data(), input.offset(), input.size(), this.inputScale, this.inputZeroPoint, Q, 0);
+        ArrayOps ops = Config.ops();
+
+        for (int n = 0; n < batch; n++) {
+            int q0 = n * this.previousLayerSize;
+            int y0 = n * this.size;
+            for (int neuron = 0; neuron < this.size; neuron++) {
+                int acc = ops.dot(Q, q0, this.weights, neuron * this.previousLayerSize, this.previousLayerSize)
+                        - this.inputZeroPoint * this.rowSums[neuron];
+                Y[y0 + neuron] = acc * this.inputScale * this.scales[neuron] + this.biases[neuron];
+            }
+            this.activation.apply(Y, y0, this.size);
+        }
+        return output;
+    }
+
+    public Tensor backward(Tensor gradient) {
+        throw new UnsupportedOperationException("Quantized layers are inference-only, train the double network and quantize it again.");
+    }
+}
@@ -0,0 +1,197 @@
+package cnn;
+import java.util.ArrayList;
+import java.util.List;
+
+// Post-training int8 quantization for inference. quantize() runs calibration samples through a trained network,
+// records the range of the inputs of every Dense and Conv layer and builds a new network where those layers are
+// QuantizedDenseLayer / QuantizedConvLayer : int8 weights with one scale per output channel, int8 inputs with
+// a calibrated scale and zero-point, int32 dot products requantized to doubles before the bias and activation.
+// Other layers are replicated as they are. Inputs outside the calibrated range saturate, so the calibration
+// samples should look like the real inputs. The result can only run forward and predict, it cannot be trained
+// or saved. compare() reports accuracy, throughput and weight size of both networks side by side
+public final class Quantizer {
+    private Quantizer() {
+    }
+
+    public static CNN quantize(CNN network, Tensor calibration) {
+        List<Layer> layers = network.layers();
+        List<Layer> quantized = new ArrayList<>();
+        Tensor x = calibration;
+
+        for (Layer layer : layers) {
+            Tensor output = layer.forward(x);
+            if (layer instanceof DenseLayer || layer instanceof ConvLayer) {
+                double min = 0.0;
+                double max = 0.0;
+                Tensor input = x.contiguous();
+                double[] values = input.data();
+                for (int i = input.offset(); i < input.offset() + input.size(); i++) {
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                }
+                // The range always holds 0.0, so padding and ReLU zeros quantize exactly.
+                // Layers are quantized after their forward pass, which gives lazy dense layers their weights
+                double scale = max > min ? (max - min) / 255 : 1.0;
+                int zeroPoint = clamp((int) Math.rint(-128 - min / scale));
+                quantized.add(layer instanceof DenseLayer dense
+                        ? new QuantizedDenseLayer(dense, scale, zeroPoint)
+                        : new QuantizedConvLayer((ConvLayer) layer, scale, zeroPoint));
+            } else {
+                quantized.add(layer.replicate());
+            }
+            x = output;
+        }
+
+        CNN result = new CNN();
+        for (Layer layer : quantized) {
+            result.addLayer(layer);
+        }
+        if (network.getInputShape() != null) {
+            result.compile(network.getInputShape());
+        }
+        return result;
+    }
+
+    // Runs every sample of dataset through both networks with predict, batchSize samples at a time.
+    // Accuracy counts the samples whose largest output matches the largest target value
+    public static Report compare(CNN reference, CNN quantized, Dataset dataset, int batchSize) {
+        Report report = new Report();
+        report.samples = dataset.size();
+        report.referenceWeightBytes = weightBytes(reference);
+        report.quantizedWeightBytes = weightBytes(quantized);
+
+        Tensor inputs = new Tensor(CNN.batchShape(batchSize, dataset.inputShape()));
+        Tensor targets = new Tensor(CNN.batchShape(batchSize, dataset.targetShape()));
+        long referenceNanos = 0;
+        long quantizedNanos = 0;
+        int referenceCorrect = 0;
+        int quantizedCorrect = 0;
+        int agreements = 0;
+
+        for (int from = 0; from < dataset.size(); from += batchSize) {
+            int count = Math.min(batchSize, dataset.size() - from);
+            for (int i = 0; i < count; i++) {
+                dataset.get(from + i, inputs.slice(i), targets.slice(i));
+            }
+            Tensor batch = inputs.narrow(0, count);
+            if (from == 0) {
+                // Warm-up, not timed
+                reference.predict(batch);
+                quantized.predict(batch);
+            }
+
+            long start = System.nanoTime();
+            Tensor expected = reference.predict(batch);
+            long middle = System.nanoTime();
+            Tensor actual = quantized.predict(batch);
+            referenceNanos += middle - start;
+            quantizedNanos += System.nanoTime() - middle;
+
+            int outputs = expected.size() / count;
+            int labels = targets.size() / batchSize;
+            for (int i = 0; i < count; i++) {
+                int label = argmax(targets.data(), i * labels, labels);
+                int referenceClass = argmax(expected.data(), i * outputs, outputs);
+                int quantizedClass = argmax(actual.data(), i * outputs, outputs);
+                referenceCorrect += referenceClass == label ? 1 : 0;
+                quantizedCorrect += quantizedClass == label ? 1 : 0;
+                agreements += referenceClass == quantizedClass ? 1 : 0;
+                for (int o = i * outputs; o < (i + 1) * outputs; o++) {
+                    report.maxOutputError = Math.max(report.maxOutputError, Math.abs(expected.data()[o] - actual.data()[o]));
+                }
+            }
+        }
+
+        report.referenceAccuracy = (double) referenceCorrect / report.samples;
+        report.quantizedAccuracy = (double) quantizedCorrect / report.samples;
+        report.agreement = (double) agreements / report.samples;
+        report.referenceSamplesPerSecond = report.samples * 1e9 / Math.max(1, referenceNanos);
+        report.quantizedSamplesPerSecond = report.samples * 1e9 / Math.max(1, quantizedNanos);
+        return report;
+    }
+
+    // Bytes held by the weights of every layer
+    static long weightBytes(CNN network) {
+        long bytes = 0;
+        for (Layer layer : network.layers()) {
+            if (layer instanceof QuantizedDenseLayer dense) {
+                bytes += dense.weightBytes();
+            } else if (layer instanceof QuantizedConvLayer conv) {
+                bytes += conv.weightBytes();
+            } else {
+                for (Parameter parameter : layer.parameters()) {
+                    bytes += (long) parameter.value.size() * Double.BYTES;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // Symmetric per-row quantization of a [rows][cols] matrix : q = round(w / scale) in [-127, 127]
+    // with scale = max |w| / 127, and the sum of the codes of every row
+    static void quantizeRows(double[] values, int offset, int rows, int cols, byte[] codes, double[] scales, int[] rowSums) {
+        for (int r = 0; r < rows; r++) {
+            int base = offset + r * cols;
+            double max = 0.0;
+            for (int i = base; i < base + cols; i++) {
+                max = Math.max(max, Math.abs(values[i]));
+            }
+            double scale = max > 0.0 ? max / 127 : 1.0;
+            int sum = 0;
+            for (int i = 0; i < cols; i++) {
+                int q = (int) Math.rint(values[base + i] / scale);
+                codes[r * cols + i] = (byte) q;
+                sum += q;
+            }
+            scales[r] = scale;
+            rowSums[r] = sum;
+        }
+    }
+
+    // codes[i] = clamp(round(x[i] / scale) + zeroPoint) to [-128, 127]
+    static void quantize(double[] x, int offset, int length, double scale, int zeroPoint, byte[] codes, int codesOffset) {
+        double inverse = 1.0 / scale;
+        for (int i = 0; i < length; i++) {
+            codes[codesOffset + i] = (byte) clamp((int) Math.rint(x[offset + i] * inverse) + zeroPoint);
+        }
+    }
+
+    private static int clamp(int q) {
+        return Math.max(-128, Math.min(127, q));
+    }
+
+    private static int argmax(double[] values, int offset, int length) {
+        int best = 0;
+        for (int i = 1; i < length; i++) {
+            if (values[offset + i] > values[offset + best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // Double and int8 networks side by side
+    public static final class Report {
+        public int samples;
+        public double referenceAccuracy;
+        public double quantizedAccuracy;
+        // Share of samples where both networks pick the same class
+        public double agreement;
+        public double maxOutputError;
+        public double referenceSamplesPerSecond;
+        public double quantizedSamplesPerSecond;
+        public long referenceWeightBytes;
+        public long quantizedWeightBytes;
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-16s %14s %14s%n", "", "double", "int8"));
+            sb.append(String.format("%-16s %13.2f%% %13.2f%%%n", "accuracy", 100 * this.referenceAccuracy, 100 * this.quantizedAccuracy));
+            sb.append(String.format("%-16s %14.0f %14.0f%n", "samples / s", this.referenceSamplesPerSecond, this.quantizedSamplesPerSecond));
+            sb.append(String.format("%-16s %14d %14d%n", "weight KB", this.referenceWeightBytes / 1024, this.quantizedWeightBytes / 1024));
+            sb.append(String.format("%d samples, same class for %.2f%%, largest output difference %.4g",
+                    this.samples, 100 * this.agreement, this.maxOutputError));
+            return sb.toString();
+        }
+    }
+}
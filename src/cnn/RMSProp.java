@@ -0,0 +1,48 @@
+package cnn;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// RMSProp : the step of every value is divided by a running average of its squared gradient
+public class RMSProp implements Optimizer {
+    private final double learningRate;
+    private final double decay;
+    private final double epsilon;
+
+    // Mean squared gradient of every parameter
+    private final Map<Parameter, double[]> averages;
+
+    public RMSProp(double learningRate) {
+        this(learningRate, 0.9, 1e-8);
+    }
+
+    public RMSProp(double learningRate, double decay, double epsilon) {
+        this.learningRate = learningRate;
+        this.decay = decay;
+        this.epsilon = epsilon;
+        this.averages = new IdentityHashMap<>();
+    }
+
+    public void step(List<Parameter> parameters) {
+        for (int p = 0; p < parameters.size(); p++) {
+            Parameter parameter = parameters.get(p);
+            double[] value = parameter.value.data();
+            double[] gradient = parameter.gradient.data();
+            double[] average = this.averages.get(parameter);
+            if (average == null) {
+                average = new double[gradient.length];
+                this.averages.put(parameter, average);
+            }
+            int v0 = parameter.value.offset();
+
+            for (int i = 0; i < gradient.length; i++) {
+                double g = gradient[i];
+                double s = this.decay * average[i] + (1 - this.decay) * g * g;
+                average[i] = s;
+                value[v0 + i] -= this.learningRate * g / (Math.sqrt(s) + this.epsilon);
+                gradient[i] = 0.0;
+            }
+            parameter.value.markModified();
+        }
+    }
+}
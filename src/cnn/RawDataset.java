@@ -0,0 +1,53 @@
+package cnn;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+// Samples stored as headerless little-endian float32 files : one file of inputs, one of targets,
+// each a sequence of records shaped like inputShape / targetShape. Both files are memory-mapped
+public class RawDataset implements Dataset {
+    private final MappedFile inputs;
+    private final MappedFile targets;
+    private final int[] inputShape;
+    private final int[] targetShape;
+
+    public RawDataset(Path inputs, int[] inputShape, Path targets, int[] targetShape) throws IOException {
+        this.inputShape = inputShape.clone();
+        this.targetShape = targetShape.clone();
+        this.inputs = new MappedFile(inputs, 0, Tensor.count(inputShape) * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+        this.targets = new MappedFile(targets, 0, Tensor.count(targetShape) * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+
+        if (this.inputs.records() != this.targets.records()) {
+            throw new IOException(inputs + " holds " + this.inputs.records() + " samples but " + targets + " holds " + this.targets.records());
+        }
+    }
+
+    public int size() {
+        return this.inputs.records();
+    }
+
+    public int[] inputShape() {
+        return this.inputShape.clone();
+    }
+
+    public int[] targetShape() {
+        return this.targetShape.clone();
+    }
+
+    public void get(int index, Tensor input, Tensor target) {
+        read(this.inputs, index, input);
+        read(this.targets, index, target);
+    }
+
+    private static void read(MappedFile file, int index, Tensor into) {
+        ByteBuffer buffer = file.buffer(index);
+        int from = file.offset(index);
+        double[] values = into.data();
+        int v0 = into.offset();
+
+        for (int i = 0; i < into.size(); i++) {
+            values[v0 + i] = buffer.getFloat(from + i * Float.BYTES);
+        }
+    }
+}
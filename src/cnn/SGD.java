@@ -0,0 +1,65 @@
+package cnn;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stochastic gradient descent, optionally with (Nesterov) momentum :
+// v = momentum * v + g, then w -= learningRate * v (or learningRate * (g + momentum * v) for Nesterov)
+public class SGD implements Optimizer {
+    private final double learningRate;
+    private final double momentum;
+    private final boolean nesterov;
+
+    // Velocity of every parameter
+    private final Map<Parameter, double[]> velocities;
+
+    public SGD(double learningRate) {
+        this(learningRate, 0.0, false);
+    }
+
+    public SGD(double learningRate, double momentum) {
+        this(learningRate, momentum, false);
+    }
+
+    public SGD(double learningRate, double momentum, boolean nesterov) {
+        if (nesterov && momentum <= 0) {
+            throw new IllegalArgumentException("Nesterov momentum needs a positive momentum");
+        }
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+        this.velocities = new IdentityHashMap<>();
+    }
+
+    public void step(List<Parameter> parameters) {
+        for (int p = 0; p < parameters.size(); p++) {
+            Parameter parameter = parameters.get(p);
+            double[] value = parameter.value.data();
+            double[] gradient = parameter.gradient.data();
+            int v0 = parameter.value.offset();
+
+            if (this.momentum == 0) {
+                for (int i = 0; i < gradient.length; i++) {
+                    value[v0 + i] -= this.learningRate * gradient[i];
+                    gradient[i] = 0.0;
+                }
+                parameter.value.markModified();
+                continue;
+            }
+
+            double[] velocity = this.velocities.get(parameter);
+            if (velocity == null) {
+                velocity = new double[gradient.length];
+                this.velocities.put(parameter, velocity);
+            }
+            for (int i = 0; i < gradient.length; i++) {
+                double g = gradient[i];
+                double v = this.momentum * velocity[i] + g;
+                velocity[i] = v;
+                value[v0 + i] -= this.learningRate * (this.nesterov ? g + this.momentum * v : v);
+                gradient[i] = 0.0;
+            }
+            parameter.value.markModified();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cnn;
+
+// Reference backend, also used when the Vector API module is not available
+final class ScalarOps implements ArrayOps {
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    public void biasRelu(double[] x, int offset, int length, double bias) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Activation.relu(x[i] + bias);
+        }
+    }
+
+    public void sigmoid(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Activation.sigmoid(x[i]);
+        }
+    }
+
+    public void tanh(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Activation.tanh(x[i]);
+        }
+    }
+
+    public void fastSigmoid(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Activation.fastSigmoid(x[i]);
+        }
+    }
+
+    public void fastTanh(double[] x, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] = Activation.fastTanh(x[i]);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package cnn;
+import java.util.ArrayList;
+import java.util.List;
+
+// Depthwise separable convolution (MobileNet) : a depthwise kh x kw convolution filters every channel on its own,
+// then a pointwise 1x1 convolution mixes the channels into `kernelNum` maps. Against a ConvLayer of the same shape
+// this takes channels * (kh * kw + kernelNum) weights instead of channels * kh * kw * kernelNum, and as many
+// multiplications per output pixel. Stride and padding apply to the depthwise step, the activation to the pointwise one
+public class SeparableConvLayer extends Layer {
+    private final GroupedConvLayer depthwise;
+    private final ConvLayer pointwise;
+
+    public SeparableConvLayer(int kernelNum, int channels, int kernelHeight, int kernelWidth) {
+        this(GroupedConvLayer.depthwise(channels, kernelHeight, kernelWidth), new ConvLayer(kernelNum, channels, 1, 1));
+        this.depthwise.setActivation(Activation.IDENTITY);
+        // A 1x1 convolution is a plain matrix product, which the GEMM of the im2col engine runs best
+        this.pointwise.setEngine(ConvLayer.Engine.IM2COL);
+    }
+
+    private SeparableConvLayer(GroupedConvLayer depthwise, ConvLayer pointwise) {
+        this.type = Type.SEPARABLE_CONV;
+        this.depthwise = depthwise;
+        this.pointwise = pointwise;
+    }
+
+    public Layer replicate() {
+        return new SeparableConvLayer((GroupedConvLayer) this.depthwise.replicate(), (ConvLayer) this.pointwise.replicate());
+    }
+
+    // Depthwise kernels and biases, then pointwise kernels and biases
+    public List<Parameter> parameters() {
+        List<Parameter> parameters = new ArrayList<>(this.depthwise.parameters());
+        parameters.addAll(this.pointwise.parameters());
+        return parameters;
+    }
+
+    // kernelNum, channels, kernel height and width, stride, padding, activation
+    int[] config() {
+        int[] depthwise = this.depthwise.config();
+        int[] pointwise = this.pointwise.config();
+        return new int[] {pointwise[0], depthwise[1], depthwise[2], depthwise[3], depthwise[4], depthwise[5], pointwise[7]};
+    }
+
+    public int[] compile(int[] inputShape) {
+        int[] shape = this.pointwise.compile(this.depthwise.compile(inputShape));
+        this.inputShape = inputShape.clone();
+        return shape;
+    }
+
+    public long flops(int batch) {
+        return this.depthwise.flops(batch) + this.pointwise.flops(batch);
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        this.depthwise.inference = this.inference;
+        this.pointwise.inference = this.inference;
+        return this.pointwise.forward(this.depthwise.forward(input));
+    }
+
+    public Tensor backward(Tensor gradient) {
+        return this.depthwise.backward(this.pointwise.backward(gradient));
+    }
+
+    void release() {
+        this.depthwise.release();
+        this.pointwise.release();
+    }
+
+    public void setStride(int stride) {
+        this.depthwise.setStride(stride);
+        this.inputShape = null;
+    }
+
+    public void setPadding(int padding) {
+        this.depthwise.setPadding(padding);
+        this.inputShape = null;
+    }
+
+    // ReLU by default
+    public void setActivation(Activation activation) {
+        this.pointwise.setActivation(activation);
+        this.inputShape = null;
+    }
+
+    public Activation getActivation() {
+        return this.pointwise.getActivation();
+    }
+
+    void approximateActivations() {
+        setActivation(getActivation().approximation());
+    }
+
+    public GroupedConvLayer getDepthwise() {
+        return this.depthwise;
+    }
+
+    public ConvLayer getPointwise() {
+        return this.pointwise;
+    }
+}
@@ -0,0 +1,289 @@
+package cnn;
+import java.util.Arrays;
+import java.util.List;
+
+// DenseLayer whose weights are stored as compressed sparse rows (see Pruning) : only the non-zero weights
+// are kept, read and trained, so pruned weights stay at zero through fine-tuning.
+// The batch is transposed to [feature][sample] on the way in, which turns every non-zero weight into one
+// contiguous ArrayOps call over the batch : y[row][:] += w * x[column][:] in forward,
+// dW = dz[row][:] . x[column][:] and dx[column][:] += w * dz[row][:] in backward
+public class SparseDenseLayer extends Layer {
+    private final int size;
+    private final int previousLayerSize;
+
+    // Row r holds the weights values[rowStart[r] .. rowStart[r + 1]), at columns[...] of the input
+    private final int[] rowStart;
+    private final int[] columns;
+    private final double[] values;
+    private final double[] biases;
+
+    // values and biases with their gradient accumulators
+    private final Parameter valueParameter;
+    private final Parameter biasParameter;
+
+    private Activation activation;
+
+    // Workspaces reused across calls : transposed input [previousLayerSize][N], transposed output and
+    // pre-activation gradient [size][N], transposed input gradient [previousLayerSize][N]
+    private double[] inputT;
+    private double[] outputT;
+    private double[] deltaZT;
+    private double[] deltaT;
+    private Tensor output;
+    private Tensor inputGradient;
+    private int batch;
+
+    // Non-zero weights of a compiled dense layer, which keeps its own weights
+    public SparseDenseLayer(DenseLayer layer) {
+        Tensor weights = layer.parameters().get(0).value.contiguous();
+        this.type = Type.SPARSE_DENSE;
+        this.size = weights.shape(0);
+        this.previousLayerSize = weights.shape(1);
+        this.activation = layer.getActivation();
+
+        double[] W = weights.data();
+        int w0 = weights.offset();
+        this.rowStart = new int[this.size + 1];
+        for (int r = 0; r < this.size; r++) {
+            int count = 0;
+            for (int c = 0; c < this.previousLayerSize; c++) {
+                count += W[w0 + r * this.previousLayerSize + c] != 0.0 ? 1 : 0;
+            }
+            this.rowStart[r + 1] = this.rowStart[r] + count;
+        }
+
+        this.columns = new int[this.rowStart[this.size]];
+        this.values = new double[this.rowStart[this.size]];
+        int k = 0;
+        for (int r = 0; r < this.size; r++) {
+            for (int c = 0; c < this.previousLayerSize; c++) {
+                double w = W[w0 + r * this.previousLayerSize + c];
+                if (w != 0.0) {
+                    this.columns[k] = c;
+                    this.values[k++] = w;
+                }
+            }
+        }
+
+        this.biases = layer.parameters().get(1).value.toArray();
+        this.valueParameter = new Parameter(Tensor.wrap(this.values, this.values.length));
+        this.biasParameter = new Parameter(Tensor.wrap(this.biases, this.size));
+    }
+
+    // Zero weights at the positions of a row structure (see ModelFile), for a layer read back from its config
+    SparseDenseLayer(int size, int previousLayerSize, int[] rowStart, int[] columns) {
+        if (rowStart.length != size + 1 || rowStart[0] != 0 || rowStart[size] != columns.length) {
+            throw new IllegalArgumentException("Row starts do not describe " + columns.length + " weights in " + size + " rows");
+        }
+        for (int r = 0; r < size; r++) {
+            if (rowStart[r + 1] < rowStart[r]) {
+                throw new IllegalArgumentException("Row starts must not decrease, row " + r);
+            }
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                if (columns[k] < 0 || columns[k] >= previousLayerSize || (k > rowStart[r] && columns[k] <= columns[k - 1])) {
+                    throw new IllegalArgumentException("Columns of row " + r + " must be increasing and below " + previousLayerSize);
+                }
+            }
+        }
+        this.type = Type.SPARSE_DENSE;
+        this.size = size;
+        this.previousLayerSize = previousLayerSize;
+        this.activation = Activation.SIGMOID;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = new double[columns.length];
+        this.biases = new double[size];
+        this.valueParameter = new Parameter(Tensor.wrap(this.values, this.values.length));
+        this.biasParameter = new Parameter(Tensor.wrap(this.biases, this.size));
+    }
+
+    // Replica sharing the weights and biases of source
+    private SparseDenseLayer(SparseDenseLayer source) {
+        this.type = Type.SPARSE_DENSE;
+        this.size = source.size;
+        this.previousLayerSize = source.previousLayerSize;
+        this.rowStart = source.rowStart;
+        this.columns = source.columns;
+        this.values = source.values;
+        this.biases = source.biases;
+        this.valueParameter = source.valueParameter.replicate();
+        this.biasParameter = source.biasParameter.replicate();
+        this.activation = source.activation;
+    }
+
+    public Layer replicate() {
+        return new SparseDenseLayer(this);
+    }
+
+    public List<Parameter> parameters() {
+        return List.of(this.valueParameter, this.biasParameter);
+    }
+
+    // size, input size, activation, non-zeros, then the row starts and the column of every stored weight
+    int[] config() {
+        int[] config = new int[5 + this.size + this.values.length];
+        config[0] = this.size;
+        config[1] = this.previousLayerSize;
+        config[2] = Activation.code(this.activation);
+        config[3] = this.values.length;
+        System.arraycopy(this.rowStart, 0, config, 4, this.size + 1);
+        System.arraycopy(this.columns, 0, config, 5 + this.size, this.values.length);
+        return config;
+    }
+
+    // [N][...] -> [N][size], like DenseLayer
+    public int[] compile(int[] inputShape) {
+        int features = Tensor.count(inputShape) / inputShape[0];
+        if (features != this.previousLayerSize) {
+            throw new IllegalArgumentException("Sparse dense layer expects " + this.previousLayerSize + " inputs, got " + features);
+        }
+        this.inputShape = inputShape.clone();
+        reserve(inputShape[0]);
+        return new int[] {inputShape[0], this.size};
+    }
+
+    private void reserve(int batch) {
+        if (this.inputT == null || this.inputT.length < this.previousLayerSize * batch) {
+            this.inputT = new double[this.previousLayerSize * batch];
+            this.deltaT = new double[this.previousLayerSize * batch];
+            this.outputT = new double[this.size * batch];
+            this.deltaZT = new double[this.size * batch];
+        }
+        this.output = Tensor.reuse(this.output, batch, this.size);
+        this.inputGradient = Tensor.reuse(this.inputGradient, batch, this.previousLayerSize);
+    }
+
+    // Two operations per stored weight and sample, plus the bias and activation
+    public long flops(int batch) {
+        return (long) batch * (2L * this.values.length + 2 * this.size);
+    }
+
+    public int nonZeros() {
+        return this.values.length;
+    }
+
+    // Share of the size x previousLayerSize weights that are not stored
+    public double sparsity() {
+        return 1.0 - (double) this.values.length / ((long) this.size * this.previousLayerSize);
+    }
+
+    // Bytes of the stored weights, their column indices, the row starts and the biases
+    public long weightBytes() {
+        return (long) this.values.length * (Double.BYTES + Integer.BYTES) + (long) (this.size + 1) * Integer.BYTES
+                + (long) this.size * Double.BYTES;
+    }
+
+    public Tensor forward(Tensor input) {
+        if (!isCompiledFor(input)) {
+            compile(input.shape());
+        }
+        input = input.contiguous();
+        int batch = input.shape(0);
+        reserve(batch);
+        this.batch = batch;
+
+        double[] X = input.data();
+        double[] XT = this.inputT;
+        int x0 = input.offset();
+        for (int n = 0; n < batch; n++) {
+            for (int c = 0; c < this.previousLayerSize; c++) {
+                XT[c * batch + n] = X[x0 + n * this.previousLayerSize + c];
+            }
+        }
+
+        // Rows are independent : one task per row of the transposed output
+        double[] YT = this.outputT;
+        ArrayOps ops = Config.ops();
+        Parallel.forEach(this.size, r -> {
+            int y0 = r * batch;
+            Arrays.fill(YT, y0, y0 + batch, this.biases[r]);
+            for (int k = this.rowStart[r]; k < this.rowStart[r + 1]; k++) {
+                ops.axpy(this.values[k], XT, this.columns[k] * batch, YT, y0, batch);
+            }
+        });
+
+        Tensor output = Tensor.reuse(this.output, batch, this.size);
+        this.output = output;
+        double[] Y = output.data();
+        for (int n = 0; n < batch; n++) {
+            for (int r = 0; r < this.size; r++) {
+                Y[n * this.size + r] = YT[r * batch + n];
+            }
+        }
+        this.activation.apply(Y, 0, batch * this.size);
+        return output;
+    }
+
+    void release() {
+        this.inputT = null;
+        this.outputT = null;
+        this.deltaZT = null;
+        this.deltaT = null;
+        this.output = null;
+        this.inputGradient = null;
+    }
+
+    public Tensor backward(Tensor delta) {
+        delta = delta.contiguous();
+        int batch = this.batch;
+        double[] D = delta.data();
+        double[] Y = this.output.data();
+        double[] DZT = this.deltaZT;
+        double[] XT = this.inputT;
+        double[] DT = this.deltaT;
+        double[] valueGradients = this.valueParameter.gradient.data();
+        double[] biasGradients = this.biasParameter.gradient.data();
+        ArrayOps ops = Config.ops();
+
+        // Gradient before the activation, transposed
+        int d0 = delta.offset();
+        for (int n = 0; n < batch; n++) {
+            for (int r = 0; r < this.size; r++) {
+                DZT[r * batch + n] = D[d0 + n * this.size + r] * this.activation.derivative(Y[n * this.size + r]);
+            }
+        }
+
+        // Weight and bias gradients : rows own their slice of the gradients
+        Parallel.forEach(this.size, r -> {
+            int z0 = r * batch;
+            double sum = 0.0;
+            for (int n = 0; n < batch; n++) {
+                sum += DZT[z0 + n];
+            }
+            biasGradients[r] += sum;
+            for (int k = this.rowStart[r]; k < this.rowStart[r + 1]; k++) {
+                valueGradients[k] += ops.dot(DZT, z0, XT, this.columns[k] * batch, batch);
+            }
+        });
+
+        // Input gradient : columns are shared by the rows, so this scatter runs on one thread in a fixed order
+        Arrays.fill(DT, 0, this.previousLayerSize * batch, 0.0);
+        for (int r = 0; r < this.size; r++) {
+            for (int k = this.rowStart[r]; k < this.rowStart[r + 1]; k++) {
+                ops.axpy(this.values[k], DZT, r * batch, DT, this.columns[k] * batch, batch);
+            }
+        }
+
+        Tensor inputGradient = Tensor.reuse(this.inputGradient, batch, this.previousLayerSize);
+        this.inputGradient = inputGradient;
+        double[] ND = inputGradient.data();
+        for (int n = 0; n < batch; n++) {
+            for (int c = 0; c < this.previousLayerSize; c++) {
+                ND[n * this.previousLayerSize + c] = DT[c * batch + n];
+            }
+        }
+        return inputGradient;
+    }
+
+    public void setActivation(Activation activation) {
+        this.activation = activation;
+    }
+
+    public Activation getActivation() {
+        return this.activation;
+    }
+
+    void approximateActivations() {
+        setActivation(getActivation().approximation());
+    }
+}
@@ -0,0 +1,291 @@
+package cnn;
+import java.util.Arrays;
+
+// N-dimensional tensor backed by a single flat double array.
+// Shape and strides describe how indices map to the array, so views (reshape, slice, narrow, transpose)
+// share the same storage and cost nothing to create.
+public class Tensor {
+    private final double[] data;
+    private final int offset;
+    private final int[] shape;
+    private final int[] strides;
+    private final int size;
+    private final boolean contiguous;
+
+    // Bumped on every write made through this tensor (set, fill, copyTo target, markModified), so values derived
+    // from it (e.g. the Winograd filter transforms of a ConvLayer) can tell when they are stale.
+    // Writes through data() are not seen : whoever writes them calls markModified
+    private int version;
+
+    public Tensor(int... shape) {
+        this(new double[count(shape)], 0, shape.clone(), contiguousStrides(shape));
+    }
+
+    private Tensor(double[] data, int offset, int[] shape, int[] strides) {
+        this.data = data;
+        this.offset = offset;
+        this.shape = shape;
+        this.strides = strides;
+        this.size = count(shape);
+        this.contiguous = Arrays.equals(strides, contiguousStrides(shape));
+    }
+
+    // Wrap an existing array without copying it
+    public static Tensor wrap(double[] data, int... shape) {
+        if (count(shape) > data.length) {
+            throw new IllegalArgumentException("Shape " + Arrays.toString(shape) + " does not fit in " + data.length + " values");
+        }
+        return new Tensor(data, 0, shape.clone(), contiguousStrides(shape));
+    }
+
+    // Copy a [channel][height][width] jagged array into a new tensor
+    public static Tensor of(double[][][] values) {
+        int c = values.length;
+        int h = values[0].length;
+        int w = values[0][0].length;
+        Tensor tensor = new Tensor(c, h, w);
+
+        for (int z = 0; z < c; z++) {
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(values[z][y], 0, tensor.data, (z * h + y) * w, w);
+            }
+        }
+        return tensor;
+    }
+
+    // Workspace reuse : `buffer` itself when it already has the requested shape, otherwise a view with that shape
+    // over the storage of `buffer` when it is large enough (e.g. a smaller last batch), or a new tensor.
+    // Layers keep the returned tensor as their buffer, so steady-state calls with a fixed shape allocate nothing
+    public static Tensor reuse(Tensor buffer, int d0, int d1) {
+        if (buffer != null && buffer.shape.length == 2 && buffer.shape[0] == d0 && buffer.shape[1] == d1) {
+            return buffer;
+        }
+        return resize(buffer, new int[] {d0, d1});
+    }
+
+    public static Tensor reuse(Tensor buffer, int d0, int d1, int d2, int d3) {
+        if (buffer != null && buffer.shape.length == 4 && buffer.shape[0] == d0 && buffer.shape[1] == d1
+                && buffer.shape[2] == d2 && buffer.shape[3] == d3) {
+            return buffer;
+        }
+        return resize(buffer, new int[] {d0, d1, d2, d3});
+    }
+
+    // Same, for a result shaped like `like`
+    public static Tensor reuse(Tensor buffer, Tensor like) {
+        if (buffer != null && Arrays.equals(buffer.shape, like.shape)) {
+            return buffer;
+        }
+        return resize(buffer, like.shape.clone());
+    }
+
+    private static Tensor resize(Tensor buffer, int[] shape) {
+        if (buffer != null && buffer.offset == 0 && buffer.data.length >= count(shape)) {
+            return new Tensor(buffer.data, 0, shape, contiguousStrides(shape));
+        }
+        return new Tensor(shape);
+    }
+
+    static int count(int[] shape) {
+        int size = 1;
+        for (int dim : shape) {
+            if (dim < 0) {
+                throw new IllegalArgumentException("Negative dimension in shape " + Arrays.toString(shape));
+            }
+            size *= dim;
+        }
+        return size;
+    }
+
+    private static int[] contiguousStrides(int[] shape) {
+        int[] strides = new int[shape.length];
+        int stride = 1;
+        for (int d = shape.length - 1; d >= 0; d--) {
+            strides[d] = stride;
+            stride *= shape[d];
+        }
+        return strides;
+    }
+
+    // Raw storage access for inner loops : element [i0, i1, ...] lives at offset() + sum(i_d * stride(d)).
+    // Writes made through the array do not bump version() : call markModified once done, or caches derived from
+    // the values (Winograd and FFT kernel transforms) keep serving the old ones
+    public double[] data() {
+        return data;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int rank() {
+        return shape.length;
+    }
+
+    public int[] shape() {
+        return shape.clone();
+    }
+
+    public int shape(int dim) {
+        return shape[dim];
+    }
+
+    public int stride(int dim) {
+        return strides[dim];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isContiguous() {
+        return contiguous;
+    }
+
+    public boolean hasShape(int... shape) {
+        return Arrays.equals(this.shape, shape);
+    }
+
+    public int index(int... indices) {
+        if (indices.length != shape.length) {
+            throw new IllegalArgumentException("Expected " + shape.length + " indices, got " + indices.length);
+        }
+        int index = offset;
+        for (int d = 0; d < indices.length; d++) {
+            if (indices[d] < 0 || indices[d] >= shape[d]) {
+                throw new IndexOutOfBoundsException("Index " + Arrays.toString(indices) + " out of bounds for shape " + Arrays.toString(shape));
+            }
+            index += indices[d] * strides[d];
+        }
+        return index;
+    }
+
+    public double get(int... indices) {
+        return data[index(indices)];
+    }
+
+    public void set(double value, int... indices) {
+        data[index(indices)] = value;
+        version++;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public void markModified() {
+        version++;
+    }
+
+    // Same values with a new shape. Free for contiguous tensors, copies otherwise
+    public Tensor reshape(int... newShape) {
+        if (count(newShape) != size()) {
+            throw new IllegalArgumentException("Cannot reshape " + Arrays.toString(shape) + " to " + Arrays.toString(newShape));
+        }
+        Tensor source = isContiguous() ? this : copy();
+        return new Tensor(source.data, source.offset, newShape.clone(), contiguousStrides(newShape));
+    }
+
+    // View of element `index` along the first dimension, with that dimension removed
+    public Tensor slice(int index) {
+        if (index < 0 || index >= shape[0]) {
+            throw new IndexOutOfBoundsException("Slice " + index + " out of bounds for shape " + Arrays.toString(shape));
+        }
+        return new Tensor(data, offset + index * strides[0],
+                Arrays.copyOfRange(shape, 1, shape.length), Arrays.copyOfRange(strides, 1, strides.length));
+    }
+
+    // View of `length` consecutive elements along the first dimension, starting at `from`
+    public Tensor narrow(int from, int length) {
+        if (from < 0 || length < 0 || from + length > shape[0]) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + (from + length) + ") out of bounds for shape " + Arrays.toString(shape));
+        }
+        int[] newShape = shape.clone();
+        newShape[0] = length;
+        return new Tensor(data, offset + from * strides[0], newShape, strides.clone());
+    }
+
+    // View with two dimensions swapped
+    public Tensor transpose(int a, int b) {
+        int[] newShape = shape.clone();
+        int[] newStrides = strides.clone();
+        newShape[a] = shape[b];
+        newShape[b] = shape[a];
+        newStrides[a] = strides[b];
+        newStrides[b] = strides[a];
+        return new Tensor(data, offset, newShape, newStrides);
+    }
+
+    // This tensor if it is already laid out contiguously, a contiguous copy otherwise
+    public Tensor contiguous() {
+        return isContiguous() ? this : copy();
+    }
+
+    public Tensor copy() {
+        Tensor result = new Tensor(shape);
+        copyTo(result);
+        return result;
+    }
+
+    // Copy values into a tensor holding the same number of elements, in row-major order
+    public void copyTo(Tensor target) {
+        if (target.size() != size()) {
+            throw new IllegalArgumentException("Cannot copy " + Arrays.toString(shape) + " into " + Arrays.toString(target.shape));
+        }
+        target.version++;
+        if (isContiguous() && target.isContiguous()) {
+            System.arraycopy(data, offset, target.data, target.offset, size());
+            return;
+        }
+        int[] indices = new int[shape.length];
+        int[] targetIndices = new int[target.shape.length];
+        for (int i = 0; i < size(); i++) {
+            target.data[target.offsetOf(targetIndices)] = data[offsetOf(indices)];
+            increment(indices, shape);
+            increment(targetIndices, target.shape);
+        }
+    }
+
+    private int offsetOf(int[] indices) {
+        int index = offset;
+        for (int d = 0; d < indices.length; d++) {
+            index += indices[d] * strides[d];
+        }
+        return index;
+    }
+
+    private static void increment(int[] indices, int[] shape) {
+        for (int d = shape.length - 1; d >= 0; d--) {
+            if (++indices[d] < shape[d]) {
+                return;
+            }
+            indices[d] = 0;
+        }
+    }
+
+    public Tensor fill(double value) {
+        version++;
+        if (isContiguous()) {
+            Arrays.fill(data, offset, offset + size(), value);
+            return this;
+        }
+        int[] indices = new int[shape.length];
+        for (int i = 0; i < size(); i++) {
+            data[offsetOf(indices)] = value;
+            increment(indices, shape);
+        }
+        return this;
+    }
+
+    // Values in row-major order
+    public double[] toArray() {
+        double[] values = new double[size()];
+        copyTo(Tensor.wrap(values, shape));
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "Tensor" + Arrays.toString(shape);
+    }
+}
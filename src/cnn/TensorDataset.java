@@ -0,0 +1,32 @@
+package cnn;
+
+// Dataset over two tensors already in memory : inputs [N][...] and targets [N][...]
+public class TensorDataset implements Dataset {
+    private final Tensor inputs;
+    private final Tensor targets;
+
+    public TensorDataset(Tensor inputs, Tensor targets) {
+        if (inputs.shape(0) != targets.shape(0)) {
+            throw new IllegalArgumentException("Inputs and targets must hold the same number of samples");
+        }
+        this.inputs = inputs;
+        this.targets = targets;
+    }
+
+    public int size() {
+        return this.inputs.shape(0);
+    }
+
+    public int[] inputShape() {
+        return this.inputs.slice(0).shape();
+    }
+
+    public int[] targetShape() {
+        return this.targets.slice(0).shape();
+    }
+
+    public void get(int index, Tensor input, Tensor target) {
+        this.inputs.slice(index).copyTo(input);
+        this.targets.slice(index).copyTo(target);
+    }
+}
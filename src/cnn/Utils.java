@@ -1,78 +1,59 @@
 package cnn;
 public class Utils {
-    // public static double matrixDotProduct(double[][] A, double[][] B) {
-    //     int rows = A.length;
-    //     int cols = A[0].length;
-    //     double sum = 0.0;
-
-    //     for (int i = 0; i < rows; i++) {
-    //         for (int j = 0; j < cols; j++) {
-    //             sum += A[i][j] * B[i][j];
-    //         }
-    //     }
-
-    //     return sum;
-    // }
+    // Sum of the element-wise product of two tensors of the same shape
+    public static double tensorElementProduct(Tensor A, Tensor B) {
+        if (!A.hasShape(B.shape())) {
+            throw new IllegalArgumentException("Tensors must have the same shape");
+        }
+        if (!A.isContiguous() || !B.isContiguous()) {
+            return tensorElementProduct(A.contiguous(), B.contiguous());
+        }
 
-    // Rework to input any D Tensor
-    public static double matrixElementProduct(double[][] A, double[][] B) {
-        int rows = A.length;
-        int cols = A[0].length;
+        double[] a = A.data();
+        double[] b = B.data();
+        int a0 = A.offset();
+        int b0 = B.offset();
         double sum = 0.0;
 
-        for (int h = 0; h < rows; h++) {
-            for (int w = 0; w < cols; w++) {
-                sum += A[h][w] * B[h][w];
-            }
+        for (int i = 0; i < A.size(); i++) {
+            sum += a[a0 + i] * b[b0 + i];
         }
 
         return sum;
     }
 
-    // return a zero matrix of input shape
-    public static double[][] zeroMatrix(int rows, int cols) {
-        double[][] matrix = new double[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                matrix[i][j] = 0.0;
-            }
-        }
-        return matrix;
-    }
-
-    // Rework to input any D Tensor
-    public static double[][]getSubMatrix(double[][] M, int[] shape, int[] padding) {
+    // View of the [shape[0]][shape[1]] window of a matrix starting at (padding[0], padding[1])
+    public static Tensor getSubMatrix(Tensor M, int[] shape, int[] padding) {
         // Check input shapes
         if (M == null || shape == null || padding == null) {
             throw new IllegalArgumentException("Input arrays must not be null");
         }
-        if (shape.length != 2 || padding.length != 2) {
-            throw new IllegalArgumentException("Shape and padding must be 2D arrays");
+        if (M.rank() != 2 || shape.length != 2 || padding.length != 2) {
+            throw new IllegalArgumentException("Matrix, shape and padding must be 2D");
         }
-        if (padding[0] < 0 || padding[1] < 0 || padding[0] + shape[0] > M.length || padding[1] + shape[1] > M[0].length) {
+        if (padding[0] < 0 || padding[1] < 0 || padding[0] + shape[0] > M.shape(0) || padding[1] + shape[1] > M.shape(1)) {
             throw new IllegalArgumentException("Invalid shape or padding");
         }
 
-        double[][] sub_M = new double[shape[0]][shape[1]];
-
-        for (int h = 0; h < shape[0]; h++) {
-            for (int w = 1; w < shape[1]; w++) {
-                sub_M[h][w] = M[h + padding[0]][w + padding[1]];
-            }
-        }
-
-        return sub_M;
+        return M.narrow(padding[0], shape[0]).transpose(0, 1).narrow(padding[1], shape[1]).transpose(0, 1);
     }
 
-    public static void displayFeatureMaps(double[][][] featureMaps) {
+    // Display any tensor as a list of 2D feature maps (leading dimensions are flattened)
+    public static void displayFeatureMaps(Tensor featureMaps) {
+        int rank = featureMaps.rank();
+        int width = featureMaps.shape(rank - 1);
+        int height = rank > 1 ? featureMaps.shape(rank - 2) : 1;
+        int maps = featureMaps.size() / Math.max(1, height * width);
+        Tensor values = featureMaps.reshape(maps, height, width);
+
         System.out.println("*****************");
-        System.out.println(featureMaps.length + " feature maps:");
+        System.out.println(maps + " feature maps:");
         System.out.println("*****************");
 
-        for (double[][] featureMap : featureMaps) {
-            for (double[] row : featureMap) {
-                for (double value : row) {
-                    System.out.print(String.format("%.3f", value) + " ");
+        for (int m = 0; m < maps; m++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    System.out.print(String.format("%.3f", values.get(m, y, x)) + " ");
                 }
                 System.out.println();
             }
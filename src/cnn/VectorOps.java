@@ -0,0 +1,148 @@
+package cnn;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API backend : loops run on the widest vector shape of the CPU (4 doubles with AVX2, 8 with AVX-512),
+// the remaining elements go through the scalar code. Needs --add-modules jdk.incubator.vector,
+// Config only loads this class reflectively so the library still runs without the module
+final class VectorOps implements ArrayOps {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1.0);
+    private static final DoubleVector TWO = DoubleVector.broadcast(SPECIES, 2.0);
+
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            sum = sum.add(va.mul(vb));
+        }
+
+        double result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    // Bytes are widened to ints a vector at a time : as many bytes as the preferred int shape holds ints
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int bound = BYTES.loopBound(length);
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+
+        for (; i < bound; i += BYTES.length()) {
+            IntVector va = (IntVector) ByteVector.fromArray(BYTES, a, aOffset + i).convertShape(VectorOperators.B2I, INTS, 0);
+            IntVector vb = (IntVector) ByteVector.fromArray(BYTES, b, bOffset + i).convertShape(VectorOperators.B2I, INTS, 0);
+            sum = sum.add(va.mul(vb));
+        }
+
+        int result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            vy.add(vx.mul(alpha)).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    public void biasRelu(double[] x, int offset, int length, double bias) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, offset + i).add(bias).max(0.0).intoArray(x, offset + i);
+        }
+        for (; i < length; i++) {
+            x[offset + i] = Activation.relu(x[offset + i] + bias);
+        }
+    }
+
+    public void sigmoid(double[] x, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, offset + i);
+            DoubleVector denominator = v.neg().lanewise(VectorOperators.EXP).add(1.0);
+            DoubleVector.broadcast(SPECIES, 1.0).div(denominator).intoArray(x, offset + i);
+        }
+        for (; i < length; i++) {
+            x[offset + i] = Activation.sigmoid(x[offset + i]);
+        }
+    }
+
+    public void tanh(double[] x, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, offset + i).lanewise(VectorOperators.TANH).intoArray(x, offset + i);
+        }
+        for (; i < length; i++) {
+            x[offset + i] = Activation.tanh(x[offset + i]);
+        }
+    }
+
+    public void fastSigmoid(double[] x, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, offset + i);
+            ONE.div(fastExp(v.neg()).add(1.0)).intoArray(x, offset + i);
+        }
+        for (; i < length; i++) {
+            x[offset + i] = Activation.fastSigmoid(x[offset + i]);
+        }
+    }
+
+    public void fastTanh(double[] x, int offset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, offset + i);
+            TWO.div(fastExp(v.mul(-2.0)).add(1.0)).sub(1.0).intoArray(x, offset + i);
+        }
+        for (; i < length; i++) {
+            x[offset + i] = Activation.fastTanh(x[offset + i]);
+        }
+    }
+
+    // Activation.fastExp on every lane, same operations in the same order.
+    // The clamp is two blends : max / min honour -0.0 and NaN ordering and cost more
+    private static DoubleVector fastExp(DoubleVector x) {
+        double limit = Activation.FAST_EXP_LIMIT;
+        x = x.blend(-limit, x.lt(-limit)).blend(limit, x.compare(VectorOperators.GT, limit));
+        DoubleVector t = x.mul(Activation.LOG2E);
+        DoubleVector shifted = t.add(Activation.ROUNDING);
+        DoubleVector r = t.sub(shifted.sub(Activation.ROUNDING)).mul(Activation.LN2);
+        DoubleVector p = r.mul(1.0 / 720).add(1.0 / 120).mul(r).add(1.0 / 24).mul(r).add(1.0 / 6).mul(r).add(1.0 / 2)
+                .mul(r).add(1.0).mul(r).add(1.0);
+        LongVector bits = shifted.reinterpretAsLongs().sub(Activation.EXPONENT_BIAS).lanewise(VectorOperators.LSHL, 52);
+        return p.mul(bits.reinterpretAsDoubles());
+    }
+}
@@ -0,0 +1,143 @@
+package cnn;
+
+// Winograd minimal filtering F(2x2, 3x3) : a 2x2 output tile of a 3x3, stride 1 convolution is
+// Y = A^T [ (G g G^T) (.) (B^T d B) ] A, with g the 3x3 filter, d the 4x4 input tile and (.) the element-wise product,
+// which takes 16 multiplications instead of 36. Summed over the channels, each of the 16 tile positions xi becomes
+// an independent GEMM M[xi] (kernels x tiles) = U[xi] (kernels x channels) * V[xi] (channels x tiles).
+// Layouts : U[xi][kernel][channel], V[xi][channel][tile], M[xi][kernel][tile], tiles in row-major order.
+// The transforms only add, subtract and halve, so results match the direct loop to within a few ulps
+// of the summed terms (ConvLayerTest checks 1e-9 on unit-scale values).
+public final class Winograd {
+    // Positions of a 4x4 transformed tile
+    public static final int POSITIONS = 16;
+
+    // Scratch tile reused by each thread across calls
+    private static final ThreadLocal<double[]> TILE = ThreadLocal.withInitial(() -> new double[16]);
+
+    private Winograd() {
+    }
+
+    // Tiles needed to cover `size` output rows (or columns)
+    public static int tiles(int size) {
+        return (size + 1) / 2;
+    }
+
+    // U = G g G^T for every (kernel, channel) of kernels [kernel][channel][3][3]
+    public static void transformFilters(double[] kernels, int kernelNum, int channels, double[] U) {
+        int stride = kernelNum * channels;
+        double[] t = TILE.get();
+
+        for (int kc = 0; kc < stride; kc++) {
+            int g = kc * 9;
+
+            // t = G g (4x3), G = [1 0 0; 1/2 1/2 1/2; 1/2 -1/2 1/2; 0 0 1]
+            for (int j = 0; j < 3; j++) {
+                double g0 = kernels[g + j];
+                double g1 = kernels[g + 3 + j];
+                double g2 = kernels[g + 6 + j];
+                t[j] = g0;
+                t[3 + j] = 0.5 * (g0 + g1 + g2);
+                t[6 + j] = 0.5 * (g0 - g1 + g2);
+                t[9 + j] = g2;
+            }
+
+            // U = t G^T (4x4)
+            for (int i = 0; i < 4; i++) {
+                double t0 = t[3 * i];
+                double t1 = t[3 * i + 1];
+                double t2 = t[3 * i + 2];
+                int xi = 4 * i;
+                U[xi * stride + kc] = t0;
+                U[(xi + 1) * stride + kc] = 0.5 * (t0 + t1 + t2);
+                U[(xi + 2) * stride + kc] = 0.5 * (t0 - t1 + t2);
+                U[(xi + 3) * stride + kc] = t2;
+            }
+        }
+    }
+
+    // V = B^T d B for every tile of channel c of one [channels][height][width] sample (zero where d hits padding)
+    public static void transformInputChannel(double[] input, int inputOffset, int c, int channels, int height, int width,
+                                             int padding, int tilesY, int tilesX, double[] V) {
+        int tiles = tilesY * tilesX;
+        int stride = channels * tiles;
+        int channelBase = inputOffset + c * height * width;
+        double[] d = TILE.get();
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int y0 = 2 * ty - padding;
+                int x0 = 2 * tx - padding;
+                for (int i = 0; i < 4; i++) {
+                    int y = y0 + i;
+                    for (int j = 0; j < 4; j++) {
+                        int x = x0 + j;
+                        d[4 * i + j] = (y < 0 || y >= height || x < 0 || x >= width) ? 0.0 : input[channelBase + y * width + x];
+                    }
+                }
+
+                // d = B^T d, B^T = [1 0 -1 0; 0 1 1 0; 0 -1 1 0; 0 1 0 -1]
+                for (int j = 0; j < 4; j++) {
+                    double d0 = d[j];
+                    double d1 = d[4 + j];
+                    double d2 = d[8 + j];
+                    double d3 = d[12 + j];
+                    d[j] = d0 - d2;
+                    d[4 + j] = d1 + d2;
+                    d[8 + j] = d2 - d1;
+                    d[12 + j] = d1 - d3;
+                }
+
+                // V = d B
+                int index = c * tiles + ty * tilesX + tx;
+                for (int i = 0; i < 4; i++) {
+                    double d0 = d[4 * i];
+                    double d1 = d[4 * i + 1];
+                    double d2 = d[4 * i + 2];
+                    double d3 = d[4 * i + 3];
+                    int xi = 4 * i;
+                    V[xi * stride + index] = d0 - d2;
+                    V[(xi + 1) * stride + index] = d1 + d2;
+                    V[(xi + 2) * stride + index] = d2 - d1;
+                    V[(xi + 3) * stride + index] = d1 - d3;
+                }
+            }
+        }
+    }
+
+    // Y = A^T m A for every tile of kernel k, written into one [outputHeight][outputWidth] map (edge tiles are clipped)
+    public static void transformOutputKernel(double[] M, int k, int kernelNum, int tilesY, int tilesX,
+                                             double[] output, int outputOffset, int outputHeight, int outputWidth) {
+        int tiles = tilesY * tilesX;
+        int stride = kernelNum * tiles;
+        double[] s = TILE.get();
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int index = k * tiles + ty * tilesX + tx;
+
+                // s = A^T m (2x4), A^T = [1 1 1 0; 0 1 -1 -1]
+                for (int j = 0; j < 4; j++) {
+                    double m0 = M[j * stride + index];
+                    double m1 = M[(4 + j) * stride + index];
+                    double m2 = M[(8 + j) * stride + index];
+                    double m3 = M[(12 + j) * stride + index];
+                    s[j] = m0 + m1 + m2;
+                    s[4 + j] = m1 - m2 - m3;
+                }
+
+                // Y = s A
+                for (int i = 0; i < 2; i++) {
+                    int y = 2 * ty + i;
+                    if (y >= outputHeight) {
+                        break;
+                    }
+                    int row = outputOffset + y * outputWidth + 2 * tx;
+                    output[row] = s[4 * i] + s[4 * i + 1] + s[4 * i + 2];
+                    if (2 * tx + 1 < outputWidth) {
+                        output[row + 1] = s[4 * i + 1] - s[4 * i + 2] - s[4 * i + 3];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,6 @@
 echo Running tests...
 
 REM Run tests with JUnit standalone
-java -jar lib\junit-platform-console-standalone-1.10.2.jar --class-path bin --scan-class-path
+java --add-modules jdk.incubator.vector -jar lib\junit-platform-console-standalone-1.10.2.jar --class-path bin --scan-class-path
 
 pause
@@ -1,5 +1,6 @@
 package test;
 import static org.junit.jupiter.api.Assertions.*;
+import java.util.Arrays;
 import org.junit.jupiter.api.Test;
 import cnn.*;
 
@@ -104,4 +105,79 @@ public class ActivationTest {
         double result = Activation.reluDerivative(-5);
         assertEquals(0.0, result, 1e-9, "ReLU derivative at negative values should be 0");
     }
+
+    @Test
+    public void testFastActivationsStayWithinMaxError() {
+        boolean previous = Config.vectorized();
+        double[] x = new double[200001];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = -50 + i * 5e-4;
+        }
+
+        try {
+            for (boolean vectorized : new boolean[] {false, Config.vectorAvailable()}) {
+                Config.setVectorized(vectorized);
+                for (Activation exact : new Activation[] {Activation.SIGMOID, Activation.TANH}) {
+                    Activation fast = exact.approximation();
+                    assertTrue(fast.maxError() > 0, exact + " should have an approximation");
+
+                    double[] expected = x.clone();
+                    exact.apply(expected, 0, expected.length);
+                    double[] actual = x.clone();
+                    fast.apply(actual, 0, actual.length);
+                    assertArrayEquals(expected, actual, fast.maxError(), fast + " should stay within its documented error");
+                }
+            }
+        } finally {
+            Config.setVectorized(previous);
+        }
+
+        for (double value : new double[] {-700, -20, -1e-3, 0, 0.3, 5, 700}) {
+            assertEquals(1.0, Activation.fastExp(value) / Math.exp(value), 1.7e-7, "fastExp should be within 1.7e-7 of exp(" + value + ")");
+        }
+    }
+
+    @Test
+    public void testBackwardUsesTheOutput() {
+        double[] y = {Activation.sigmoid(-1), Activation.tanh(0.5), 0.0, 2.0};
+        double[] gradient = {2, 2, 2, 2};
+        Activation.SIGMOID.backward(y, 0, gradient, 0, 1);
+        Activation.TANH.backward(y, 1, gradient, 1, 1);
+        Activation.RELU.backward(y, 2, gradient, 2, 2);
+
+        assertEquals(2 * Activation.derivativeSigmoid(y[0]), gradient[0], 1e-12, "Sigmoid backward should scale by y (1 - y)");
+        assertEquals(2 * Activation.derivativeTanh(y[1]), gradient[1], 1e-12, "Tanh backward should scale by 1 - y^2");
+        assertArrayEquals(new double[] {0, 2}, new double[] {gradient[2], gradient[3]}, 0.0, "ReLU backward should keep positive outputs only");
+    }
+
+    @Test
+    public void testFastInferenceOnlyAffectsPredict() {
+        CNN network = new CNN();
+        network.addLayer(new FlattenLayer());
+        DenseLayer hidden = new DenseLayer(8);
+        hidden.setActivation(Activation.TANH);
+        network.addLayer(hidden);
+        network.addLayer(new DenseLayer(3));
+        network.compile(1, 1, 4, 4);
+
+        Tensor input = new Tensor(1, 1, 4, 4);
+        for (int i = 0; i < input.size(); i++) {
+            input.data()[i] = Math.sin(i);
+        }
+        Tensor exact = network.predict(input);
+        network.setFastInference(true);
+        Tensor fast = network.predict(input);
+
+        assertArrayEquals(exact.toArray(), fast.toArray(), 1e-5, "Fast inference should stay close to the exact outputs");
+        assertArrayEquals(exact.toArray(), network.forward(input).toArray(), 0.0, "forward should keep the exact activations");
+        assertEquals(Activation.TANH, hidden.getActivation(), "The network layers should keep their activation");
+
+        // Quantized layers switch their activations too
+        CNN quantized = Quantizer.quantize(network, input);
+        Tensor quantizedExact = quantized.predict(input);
+        quantized.setFastInference(true);
+        Tensor quantizedFast = quantized.predict(input);
+        assertArrayEquals(quantizedExact.toArray(), quantizedFast.toArray(), 1e-5, "Fast quantized inference should stay close to the exact outputs");
+        assertFalse(Arrays.equals(quantizedExact.toArray(), quantizedFast.toArray()), "Quantized layers should run the approximations");
+    }
 }
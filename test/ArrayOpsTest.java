@@ -0,0 +1,113 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class ArrayOpsTest {
+    private static final double TOLERANCE = 1e-12;
+
+    private double[] random(Random rand, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = rand.nextGaussian();
+        }
+        return values;
+    }
+
+    // Runs the layer on both backends and compares outputs and input gradients
+    private void assertBackendsAgree(Layer scalarLayer, Layer vectorLayer, Tensor input) {
+        boolean previous = Config.vectorized();
+        try {
+            Config.setVectorized(false);
+            Tensor output = scalarLayer.forward(input).copy();
+            Tensor gradient = output.copy().fill(0.5);
+            Tensor delta = scalarLayer.backward(gradient).copy();
+
+            Config.setVectorized(true);
+            assertArrayEquals(output.toArray(), vectorLayer.forward(input).toArray(), TOLERANCE, "Vectorized forward should match the scalar loops");
+            assertArrayEquals(delta.toArray(), vectorLayer.backward(gradient).toArray(), TOLERANCE, "Vectorized backward should match the scalar loops");
+        } finally {
+            Config.setVectorized(previous);
+        }
+    }
+
+    @Test
+    public void testVectorKernelsMatchScalar() {
+        assumeTrue(Config.vectorAvailable(), "Vector API module not available");
+        boolean previous = Config.vectorized();
+        Random rand = new Random(2);
+
+        try {
+            // Lengths around the vector width exercise the scalar tails
+            for (int length : new int[] {1, 3, 4, 7, 8, 9, 31, 100}) {
+                double[] a = random(rand, length + 2);
+                double[] b = random(rand, length + 2);
+
+                Config.setVectorized(false);
+                double dot = Config.ops().dot(a, 1, b, 2, length);
+                byte[] codes = new byte[length + 2];
+                rand.nextBytes(codes);
+                int byteDot = Config.ops().dot(codes, 2, codes, 1, length);
+                double[] axpy = b.clone();
+                Config.ops().axpy(0.3, a, 2, axpy, 1, length);
+                double[] relu = a.clone();
+                Config.ops().biasRelu(relu, 1, length, 0.1);
+                double[] sigmoid = a.clone();
+                Config.ops().sigmoid(sigmoid, 2, length);
+                double[] tanh = a.clone();
+                Config.ops().tanh(tanh, 2, length);
+                double[] fastSigmoid = a.clone();
+                Config.ops().fastSigmoid(fastSigmoid, 1, length);
+                double[] fastTanh = a.clone();
+                Config.ops().fastTanh(fastTanh, 1, length);
+
+                Config.setVectorized(true);
+                assertEquals(dot, Config.ops().dot(a, 1, b, 2, length), TOLERANCE, "dot should match for length " + length);
+                assertEquals(byteDot, Config.ops().dot(codes, 2, codes, 1, length), "int8 dot should match for length " + length);
+                double[] vectorAxpy = b.clone();
+                Config.ops().axpy(0.3, a, 2, vectorAxpy, 1, length);
+                assertArrayEquals(axpy, vectorAxpy, TOLERANCE, "axpy should match for length " + length);
+                double[] vectorRelu = a.clone();
+                Config.ops().biasRelu(vectorRelu, 1, length, 0.1);
+                assertArrayEquals(relu, vectorRelu, 0.0, "biasRelu should match for length " + length);
+                double[] vectorSigmoid = a.clone();
+                Config.ops().sigmoid(vectorSigmoid, 2, length);
+                assertArrayEquals(sigmoid, vectorSigmoid, TOLERANCE, "sigmoid should match for length " + length);
+                double[] vectorTanh = a.clone();
+                Config.ops().tanh(vectorTanh, 2, length);
+                assertArrayEquals(tanh, vectorTanh, TOLERANCE, "tanh should match for length " + length);
+                // Same polynomial and rounding in both backends
+                double[] vectorFastSigmoid = a.clone();
+                Config.ops().fastSigmoid(vectorFastSigmoid, 1, length);
+                assertArrayEquals(fastSigmoid, vectorFastSigmoid, 0.0, "fastSigmoid should match for length " + length);
+                double[] vectorFastTanh = a.clone();
+                Config.ops().fastTanh(vectorFastTanh, 1, length);
+                assertArrayEquals(fastTanh, vectorFastTanh, 0.0, "fastTanh should match for length " + length);
+            }
+        } finally {
+            Config.setVectorized(previous);
+        }
+    }
+
+    @Test
+    public void testLayersMatchScalarBackend() {
+        assumeTrue(Config.vectorAvailable(), "Vector API module not available");
+
+        ConvLayer scalarConv = new ConvLayer(3, 2, 3, 3);
+        scalarConv.setPadding(1);
+        ConvLayer vectorConv = new ConvLayer(3, 2, 3, 3);
+        vectorConv.setPadding(1);
+        scalarConv.kernels.copyTo(vectorConv.kernels);
+        Tensor image = Tensor.wrap(random(new Random(5), 2 * 2 * 11 * 13), 2, 2, 11, 13);
+        assertBackendsAgree(scalarConv, vectorConv, image);
+
+        DenseLayer scalarDense = new DenseLayer(7, 37);
+        DenseLayer vectorDense = new DenseLayer(7, 37);
+        for (int p = 0; p < 2; p++) {
+            scalarDense.parameters().get(p).value.copyTo(vectorDense.parameters().get(p).value);
+        }
+        assertBackendsAgree(scalarDense, vectorDense, Tensor.wrap(random(new Random(6), 3 * 37), 3, 37));
+    }
+}
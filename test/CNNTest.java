@@ -0,0 +1,358 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class CNNTest {
+    private CNN network() {
+        CNN network = new CNN();
+        network.addLayer(new ConvLayer(2, 1, 3, 3));
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(2, 8));
+        return network;
+    }
+
+    // 4x4 images labelled by whether their left half is brighter than their right half
+    private Dataset dataset(int samples) {
+        Random rand = new Random(3);
+        Tensor inputs = new Tensor(samples, 1, 4, 4);
+        Tensor targets = new Tensor(samples, 2);
+
+        for (int n = 0; n < samples; n++) {
+            double balance = 0;
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 4; x++) {
+                    double value = rand.nextDouble();
+                    inputs.set(value, n, 0, y, x);
+                    balance += x < 2 ? value : -value;
+                }
+            }
+            targets.set(balance > 0 ? 1 : 0, n, 0);
+            targets.set(balance > 0 ? 0 : 1, n, 1);
+        }
+        return new TensorDataset(inputs, targets);
+    }
+
+    private void copyWeights(CNN from, CNN to) {
+        List<Parameter> source = from.parameters();
+        List<Parameter> target = to.parameters();
+        for (int p = 0; p < source.size(); p++) {
+            source.get(p).value.copyTo(target.get(p).value);
+        }
+    }
+
+    @Test
+    public void testCompileInfersShapes() {
+        CNN network = new CNN();
+        network.addLayer(new ConvLayer(3, 2, 3, 3));
+        network.addLayer(new PoolLayer(2, 2));
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(4));
+
+        assertArrayEquals(new int[] {5, 4}, network.compile(5, 2, 10, 10), "Output shape should be inferred from the input shape");
+        assertArrayEquals(new int[] {4, 3 * 4 * 4}, network.parameters().get(2).value.shape(), "Dense weights should be sized from the pooled feature maps");
+    }
+
+    @Test
+    public void testCompileRejectsMismatchedLayers() {
+        CNN channels = new CNN();
+        channels.addLayer(new ConvLayer(2, 3, 3, 3));
+        assertThrows(IllegalArgumentException.class, () -> channels.compile(1, 1, 8, 8), "Conv layer should reject inputs with the wrong channel count");
+
+        CNN dense = network();
+        assertThrows(IllegalArgumentException.class, () -> dense.compile(1, 1, 5, 5), "Dense layer should not be silently resized");
+    }
+
+    @Test
+    public void testConcurrentPredictMatchesForward() throws Exception {
+        CNN network = network();
+        network.compile(1, 1, 4, 4);
+
+        Tensor[] inputs = new Tensor[8];
+        double[][] expected = new double[inputs.length][];
+        Random rand = new Random(9);
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new Tensor(1, 1, 4, 4);
+            for (int j = 0; j < inputs[i].size(); j++) {
+                inputs[i].data()[j] = rand.nextDouble();
+            }
+            expected[i] = network.forward(inputs[i]).toArray();
+        }
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(threads.submit(() -> {
+                    for (int round = 0; round < 50; round++) {
+                        for (int i = 0; i < inputs.length; i++) {
+                            if (!Arrays.equals(expected[i], network.predict(inputs[i]).toArray())) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(), "Concurrent predictions should match a serial forward pass");
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetricsRecordEveryLayerCall() {
+        CNN network = network();
+        Metrics metrics = new Metrics();
+        network.addListener(metrics);
+        network.setWorkers(2);
+        network.train(dataset(8), 3, 4);
+
+        List<Metrics.LayerStats> stats = metrics.snapshot();
+        assertEquals(3, stats.size(), "Every layer should be reported");
+        for (Metrics.LayerStats layer : stats) {
+            assertEquals(12, layer.forwardTime.count(), "3 epochs of 2 batches on 2 workers should give 12 forward calls");
+            assertEquals(12, layer.backwardTime.count(), "Every forward call should be followed by a backward call");
+            assertEquals(24, layer.samples, "Every sample should be seen once per epoch");
+        }
+        assertEquals(24L * 2 * 2 * 2 * (2 * 9 + 2), stats.get(0).forwardFlops, "Conv FLOPs should follow the compiled shapes");
+        assertEquals(2 * 2 * 2 * 2 * Double.BYTES, stats.get(0).maxActivationBytes, "Conv activations of a 2 sample shard should be reported");
+    }
+
+    @Test
+    public void testFusedConvPoolMatchesSeparateLayers() {
+        for (Activation activation : List.of(Activation.RELU, Activation.TANH)) {
+            checkFusedConvPool(activation);
+        }
+    }
+
+    private void checkFusedConvPool(Activation activation) {
+        CNN fused = new CNN();
+        CNN separate = new CNN();
+        for (CNN network : List.of(fused, separate)) {
+            ConvLayer conv = new ConvLayer(3, 2, 3, 3);
+            conv.setEngine(ConvLayer.Engine.DIRECT);
+            conv.setActivation(activation);
+            PoolLayer pool = new PoolLayer(3, 3);
+            pool.setStride(2);
+            network.addLayer(conv);
+            network.addLayer(pool);
+        }
+        copyWeights(fused, separate);
+        separate.setFusion(false);
+        Metrics metrics = new Metrics();
+        fused.addListener(metrics);
+
+        Random rand = new Random(21);
+        Tensor input = new Tensor(2, 2, 11, 11);
+        for (int i = 0; i < input.size(); i++) {
+            input.data()[i] = rand.nextGaussian();
+        }
+        Tensor output = fused.forward(input).copy();
+        assertArrayEquals(separate.forward(input).toArray(), output.toArray(), 1e-12, activation + " : fused conv and pool should match the separate layers");
+        assertEquals(1, metrics.snapshot().size(), "Conv and pool should run as a single fused step");
+
+        // Input gradient of sum(output * g) against central differences (overlapping 3x3 windows, stride 2)
+        Tensor g = new Tensor(output.shape());
+        for (int i = 0; i < g.size(); i++) {
+            g.data()[i] = rand.nextGaussian();
+        }
+        fused.setOptimizer(new SGD(0.0));
+        separate.setOptimizer(new SGD(0.0));
+        Tensor delta = fused.backward(g).copy();
+        assertArrayEquals(separate.backward(g).toArray(), delta.toArray(), 1e-12, activation + " : fused backward should match the separate layers");
+        for (int i : new int[] {0, 60, 121, 300, 483}) {
+            double saved = input.data()[i];
+            input.data()[i] = saved + 1e-6;
+            double plus = dot(fused.forward(input), g);
+            input.data()[i] = saved - 1e-6;
+            double minus = dot(fused.forward(input), g);
+            input.data()[i] = saved;
+            assertEquals((plus - minus) / 2e-6, delta.data()[i], 1e-6, activation + " : fused backward should follow the argmax of every window");
+        }
+    }
+
+    private double dot(Tensor a, Tensor b) {
+        double sum = 0;
+        for (int i = 0; i < a.size(); i++) {
+            sum += a.data()[a.offset() + i] * b.data()[b.offset() + i];
+        }
+        return sum;
+    }
+
+    // Direct conv -> max pool (fused by default), flatten and dense
+    private CNN fusableNetwork(boolean fusion) {
+        CNN network = new CNN();
+        ConvLayer conv = new ConvLayer(2, 1, 3, 3);
+        conv.setEngine(ConvLayer.Engine.DIRECT);
+        network.addLayer(conv);
+        network.addLayer(new PoolLayer(2, 2));
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(2));
+        network.setFusion(fusion);
+        network.compile(4, 1, 6, 6);
+        return network;
+    }
+
+    private List<String> stepTypes(Metrics metrics) {
+        return metrics.snapshot().stream().map(stats -> stats.type).toList();
+    }
+
+    @Test
+    public void testReplicasFollowFusion() {
+        for (boolean fusion : new boolean[] {true, false}) {
+            List<String> expected = fusion ? List.of("CONV_POOL", "FLATTEN", "DENSE") : List.of("CONV", "POOLING", "FLATTEN", "DENSE");
+
+            CNN network = fusableNetwork(fusion);
+            Metrics metrics = new Metrics();
+            network.addListener(metrics);
+            network.setWorkers(2);
+            network.train(new TensorDataset(new Tensor(8, 1, 6, 6), new Tensor(8, 2)), 1, 4);
+            assertEquals(expected, stepTypes(metrics), "Training workers should run the plan of the network (fusion " + fusion + ")");
+
+            metrics.reset();
+            network.predict(new Tensor(3, 1, 6, 6));
+            assertEquals(expected, stepTypes(metrics), "Predict replicas should run the plan of the network (fusion " + fusion + ")");
+        }
+    }
+
+    @Test
+    public void testTrainingReducesLoss() {
+        CNN network = network();
+        network.setSeed(1);
+        double[] losses = network.train(dataset(16), 30, 4);
+
+        assertEquals(30, losses.length, "One loss should be reported per epoch");
+        assertTrue(losses[losses.length - 1] < losses[0], "Loss should decrease during training");
+    }
+
+    // Direct conv -> max pool, which compile fuses into one step, a Winograd conv, flatten and two dense layers :
+    // five steps, checked by testMetricsCountRecomputationApart
+    private CNN deepNetwork() {
+        CNN network = new CNN();
+        ConvLayer first = new ConvLayer(4, 1, 3, 3);
+        first.setPadding(1);
+        first.setEngine(ConvLayer.Engine.DIRECT);
+        network.addLayer(first);
+        network.addLayer(new PoolLayer(2, 2));
+        ConvLayer second = new ConvLayer(3, 4, 3, 3);
+        second.setPadding(1);
+        second.setActivation(Activation.TANH);
+        network.addLayer(second);
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(6));
+        network.addLayer(new DenseLayer(2));
+        network.compile(3, 1, 8, 8);
+        return network;
+    }
+
+    @Test
+    public void testCheckpointingMatchesFullBackward() {
+        Random rand = new Random(21);
+        Tensor input = new Tensor(3, 1, 8, 8);
+        Tensor gradient = new Tensor(3, 2);
+        for (int i = 0; i < input.size(); i++) {
+            input.data()[i] = rand.nextGaussian();
+        }
+        for (int i = 0; i < gradient.size(); i++) {
+            gradient.data()[i] = rand.nextGaussian();
+        }
+
+        // Auto (segments of 2 steps), one step per segment, uneven segments and a single segment
+        CNN reference = deepNetwork();
+        int[] intervals = {0, 1, 3, 5};
+        for (int interval : intervals) {
+            CNN network = deepNetwork();
+            CNN checkpointed = deepNetwork();
+            copyWeights(reference, network);
+            copyWeights(reference, checkpointed);
+            if (interval == 0) {
+                checkpointed.setCheckpointing(true);
+            } else {
+                checkpointed.setCheckpointInterval(interval);
+            }
+
+            assertArrayEquals(network.forward(input).toArray(), checkpointed.forward(input).toArray(), 0.0,
+                    "Checkpointed forward should match with interval " + interval);
+            assertArrayEquals(network.backward(gradient).toArray(), checkpointed.backward(gradient).toArray(), 0.0,
+                    "Recomputed segments should give the exact input gradient with interval " + interval);
+            List<Parameter> expected = network.parameters();
+            List<Parameter> actual = checkpointed.parameters();
+            for (int p = 0; p < expected.size(); p++) {
+                assertArrayEquals(expected.get(p).value.toArray(), actual.get(p).value.toArray(), 0.0,
+                        "Checkpointed updates should match with interval " + interval);
+            }
+        }
+    }
+
+    @Test
+    public void testMetricsCountRecomputationApart() {
+        Tensor input = new Tensor(3, 1, 8, 8).fill(0.5);
+        Metrics plain = new Metrics();
+        Metrics checkpointed = new Metrics();
+        for (Metrics metrics : List.of(plain, checkpointed)) {
+            CNN network = deepNetwork();
+            network.setCheckpointing(metrics == checkpointed);
+            network.addListener(metrics);
+            network.backward(network.forward(input));
+        }
+
+        assertEquals(List.of("CONV_POOL", "CONV", "FLATTEN", "DENSE", "DENSE"), stepTypes(checkpointed), "The plan should have five steps");
+        List<Metrics.LayerStats> expected = plain.snapshot();
+        List<Metrics.LayerStats> actual = checkpointed.snapshot();
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(1, actual.get(i).forwardTime.count(), "Recomputation should not count as a forward call");
+            assertEquals(expected.get(i).forwardFlops, actual.get(i).forwardFlops, "Forward FLOPs should not depend on checkpointing");
+            assertEquals(3, actual.get(i).samples, "Every sample should be seen once");
+            // Segments of 2 steps : all but the last one, step 4, run again
+            assertEquals(i < 4 ? 1 : 0, actual.get(i).recomputeTime.count(), "Step " + i + " recomputations");
+            assertEquals(i < 4 ? expected.get(i).forwardFlops : 0, actual.get(i).recomputeFlops, "Step " + i + " recomputed FLOPs");
+        }
+    }
+
+    @Test
+    public void testCheckpointedTrainingMatchesPlainTraining() {
+        Dataset data = dataset(8);
+        CNN plain = network();
+        CNN checkpointed = network();
+        copyWeights(plain, checkpointed);
+        checkpointed.setCheckpointInterval(1);
+
+        plain.setWorkers(2);
+        checkpointed.setWorkers(2);
+        plain.setSeed(7);
+        checkpointed.setSeed(7);
+        assertArrayEquals(plain.train(data, 3, 4), checkpointed.train(data, 3, 4), 0.0, "Checkpointing should not change the losses");
+    }
+
+    @Test
+    public void testWorkerCountDoesNotChangeTheUpdate() {
+        Dataset data = dataset(8);
+        CNN serial = network();
+        CNN parallel = network();
+        copyWeights(serial, parallel);
+
+        serial.setWorkers(1);
+        parallel.setWorkers(4);
+        serial.setSeed(5);
+        parallel.setSeed(5);
+        serial.train(data, 2, 8);
+        parallel.train(data, 2, 8);
+
+        List<Parameter> expected = serial.parameters();
+        List<Parameter> actual = parallel.parameters();
+        for (int p = 0; p < expected.size(); p++) {
+            assertArrayEquals(expected.get(p).value.toArray(), actual.get(p).value.toArray(), 1e-12,
+                    "Sharded gradients should add up to the single worker gradient");
+        }
+    }
+}
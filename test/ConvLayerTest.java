@@ -0,0 +1,221 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class ConvLayerTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private ConvLayer layer(ConvLayer.Engine engine, int kernels, int channels, int size, int stride, int padding, long seed) {
+        Random rand = new Random(seed);
+        ConvLayer layer = new ConvLayer(kernels, channels, size, size);
+        layer.setEngine(engine);
+        layer.setStride(stride);
+        layer.setPadding(padding);
+        for (int i = 0; i < layer.kernels.size(); i++) {
+            layer.kernels.data()[i] = rand.nextGaussian();
+        }
+        layer.kernels.markModified();
+        for (int k = 0; k < kernels; k++) {
+            layer.biases[k] = rand.nextGaussian() * 0.1;
+        }
+        return layer;
+    }
+
+    private void assertClose(Tensor expected, Tensor actual, String message) {
+        assertArrayEquals(expected.shape(), actual.shape(), message + " (shape)");
+        assertArrayEquals(expected.toArray(), actual.toArray(), TOLERANCE, message);
+    }
+
+    @Test
+    public void testIm2colForwardMatchesDirect() {
+        int[][] configs = {
+            // kernels, channels, kernel size, stride, padding, height, width
+            {4, 3, 3, 1, 0, 9, 11},
+            {5, 2, 5, 2, 2, 12, 10},
+            {3, 1, 1, 1, 0, 6, 6},
+            // Crosses the GEMM cache block boundaries (29 * 3 * 3 > KC, 33 * 33 > NC)
+            {6, 29, 3, 1, 1, 33, 33},
+        };
+
+        for (int[] c : configs) {
+            Tensor input = Tensors.random(new Random(7), 2, c[1], c[5], c[6]);
+            Tensor expected = layer(ConvLayer.Engine.DIRECT, c[0], c[1], c[2], c[3], c[4], 3).forward(input);
+            Tensor actual = layer(ConvLayer.Engine.IM2COL, c[0], c[1], c[2], c[3], c[4], 3).forward(input);
+            assertClose(expected, actual, "im2col forward should match the direct loop");
+        }
+    }
+
+    @Test
+    public void testIm2colBackwardMatchesDirect() {
+        int[][] configs = {
+            {3, 2, 3, 1, 0, 7, 8},
+            {2, 3, 3, 2, 1, 9, 9},
+        };
+
+        for (int[] c : configs) {
+            ConvLayer direct = layer(ConvLayer.Engine.DIRECT, c[0], c[1], c[2], c[3], c[4], 5);
+            ConvLayer im2col = layer(ConvLayer.Engine.IM2COL, c[0], c[1], c[2], c[3], c[4], 5);
+            Tensor input = Tensors.random(new Random(11), 2, c[1], c[5], c[6]);
+
+            Tensor output = direct.forward(input);
+            im2col.forward(input);
+            Tensor gradient = Tensors.random(new Random(13), output.shape());
+
+            Tensor expectedDelta = direct.backward(gradient);
+            Tensor actualDelta = im2col.backward(gradient);
+
+            assertClose(expectedDelta, actualDelta, "im2col input gradient should match the direct loop");
+            assertClose(direct.parameters().get(0).gradient, im2col.parameters().get(0).gradient, "im2col filter gradient should match the direct loop");
+            assertClose(direct.parameters().get(1).gradient, im2col.parameters().get(1).gradient, "Bias gradient should not depend on the engine");
+        }
+    }
+
+    @Test
+    public void testWinogradMatchesDirect() {
+        int[][] configs = {
+            // kernels, channels, padding, height, width
+            {4, 3, 0, 9, 11},
+            {5, 2, 1, 8, 8},
+            {3, 7, 1, 5, 6},
+        };
+
+        for (int[] c : configs) {
+            ConvLayer direct = layer(ConvLayer.Engine.DIRECT, c[0], c[1], 3, 1, c[2], 29);
+            ConvLayer winograd = layer(ConvLayer.Engine.AUTO, c[0], c[1], 3, 1, c[2], 29);
+            Tensor input = Tensors.random(new Random(31), 2, c[1], c[3], c[4]);
+
+            Tensor output = direct.forward(input);
+            assertClose(output, winograd.forward(input), "Winograd forward should match the direct loop");
+            assertEquals(ConvLayer.Engine.WINOGRAD, winograd.getActiveEngine(), "AUTO should pick Winograd for 3x3 stride 1 kernels");
+
+            Tensor gradient = Tensors.random(new Random(37), output.shape());
+            assertClose(direct.backward(gradient), winograd.backward(gradient), "Winograd input gradient should match the direct loop");
+        }
+
+        ConvLayer strided = layer(ConvLayer.Engine.AUTO, 2, 1, 3, 2, 0, 29);
+        strided.compile(new int[] {1, 1, 8, 8});
+        assertEquals(ConvLayer.Engine.DIRECT, strided.getActiveEngine(), "AUTO should fall back to the direct loop for strided kernels");
+
+        ConvLayer invalid = layer(ConvLayer.Engine.WINOGRAD, 2, 1, 5, 1, 0, 29);
+        assertThrows(IllegalArgumentException.class, () -> invalid.compile(new int[] {1, 1, 8, 8}), "Winograd should reject 5x5 kernels");
+    }
+
+    @Test
+    public void testWinogradFollowsKernelUpdates() {
+        ConvLayer direct = layer(ConvLayer.Engine.DIRECT, 3, 2, 3, 1, 1, 41);
+        ConvLayer winograd = layer(ConvLayer.Engine.WINOGRAD, 3, 2, 3, 1, 1, 43);
+        Tensor input = Tensors.random(new Random(47), 1, 2, 6, 6);
+        winograd.forward(input);
+
+        // Cached filter transforms must be dropped once the kernels change
+        direct.kernels.copyTo(winograd.kernels);
+        System.arraycopy(direct.biases, 0, winograd.biases, 0, direct.biases.length);
+        assertClose(direct.forward(input), winograd.forward(input), "Winograd should use the updated kernels");
+
+        Parameter kernels = winograd.parameters().get(0);
+        kernels.gradient.fill(1.0);
+        new SGD(0.1).step(List.of(kernels));
+        for (int i = 0; i < direct.kernels.size(); i++) {
+            direct.kernels.data()[i] -= 0.1;
+        }
+        direct.kernels.markModified();
+        assertClose(direct.forward(input), winograd.forward(input), "Winograd should see optimizer updates");
+
+        // Writes through data() need a markModified, with assertions on the kernel checksum catches a missing one
+        if (ConvLayer.class.desiredAssertionStatus()) {
+            winograd.kernels.data()[0] += 1.0;
+            assertThrows(AssertionError.class, () -> winograd.forward(input), "Unmarked kernel writes should be caught");
+        }
+    }
+
+    @Test
+    public void testFftMatchesDirect() {
+        int[][] configs = {
+            // kernels, channels, kernel size, stride, padding, height, width
+            {3, 2, 7, 1, 3, 16, 13},
+            {2, 3, 5, 2, 1, 11, 12},
+            {4, 1, 3, 1, 0, 8, 9},
+        };
+
+        for (int[] c : configs) {
+            ConvLayer direct = layer(ConvLayer.Engine.DIRECT, c[0], c[1], c[2], c[3], c[4], 53);
+            ConvLayer fft = layer(ConvLayer.Engine.FFT, c[0], c[1], c[2], c[3], c[4], 53);
+            Tensor input = Tensors.random(new Random(59), 2, c[1], c[5], c[6]);
+
+            Tensor output = direct.forward(input);
+            assertClose(output, fft.forward(input), "FFT forward should match the direct loop");
+
+            Tensor gradient = Tensors.random(new Random(61), output.shape());
+            assertClose(direct.backward(gradient), fft.backward(gradient), "FFT input gradient should match the direct loop");
+            assertClose(direct.parameters().get(0).gradient, fft.parameters().get(0).gradient, "FFT filter gradient should match the direct loop");
+        }
+
+        ConvLayer large = new ConvLayer(16, 16, 11, 11);
+        large.compile(new int[] {1, 16, 64, 64});
+        assertEquals(ConvLayer.Engine.FFT, large.getActiveEngine(), "AUTO should pick FFT for large kernels on large inputs");
+
+        ConvLayer small = new ConvLayer(16, 1, 5, 5);
+        small.compile(new int[] {1, 1, 28, 28});
+        assertEquals(ConvLayer.Engine.DIRECT, small.getActiveEngine(), "AUTO should keep the direct loop for small convolutions");
+    }
+
+    @Test
+    public void testResultsDoNotDependOnThreadCount() {
+        int previousThreads = Config.threads();
+        try {
+            for (ConvLayer.Engine engine : ConvLayer.Engine.values()) {
+                double[][] results = new double[2][];
+                int[] threadCounts = {1, 4};
+
+                for (int run = 0; run < threadCounts.length; run++) {
+                    Config.setThreads(threadCounts[run]);
+                    ConvLayer layer = layer(engine, 4, 3, 3, 1, 1, 17);
+                    Tensor output = layer.forward(Tensors.random(new Random(19), 3, 3, 20, 20));
+                    Tensor delta = layer.backward(Tensors.random(new Random(23), output.shape()));
+
+                    double[] kernels = layer.parameters().get(0).gradient.toArray();
+                    double[] all = new double[output.size() + delta.size() + kernels.length];
+                    System.arraycopy(output.toArray(), 0, all, 0, output.size());
+                    System.arraycopy(delta.toArray(), 0, all, output.size(), delta.size());
+                    System.arraycopy(kernels, 0, all, output.size() + delta.size(), kernels.length);
+                    results[run] = all;
+                }
+
+                assertArrayEquals(results[0], results[1], 0.0, engine + " results should be bit-identical for any thread count");
+            }
+        } finally {
+            Config.setThreads(previousThreads);
+        }
+    }
+
+    @Test
+    public void testThreadCountChangesWhileRunning() throws Exception {
+        int previousThreads = Config.threads();
+        ConvLayer layer = layer(ConvLayer.Engine.IM2COL, 4, 3, 3, 1, 1, 17);
+        Tensor input = Tensors.random(new Random(19), 4, 3, 16, 16);
+        double[] expected = layer.forward(input).toArray();
+
+        // Retiring a pool must not reject the parallel sections another thread is starting
+        Config.setThreads(2);
+        Thread worker = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                assertArrayEquals(expected, layer.forward(input).toArray(), 0.0);
+            }
+        });
+        Throwable[] failure = new Throwable[1];
+        worker.setUncaughtExceptionHandler((thread, e) -> failure[0] = e);
+        try {
+            worker.start();
+            for (int i = 0; worker.isAlive(); i++) {
+                Config.setThreads(2 + i % 3);
+            }
+            worker.join();
+        } finally {
+            Config.setThreads(previousThreads);
+        }
+        assertNull(failure[0], "Forward passes should survive thread count changes");
+    }
+}
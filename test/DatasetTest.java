@@ -0,0 +1,95 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import cnn.*;
+
+public class DatasetTest {
+    @TempDir
+    Path directory;
+
+    // 5 images of 2x3 pixels, pixel values n * 10 + i, labelled n % 3
+    private IdxDataset idx() throws IOException {
+        ByteBuffer images = ByteBuffer.allocate(16 + 5 * 6).order(ByteOrder.BIG_ENDIAN);
+        images.putInt(0x00000803).putInt(5).putInt(2).putInt(3);
+        for (int n = 0; n < 5; n++) {
+            for (int i = 0; i < 6; i++) {
+                images.put((byte) (n * 10 + i));
+            }
+        }
+        ByteBuffer labels = ByteBuffer.allocate(8 + 5).order(ByteOrder.BIG_ENDIAN);
+        labels.putInt(0x00000801).putInt(5);
+        for (int n = 0; n < 5; n++) {
+            labels.put((byte) (n % 3));
+        }
+
+        Path imageFile = directory.resolve("images-idx3-ubyte");
+        Path labelFile = directory.resolve("labels-idx1-ubyte");
+        Files.write(imageFile, images.array());
+        Files.write(labelFile, labels.array());
+        return new IdxDataset(imageFile, labelFile, 3);
+    }
+
+    @Test
+    public void testIdxSamplesAreScaledAndOneHot() throws IOException {
+        IdxDataset dataset = idx();
+        assertEquals(5, dataset.size(), "Every image should be a sample");
+        assertArrayEquals(new int[] {1, 2, 3}, dataset.inputShape(), "Images should be single channel");
+
+        Tensor input = new Tensor(dataset.inputShape());
+        Tensor target = new Tensor(dataset.targetShape());
+        dataset.get(4, input, target);
+        assertEquals(45 / 255.0, input.get(0, 1, 2), 1e-12, "Pixels should be scaled to [0, 1]");
+        assertArrayEquals(new double[] {0, 1, 0}, target.toArray(), 0.0, "Label 1 should be one-hot encoded");
+    }
+
+    @Test
+    public void testRawFloatSamples() throws IOException {
+        ByteBuffer inputs = ByteBuffer.allocate(3 * 4 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer targets = ByteBuffer.allocate(3 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 12; i++) {
+            inputs.putFloat(i * 0.5f);
+        }
+        for (int n = 0; n < 3; n++) {
+            targets.putFloat(-n);
+        }
+        Path inputFile = directory.resolve("inputs.f32");
+        Path targetFile = directory.resolve("targets.f32");
+        Files.write(inputFile, inputs.array());
+        Files.write(targetFile, targets.array());
+
+        RawDataset dataset = new RawDataset(inputFile, new int[] {1, 2, 2}, targetFile, new int[] {1});
+        Tensor input = new Tensor(1, 2, 2);
+        Tensor target = new Tensor(1);
+        dataset.get(2, input, target);
+        assertEquals(3, dataset.size(), "Sample count should follow the file size");
+        assertArrayEquals(new double[] {4, 4.5, 5, 5.5}, input.toArray(), 0.0, "Inputs should be read in record order");
+        assertEquals(-2, target.get(0), 0.0, "Targets should be read in record order");
+    }
+
+    @Test
+    public void testPrefetcherKeepsTheOrder() throws IOException {
+        IdxDataset dataset = idx();
+        int[] order = {3, 1, 4, 0, 2};
+
+        try (Prefetcher loader = new Prefetcher(dataset, 2, 3, 1)) {
+            for (int pass = 0; pass < 2; pass++) {
+                loader.start(order);
+                int seen = 0;
+                for (Prefetcher.Batch batch = loader.next(); batch != null; batch = loader.next()) {
+                    for (int i = 0; i < batch.count; i++) {
+                        int expected = order[seen++];
+                        assertEquals((expected * 10) / 255.0, batch.inputs.get(i, 0, 0, 0), 1e-12, "Samples should come out in the given order");
+                    }
+                    loader.release(batch);
+                }
+                assertEquals(order.length, seen, "Every sample should be loaded once per pass");
+            }
+        }
+    }
+}
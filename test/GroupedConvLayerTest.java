@@ -0,0 +1,168 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class GroupedConvLayerTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private void randomize(List<Parameter> parameters, Random rand) {
+        for (Parameter parameter : parameters) {
+            double[] values = parameter.value.data();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rand.nextGaussian() * 0.5;
+            }
+            parameter.value.markModified();
+        }
+    }
+
+    @Test
+    public void testMatchesConvLayerWithBlockKernels() {
+        int[][] configs = {
+            // kernels, channels, groups, kernel size, stride, padding
+            {6, 4, 2, 3, 1, 1},
+            {4, 6, 2, 3, 2, 1},
+            // Depthwise
+            {3, 3, 3, 3, 1, 0},
+            {4, 4, 4, 5, 2, 2},
+        };
+
+        for (int[] c : configs) {
+            int kernels = c[0];
+            int channels = c[1];
+            int groups = c[2];
+            int size = c[3];
+            GroupedConvLayer grouped = new GroupedConvLayer(kernels, channels, size, size, groups);
+            grouped.setStride(c[4]);
+            grouped.setPadding(c[5]);
+            randomize(grouped.parameters(), new Random(3));
+
+            // Dense kernels that are zero outside the group of every kernel
+            ConvLayer dense = new ConvLayer(kernels, channels, size, size);
+            dense.setEngine(ConvLayer.Engine.DIRECT);
+            dense.setStride(c[4]);
+            dense.setPadding(c[5]);
+            dense.kernels.fill(0.0);
+            int groupChannels = channels / groups;
+            int groupKernels = kernels / groups;
+            Tensor groupedKernels = grouped.parameters().get(0).value;
+            for (int k = 0; k < kernels; k++) {
+                for (int gc = 0; gc < groupChannels; gc++) {
+                    int channel = (k / groupKernels) * groupChannels + gc;
+                    for (int y = 0; y < size; y++) {
+                        for (int x = 0; x < size; x++) {
+                            dense.kernels.set(groupedKernels.get(k, gc, y, x), k, channel, y, x);
+                        }
+                    }
+                }
+                dense.biases[k] = grouped.parameters().get(1).value.get(k);
+            }
+
+            Tensor input = Tensors.random(new Random(5), 2, channels, 9, 8);
+            Tensor output = dense.forward(input);
+            assertArrayEquals(output.toArray(), grouped.forward(input).toArray(), TOLERANCE, "Grouped forward should match block kernels");
+
+            Tensor gradient = Tensors.random(new Random(7), output.shape());
+            assertArrayEquals(dense.backward(gradient).toArray(), grouped.backward(gradient).toArray(), TOLERANCE,
+                    "Grouped input gradient should match block kernels");
+            assertArrayEquals(dense.parameters().get(1).gradient.toArray(), grouped.parameters().get(1).gradient.toArray(), TOLERANCE,
+                    "Bias gradients should match");
+
+            Tensor denseGradient = dense.parameters().get(0).gradient;
+            Tensor groupedGradient = grouped.parameters().get(0).gradient;
+            for (int k = 0; k < kernels; k++) {
+                for (int gc = 0; gc < groupChannels; gc++) {
+                    int channel = (k / groupKernels) * groupChannels + gc;
+                    for (int y = 0; y < size; y++) {
+                        for (int x = 0; x < size; x++) {
+                            assertEquals(denseGradient.get(k, channel, y, x), groupedGradient.get(k, gc, y, x), TOLERANCE,
+                                    "Kernel gradients should match inside the groups");
+                        }
+                    }
+                }
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new GroupedConvLayer(4, 6, 3, 3, 4), "Groups must divide the channels");
+    }
+
+    @Test
+    public void testSeparableGradientsMatchFiniteDifferences() {
+        SeparableConvLayer layer = new SeparableConvLayer(5, 3, 3, 3);
+        layer.setPadding(1);
+        layer.setActivation(Activation.TANH);
+        randomize(layer.parameters(), new Random(11));
+        Tensor input = Tensors.random(new Random(13), 2, 3, 6, 6);
+        Tensor weights = Tensors.random(new Random(17), 2, 5, 6, 6);
+
+        // loss = sum of weights * output, so dLoss/dOutput = weights
+        layer.forward(input);
+        double[] inputGradient = layer.backward(weights).toArray();
+        List<Parameter> parameters = layer.parameters();
+        assertEquals(3 * 9 + 3 + 5 * 3 + 5, parameters.stream().mapToInt(p -> p.value.size()).sum(),
+                "Separable layer should hold the depthwise and pointwise weights only");
+
+        double h = 1e-6;
+        for (Parameter parameter : parameters) {
+            double[] values = parameter.value.data();
+            for (int i = 0; i < values.length; i += 4) {
+                double value = values[i];
+                values[i] = value + h;
+                parameter.value.markModified();
+                double plus = loss(layer, input, weights);
+                values[i] = value - h;
+                parameter.value.markModified();
+                double minus = loss(layer, input, weights);
+                values[i] = value;
+                parameter.value.markModified();
+                assertEquals((plus - minus) / (2 * h), parameter.gradient.data()[i], 1e-6, "Parameter gradient should match finite differences");
+            }
+        }
+
+        for (int i = 0; i < input.size(); i += 7) {
+            double value = input.data()[i];
+            input.data()[i] = value + h;
+            double plus = loss(layer, input, weights);
+            input.data()[i] = value - h;
+            double minus = loss(layer, input, weights);
+            input.data()[i] = value;
+            assertEquals((plus - minus) / (2 * h), inputGradient[i], 1e-6, "Input gradient should match finite differences");
+        }
+    }
+
+    private double loss(Layer layer, Tensor input, Tensor weights) {
+        double[] output = layer.forward(input).toArray();
+        double sum = 0.0;
+        for (int i = 0; i < output.length; i++) {
+            sum += output[i] * weights.data()[i];
+        }
+        return sum;
+    }
+
+    @Test
+    public void testSeparableNetworkTrains() {
+        Random rand = new Random(19);
+        Tensor inputs = Tensors.random(rand, 32, 2, 6, 6);
+        Tensor targets = new Tensor(32, 2);
+        for (int n = 0; n < 32; n++) {
+            targets.set(1.0, n, inputs.get(n, 0, 2, 2) > inputs.get(n, 1, 3, 3) ? 0 : 1);
+        }
+
+        CNN network = new CNN();
+        SeparableConvLayer separable = new SeparableConvLayer(8, 2, 3, 3);
+        separable.setPadding(1);
+        network.addLayer(separable);
+        GroupedConvLayer grouped = new GroupedConvLayer(8, 8, 3, 3, 4);
+        grouped.setStride(2);
+        network.addLayer(grouped);
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(2));
+        network.setWorkers(2);
+        network.setSeed(1);
+
+        double[] losses = network.train(new TensorDataset(inputs, targets), 20, 8);
+        assertTrue(losses[19] < losses[0], "Grouped and separable layers should train inside a network");
+    }
+}
@@ -0,0 +1,140 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class InferenceServerTest {
+    private static final double TOLERANCE = 1e-12;
+
+    private CNN network() {
+        CNN network = new CNN();
+        ConvLayer conv = new ConvLayer(3, 1, 3, 3);
+        conv.setPadding(1);
+        network.addLayer(conv);
+        network.addLayer(new PoolLayer(2, 2));
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(4));
+        network.compile(1, 1, 6, 6);
+
+        Random rand = new Random(5);
+        for (Parameter parameter : network.parameters()) {
+            double[] values = parameter.value.data();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rand.nextGaussian() * 0.3;
+            }
+            parameter.value.markModified();
+        }
+        return network;
+    }
+
+    private List<Tensor> samples(int count) {
+        Random rand = new Random(7);
+        List<Tensor> samples = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            Tensor sample = new Tensor(1, 6, 6);
+            for (int i = 0; i < sample.size(); i++) {
+                sample.data()[i] = rand.nextGaussian();
+            }
+            samples.add(sample);
+        }
+        return samples;
+    }
+
+    private double[] expected(CNN network, Tensor sample) {
+        return network.predict(sample.reshape(1, 1, 6, 6)).toArray();
+    }
+
+    @Test
+    public void testRequestsAreCoalescedIntoBatches() throws Exception {
+        CNN network = network();
+        List<Tensor> samples = samples(16);
+
+        // The first request waits up to a second for company : the 16 requests fill two batches of 8
+        try (InferenceServer server = new InferenceServer(network, 8, 1_000_000)) {
+            List<CompletableFuture<Tensor>> results = new ArrayList<>();
+            for (Tensor sample : samples) {
+                results.add(server.submit(sample));
+            }
+            for (int n = 0; n < samples.size(); n++) {
+                assertArrayEquals(expected(network, samples.get(n)), results.get(n).get(10, TimeUnit.SECONDS).toArray(), TOLERANCE,
+                        "Batched outputs should match single-sample predictions");
+            }
+
+            InferenceServer.Stats stats = server.stats();
+            assertEquals(16, stats.requests, "Every request should be counted");
+            assertEquals(2, stats.batches, "Full batches should run without waiting for the delay");
+            assertEquals(8, stats.batchSize.max(), "Batches should not exceed the maximum size");
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersAndDelay() throws Exception {
+        CNN network = network();
+        List<Tensor> samples = samples(64);
+
+        try (InferenceServer server = new InferenceServer(network, 16, 2_000);
+             ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Tensor>> results = new ArrayList<>();
+            for (Tensor sample : samples) {
+                results.add(callers.submit(() -> server.predict(sample)));
+            }
+            for (int n = 0; n < samples.size(); n++) {
+                assertArrayEquals(expected(network, samples.get(n)), results.get(n).get(10, TimeUnit.SECONDS).toArray(), TOLERANCE,
+                        "Concurrent callers should each get their own output");
+            }
+
+            // A lone request runs once the delay is over, without a full batch
+            long before = server.stats().batches;
+            assertArrayEquals(expected(network, samples.get(0)), server.predict(samples.get(0)).toArray(), TOLERANCE);
+            assertEquals(before + 1, server.stats().batches, "A lone request should run in its own batch");
+            assertEquals(65, server.stats().requests);
+        }
+    }
+
+    @Test
+    public void testHttpFrontEnd() throws Exception {
+        CNN network = network();
+        Tensor sample = samples(1).get(0);
+
+        try (InferenceServer server = new InferenceServer(network, 4, 1_000)) {
+            int port = server.startHttp(0);
+            HttpClient client = HttpClient.newHttpClient();
+            URI predict = URI.create("http://127.0.0.1:" + port + "/predict");
+
+            StringBuilder body = new StringBuilder();
+            for (double value : sample.toArray()) {
+                body.append(value).append(' ');
+            }
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(predict).POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            String[] fields = response.body().trim().split(",");
+            double[] output = new double[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                output[i] = Double.parseDouble(fields[i]);
+            }
+            assertArrayEquals(expected(network, sample), output, 0.0, "The HTTP answer should carry the exact outputs");
+
+            HttpResponse<String> invalid = client.send(HttpRequest.newBuilder(predict).POST(HttpRequest.BodyPublishers.ofString("1, 2, 3")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, invalid.statusCode(), "A sample of the wrong size should be rejected");
+
+            HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.body().contains("requests 1"), "Metrics should count the served request");
+        }
+    }
+}
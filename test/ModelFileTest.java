@@ -0,0 +1,133 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import cnn.*;
+
+public class ModelFileTest {
+    @TempDir
+    Path directory;
+
+    private CNN network() {
+        ConvLayer conv = new ConvLayer(3, 2, 3, 3);
+        conv.setPadding(1);
+        conv.setEngine(ConvLayer.Engine.IM2COL);
+
+        CNN network = new CNN();
+        network.addLayer(conv);
+        network.addLayer(new PoolLayer(2, 2));
+        SeparableConvLayer separable = new SeparableConvLayer(4, 3, 3, 3);
+        separable.setPadding(1);
+        network.addLayer(separable);
+        GroupedConvLayer grouped = new GroupedConvLayer(4, 4, 3, 3, 2);
+        grouped.setPadding(1);
+        grouped.setActivation(Activation.TANH);
+        network.addLayer(grouped);
+        network.addLayer(new FlattenLayer());
+        DenseLayer dense = new DenseLayer(5);
+        dense.setActivation(Activation.TANH);
+        network.addLayer(dense);
+        network.compile(2, 2, 6, 6);
+        return network;
+    }
+
+    private Tensor input() {
+        Tensor input = new Tensor(2, 2, 6, 6);
+        Random rand = new Random(4);
+        for (int i = 0; i < input.size(); i++) {
+            input.data()[i] = rand.nextGaussian();
+        }
+        return input;
+    }
+
+    @Test
+    public void testSavedModelGivesTheSameOutputs() throws IOException {
+        CNN original = network();
+        Path file = directory.resolve("model.cnn");
+        original.save(file);
+        CNN loaded = CNN.load(file);
+
+        assertArrayEquals(original.getInputShape(), loaded.getInputShape(), "Loaded model should be compiled for the saved shape");
+
+        List<Parameter> expected = original.parameters();
+        List<Parameter> actual = loaded.parameters();
+        assertEquals(expected.size(), actual.size(), "Every weight block should be loaded");
+        for (int p = 0; p < expected.size(); p++) {
+            assertArrayEquals(expected.get(p).value.toArray(), actual.get(p).value.toArray(), 0.0, "Weights should be restored bit for bit");
+        }
+
+        Tensor input = input();
+        assertArrayEquals(original.forward(input).toArray(), loaded.forward(input).toArray(), 0.0, "Loaded model should compute the same outputs");
+    }
+
+    @Test
+    public void testMappedModelServesTheSavedWeights() throws IOException {
+        CNN original = network();
+        Path file = directory.resolve("model.cnn");
+        original.save(file);
+        CNN mapped = CNN.map(file);
+
+        assertArrayEquals(original.getInputShape(), mapped.getInputShape(), "Mapped model should be compiled for the saved shape");
+        // Grouped and separable convolutions have no mapped version, they are loaded as usual
+        assertEquals(original.parameters().size() - 4, mapped.parameters().size(), "Dense and conv weights should stay in the mapping");
+
+        // The mapped conv runs the direct loops where the original one ran im2col
+        Tensor input = input();
+        double[] expected = original.forward(input).toArray();
+        assertArrayEquals(expected, mapped.forward(input).toArray(), 1e-12, "Mapped model should compute the same outputs");
+        assertArrayEquals(expected, mapped.predict(input).toArray(), 1e-12, "Mapped model should serve predict");
+
+        assertThrows(UnsupportedOperationException.class, () -> mapped.backward(new Tensor(2, 5)), "Mapped models should not train");
+        assertThrows(IllegalArgumentException.class, () -> mapped.save(directory.resolve("copy.cnn")), "Mapped models should not be saved");
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("notes.txt");
+        Files.writeString(file, "not a model, just some text");
+        assertThrows(IOException.class, () -> CNN.load(file), "Files without the model header should be rejected");
+
+        Path truncated = directory.resolve("truncated.cnn");
+        network().save(truncated);
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> CNN.load(truncated), "Truncated models should be rejected");
+    }
+
+    // Copy of the saved network with the int at `position` replaced
+    private Path patched(String name, int position, int value) throws IOException {
+        Path file = directory.resolve(name);
+        network().save(file);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(position, value);
+        Files.write(file, bytes.array());
+        return file;
+    }
+
+    @Test
+    public void testRejectsCorruptLengths() throws IOException {
+        // Header : magic, version, layer count, input rank, 4 input dims. First layer : type, config length, config
+        int[][] corruptions = {
+            {4, 2},
+            {12, -1},
+            {12, Integer.MAX_VALUE},
+            {36, -1},
+            {36, Integer.MAX_VALUE},
+            {36, 6},
+            {40, 1 << 30},
+        };
+        for (int[] corruption : corruptions) {
+            Path file = patched("corrupt.cnn", corruption[0], corruption[1]);
+            assertThrows(IOException.class, () -> CNN.load(file), "Value " + corruption[1] + " at byte " + corruption[0] + " should be rejected");
+            assertThrows(IOException.class, () -> CNN.map(file), "Value " + corruption[1] + " at byte " + corruption[0] + " should be rejected when mapped");
+        }
+    }
+}
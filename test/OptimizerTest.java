@@ -0,0 +1,53 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class OptimizerTest {
+    // Minimise 0.5 * |w - target|^2 (gradient w - target) and return the final distance to target
+    private double minimise(Optimizer optimizer, int steps) {
+        double[] target = {3.0, -2.0, 0.5};
+        Parameter parameter = new Parameter(new Tensor(3));
+        List<Parameter> parameters = List.of(parameter);
+
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < target.length; i++) {
+                parameter.gradient.data()[i] += parameter.value.data()[i] - target[i];
+            }
+            optimizer.step(parameters);
+            for (double g : parameter.gradient.data()) {
+                assertEquals(0.0, g, 0.0, "Gradients should be cleared by the step");
+            }
+        }
+
+        double distance = 0;
+        for (int i = 0; i < target.length; i++) {
+            distance += Math.abs(parameter.value.data()[i] - target[i]);
+        }
+        return distance;
+    }
+
+    @Test
+    public void testSGDStep() {
+        Parameter parameter = new Parameter(Tensor.wrap(new double[] {1.0, 2.0}, 2));
+        parameter.gradient.data()[0] = 0.5;
+        parameter.gradient.data()[1] = -1.0;
+        new SGD(0.1).step(List.of(parameter));
+        assertArrayEquals(new double[] {0.95, 2.1}, parameter.value.toArray(), 1e-12, "SGD should step against the gradient");
+    }
+
+    @Test
+    public void testOptimizersConverge() {
+        assertTrue(minimise(new SGD(0.1), 200) < 1e-6, "SGD should converge");
+        assertTrue(minimise(new SGD(0.05, 0.9), 300) < 1e-6, "SGD with momentum should converge");
+        assertTrue(minimise(new SGD(0.05, 0.9, true), 300) < 1e-6, "Nesterov should converge");
+        assertTrue(minimise(new Adam(0.1), 1000) < 1e-3, "Adam should converge");
+        assertTrue(minimise(new RMSProp(0.01), 1000) < 1e-1, "RMSProp should converge");
+    }
+
+    @Test
+    public void testMomentumConvergesFaster() {
+        assertTrue(minimise(new SGD(0.01, 0.9), 100) < minimise(new SGD(0.01), 100), "Momentum should need fewer steps");
+    }
+}
@@ -0,0 +1,104 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class PipelineTest {
+    // Stages are cut from the compiled plan, so the network starts with a pair compile fuses : a direct conv and a
+    // max pool make one CONV_POOL step with fusion on and two steps without, then a conv, flatten and two dense layers
+    private CNN network(boolean fusion) {
+        CNN network = new CNN();
+        ConvLayer first = new ConvLayer(4, 1, 3, 3);
+        first.setPadding(1);
+        first.setEngine(ConvLayer.Engine.DIRECT);
+        network.addLayer(first);
+        network.addLayer(new PoolLayer(2, 2));
+        ConvLayer second = new ConvLayer(3, 4, 3, 3);
+        second.setPadding(1);
+        network.addLayer(second);
+        network.addLayer(new FlattenLayer());
+        DenseLayer hidden = new DenseLayer(6);
+        hidden.setActivation(Activation.TANH);
+        network.addLayer(hidden);
+        network.addLayer(new DenseLayer(2));
+        network.setFusion(fusion);
+        network.compile(10, 1, 8, 8);
+
+        Random rand = new Random(2);
+        for (Parameter parameter : network.parameters()) {
+            double[] values = parameter.value.data();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rand.nextGaussian() * 0.3;
+            }
+            parameter.value.markModified();
+        }
+        return network;
+    }
+
+    private Dataset dataset(int samples) {
+        Random rand = new Random(4);
+        Tensor inputs = new Tensor(samples, 1, 8, 8);
+        Tensor targets = new Tensor(samples, 2);
+        for (int n = 0; n < samples; n++) {
+            for (int i = 0; i < 64; i++) {
+                inputs.data()[n * 64 + i] = rand.nextGaussian();
+            }
+            targets.set(1.0, n, inputs.get(n, 0, 1, 1) > 0 ? 0 : 1);
+        }
+        return new TensorDataset(inputs, targets);
+    }
+
+    private void assertSameTraining(CNN expected, CNN actual, Dataset data, String message) {
+        expected.setSeed(3);
+        actual.setSeed(3);
+        // 25 samples in batches of 10 : the last batch is smaller and its micro-batches uneven
+        assertArrayEquals(expected.train(data, 3, 10), actual.train(data, 3, 10), 1e-12, message + " (losses)");
+
+        List<Parameter> expectedParameters = expected.parameters();
+        List<Parameter> actualParameters = actual.parameters();
+        for (int p = 0; p < expectedParameters.size(); p++) {
+            assertArrayEquals(expectedParameters.get(p).value.toArray(), actualParameters.get(p).value.toArray(), 1e-12, message + " (weights)");
+        }
+    }
+
+    // Types of the steps of the compiled plan, as seen by a listener
+    private List<String> steps(CNN network) {
+        Metrics metrics = new Metrics();
+        network.addListener(metrics);
+        network.forward(new Tensor(network.getInputShape()));
+        network.removeListener(metrics);
+        return metrics.snapshot().stream().map(stats -> stats.type).toList();
+    }
+
+    @Test
+    public void testPipelinedTrainingMatchesSerialTraining() {
+        assertEquals(List.of("CONV_POOL", "CONV", "FLATTEN", "DENSE", "DENSE"), steps(network(true)), "The pair should be fused into one step");
+        assertEquals(List.of("CONV", "POOLING", "CONV", "FLATTEN", "DENSE", "DENSE"), steps(network(false)), "Without fusion every layer is a step");
+
+        Dataset data = dataset(25);
+        for (boolean fusion : new boolean[] {true, false}) {
+            for (Pipeline.Schedule schedule : Pipeline.Schedule.values()) {
+                CNN serial = network(fusion);
+                serial.setWorkers(1);
+                CNN pipelined = network(fusion);
+                pipelined.setPipeline(4, 4, schedule);
+                assertSameTraining(serial, pipelined, data, schedule + " with fusion " + fusion + " should give the serial update");
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineClampsStagesAndMicroBatches() {
+        Dataset data = dataset(25);
+        CNN serial = network(true);
+        serial.setWorkers(1);
+        // More stages than steps and more micro-batches than samples
+        CNN pipelined = network(true);
+        pipelined.setPipeline(8, 16);
+        assertSameTraining(serial, pipelined, data, "One step per stage and one sample per micro-batch should give the serial update");
+
+        assertThrows(IllegalArgumentException.class, () -> pipelined.setPipeline(0, 4), "A pipeline needs at least one stage");
+    }
+}
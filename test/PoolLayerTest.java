@@ -0,0 +1,69 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class PoolLayerTest {
+    // One 4x4 map holding 0 .. 15 in row-major order
+    private Tensor ramp() {
+        Tensor t = new Tensor(1, 1, 4, 4);
+        for (int i = 0; i < t.size(); i++) {
+            t.data()[i] = i;
+        }
+        return t;
+    }
+
+    @Test
+    public void testMaxPoolingRoutesGradientsToTheMaximum() {
+        PoolLayer pool = new PoolLayer(2, 2);
+        Tensor output = pool.forward(ramp());
+        assertArrayEquals(new double[] {5, 7, 13, 15}, output.toArray(), 1e-12, "Every window should keep its maximum");
+
+        Tensor delta = pool.backward(Tensor.wrap(new double[] {1, 2, 3, 4}, 1, 1, 2, 2));
+        double[] expected = new double[16];
+        expected[5] = 1;
+        expected[7] = 2;
+        expected[13] = 3;
+        expected[15] = 4;
+        assertArrayEquals(expected, delta.toArray(), 1e-12, "Gradients should only reach the maximum of each window");
+    }
+
+    @Test
+    public void testAveragePoolingWithPadding() {
+        PoolLayer pool = new PoolLayer(3, 3);
+        pool.setMode(PoolLayer.Mode.AVERAGE);
+        pool.setPadding(1);
+        Tensor output = pool.forward(ramp());
+        assertArrayEquals(new int[] {1, 1, 2, 2}, output.shape(), "Padding should enlarge the output");
+        // Top-left window covers rows 0-1 and columns 0-1 of the input, padded cells are not counted
+        assertEquals((0 + 1 + 4 + 5) / 4.0, output.get(0, 0, 0, 0), 1e-12, "Average should only count input cells");
+        assertEquals((5 + 6 + 7 + 9 + 10 + 11 + 13 + 14 + 15) / 9.0, output.get(0, 0, 1, 1), 1e-12, "Inner windows should average 9 cells");
+
+        Tensor delta = pool.backward(Tensor.wrap(new double[] {4, 0, 0, 0}, 1, 1, 2, 2));
+        assertEquals(1.0, delta.get(0, 0, 1, 1), 1e-12, "Gradient should be shared by the counted cells");
+        assertEquals(0.0, delta.get(0, 0, 2, 2), 1e-12, "Cells outside the window should get nothing");
+    }
+
+    @Test
+    public void testOverlappingWindowsMatchAcrossThreadCounts() {
+        int previousThreads = Config.threads();
+        try {
+            double[][] deltas = new double[2][];
+            int[] threadCounts = {1, 4};
+            for (int run = 0; run < threadCounts.length; run++) {
+                Config.setThreads(threadCounts[run]);
+                PoolLayer pool = new PoolLayer(3, 3);
+                pool.setStride(1);
+                Tensor input = new Tensor(2, 3, 9, 9);
+                for (int i = 0; i < input.size(); i++) {
+                    input.data()[i] = Math.sin(i * 0.7);
+                }
+                Tensor output = pool.forward(input);
+                deltas[run] = pool.backward(output).toArray();
+            }
+            assertArrayEquals(deltas[0], deltas[1], 0.0, "Overlapping windows should sum in the same order for any thread count");
+        } finally {
+            Config.setThreads(previousThreads);
+        }
+    }
+}
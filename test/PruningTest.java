@@ -0,0 +1,96 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import cnn.*;
+
+public class PruningTest {
+    @TempDir
+    Path directory;
+
+    private long zeros(DenseLayer layer) {
+        long zeros = 0;
+        for (double w : layer.parameters().get(0).value.toArray()) {
+            zeros += w == 0.0 ? 1 : 0;
+        }
+        return zeros;
+    }
+
+    @Test
+    public void testPruneToSparsity() {
+        DenseLayer layer = new DenseLayer(20, 30);
+        double threshold = Pruning.pruneToSparsity(layer, 0.75);
+        assertEquals(450, zeros(layer), "Three quarters of the 600 weights should be zero");
+        for (double w : layer.parameters().get(0).value.toArray()) {
+            assertTrue(w == 0.0 || Math.abs(w) >= threshold, "Kept weights should be at least the threshold");
+        }
+        assertEquals(0, Pruning.prune(layer, threshold), "Pruning again at the same threshold should change nothing");
+    }
+
+    @Test
+    public void testSparseLayerMatchesPrunedDenseLayer() {
+        Random rand = new Random(9);
+        DenseLayer dense = new DenseLayer(12, 40);
+        dense.setActivation(Activation.TANH);
+        Pruning.pruneToSparsity(dense, 0.9);
+        SparseDenseLayer sparse = new SparseDenseLayer(dense);
+        assertEquals(48, sparse.nonZeros(), "Only the non-zero weights should be stored");
+        assertTrue(sparse.weightBytes() < 12 * 40 * Double.BYTES / 4, "Sparse weights should take a fraction of the dense ones");
+
+        Tensor input = Tensors.random(rand, 5, 40);
+        assertArrayEquals(dense.forward(input).toArray(), sparse.forward(input).toArray(), 1e-12, "Sparse forward should match the dense layer");
+
+        Tensor gradient = Tensors.random(rand, 5, 12);
+        assertArrayEquals(dense.backward(gradient).toArray(), sparse.backward(gradient).toArray(), 1e-12, "Sparse input gradient should match the dense layer");
+
+        // Gradients of the stored weights, in row-major order of their positions
+        double[] denseGradient = dense.parameters().get(0).gradient.toArray();
+        double[] weights = dense.parameters().get(0).value.toArray();
+        double[] expected = new double[sparse.nonZeros()];
+        for (int i = 0, k = 0; i < weights.length; i++) {
+            if (weights[i] != 0.0) {
+                expected[k++] = denseGradient[i];
+            }
+        }
+        assertArrayEquals(expected, sparse.parameters().get(0).gradient.toArray(), 1e-12, "Sparse weight gradients should match the dense ones");
+        assertArrayEquals(dense.parameters().get(1).gradient.toArray(), sparse.parameters().get(1).gradient.toArray(), 1e-12, "Bias gradients should match");
+    }
+
+    @Test
+    public void testPrunedNetworkCanBeFineTuned() throws IOException {
+        Random rand = new Random(10);
+        CNN network = new CNN();
+        network.addLayer(new FlattenLayer());
+        network.addLayer(new DenseLayer(64));
+        network.addLayer(new DenseLayer(4));
+        network.compile(8, 1, 4, 4);
+        network.setSeed(1);
+
+        Tensor inputs = Tensors.random(rand, 64, 1, 4, 4);
+        Tensor targets = new Tensor(64, 4);
+        for (int n = 0; n < 64; n++) {
+            targets.set(1.0, n, inputs.get(n, 0, 0, 0) > 0 ? 0 : 1);
+        }
+        Dataset dataset = new TensorDataset(inputs, targets);
+
+        Pruning.Report report = Pruning.prune(network, 0.8);
+        assertEquals(2, report.layers, "Both dense layers should be pruned");
+        assertEquals(Math.round(0.2 * 16 * 64) + Math.round(0.2 * 64 * 4), report.nonZeros, "A fifth of the weights should be kept");
+
+        double[] losses = network.train(dataset, 5, 8);
+        assertTrue(losses[4] < losses[0], "Fine-tuning should lower the loss");
+        assertEquals(report.nonZeros, network.parameters().get(0).value.size() + network.parameters().get(2).value.size(),
+                "Fine-tuning should keep the pruned weights out");
+
+        Path file = directory.resolve("pruned.cnn");
+        network.save(file);
+        CNN loaded = CNN.load(file);
+        assertArrayEquals(network.forward(inputs.narrow(0, 8)).toArray(), loaded.forward(inputs.narrow(0, 8)).toArray(), 0.0,
+                "A saved pruned network should load with the same sparse weights");
+        assertEquals(report.nonZeros, loaded.parameters().get(0).value.size() + loaded.parameters().get(2).value.size(),
+                "Loaded sparse layers should store the kept weights only");
+    }
+}
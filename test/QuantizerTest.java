@@ -0,0 +1,80 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class QuantizerTest {
+    private CNN network() {
+        ConvLayer conv = new ConvLayer(6, 2, 3, 3);
+        conv.setPadding(1);
+        ConvLayer strided = new ConvLayer(8, 6, 3, 3);
+        strided.setStride(2);
+        DenseLayer hidden = new DenseLayer(32);
+        hidden.setActivation(Activation.TANH);
+
+        CNN network = new CNN();
+        network.addLayer(conv);
+        network.addLayer(new PoolLayer(2, 2));
+        network.addLayer(strided);
+        network.addLayer(new FlattenLayer());
+        network.addLayer(hidden);
+        network.addLayer(new DenseLayer(5));
+        network.compile(4, 2, 12, 12);
+
+        // Seeded weights : the default ones are tiny, which leaves the classes too close to call under int8 rounding
+        Random rand = new Random(1);
+        for (Parameter parameter : network.parameters()) {
+            double[] values = parameter.value.data();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rand.nextGaussian() * 0.1;
+            }
+            parameter.value.markModified();
+        }
+        return network;
+    }
+
+    @Test
+    public void testQuantizedNetworkFollowsTheDoubleOne() {
+        CNN network = network();
+        Random rand = new Random(3);
+        CNN quantized = Quantizer.quantize(network, Tensors.random(rand, 64, 2, 12, 12));
+        assertArrayEquals(network.getOutputShape(), quantized.getOutputShape(), "Quantization should keep the output shape");
+
+        // Targets are the double network's own classes : its accuracy is 100% and the int8 one is the agreement
+        Tensor inputs = Tensors.random(rand, 200, 2, 12, 12);
+        Tensor outputs = network.predict(inputs);
+        Quantizer.Report report = Quantizer.compare(network, quantized, new TensorDataset(inputs, outputs), 32);
+
+        assertEquals(1.0, report.referenceAccuracy, 1e-12, "The double network should match its own outputs");
+        assertTrue(report.agreement > 0.95, "int8 outputs should pick the same class almost always, got " + report.agreement);
+        assertTrue(report.maxOutputError < 0.05, "int8 outputs should stay close to the double ones, got " + report.maxOutputError);
+        assertTrue(report.quantizedWeightBytes * 4 < report.referenceWeightBytes, "int8 weights should be several times smaller : " + report);
+    }
+
+    @Test
+    public void testQuantizedConvMatchesConvLayer() {
+        Random rand = new Random(5);
+        ConvLayer conv = new ConvLayer(3, 4, 5, 5);
+        conv.setPadding(2);
+        conv.setStride(2);
+        conv.setActivation(Activation.IDENTITY);
+        CNN network = new CNN();
+        network.addLayer(conv);
+        network.compile(2, 4, 11, 9);
+
+        Tensor input = Tensors.random(rand, 2, 4, 11, 9);
+        CNN quantized = Quantizer.quantize(network, input);
+        Tensor expected = network.predict(input);
+        Tensor actual = quantized.predict(input);
+
+        // Rounding errors of 100 terms, each within half a step of the input and weight grids
+        double largest = 0;
+        for (double value : expected.toArray()) {
+            largest = Math.max(largest, Math.abs(value));
+        }
+        assertArrayEquals(expected.toArray(), actual.toArray(), 0.03 * largest, "int8 conv should match the double conv");
+        UnsupportedOperationException e = assertThrows(UnsupportedOperationException.class, () -> quantized.backward(actual));
+        assertTrue(e.getMessage().startsWith("Quantized layers are inference-only"), "Quantized networks cannot be trained : " + e.getMessage());
+    }
+}
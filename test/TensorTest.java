@@ -0,0 +1,76 @@
+package test;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import cnn.*;
+
+public class TensorTest {
+    private Tensor range(int... shape) {
+        Tensor t = new Tensor(shape);
+        for (int i = 0; i < t.size(); i++) {
+            t.data()[i] = i;
+        }
+        return t;
+    }
+
+    @Test
+    public void testRowMajorLayout() {
+        Tensor t = range(2, 3, 4);
+        assertEquals(12, t.stride(0), "First stride should span a whole 3x4 matrix");
+        assertEquals(1, t.stride(2), "Last dimension should be contiguous");
+        assertEquals(1 * 12 + 2 * 4 + 3, t.get(1, 2, 3), 1e-9, "Element should be stored at its row-major position");
+    }
+
+    @Test
+    public void testReshapeSharesStorage() {
+        Tensor t = range(2, 2, 2);
+        Tensor flat = t.reshape(1, 1, 8);
+        assertSame(t.data(), flat.data(), "Reshaping a contiguous tensor should not copy");
+
+        flat.set(42, 0, 0, 5);
+        assertEquals(42, t.get(1, 0, 1), 1e-9, "Writes through a view should be visible in the source tensor");
+    }
+
+    @Test
+    public void testSliceAndNarrowAreViews() {
+        Tensor t = range(3, 2, 2);
+        Tensor slice = t.slice(1);
+        assertArrayEquals(new int[] {2, 2}, slice.shape(), "Slice should drop the first dimension");
+        assertEquals(4, slice.get(0, 0), 1e-9, "Slice should start at the selected element");
+
+        Tensor narrow = t.narrow(1, 2);
+        assertEquals(2, narrow.shape(0), "Narrow should keep the requested length");
+        assertEquals(11, narrow.get(1, 1, 1), 1e-9, "Narrow should index from its own origin");
+        assertSame(t.data(), narrow.data(), "Narrow should not copy");
+    }
+
+    @Test
+    public void testTransposeCopyIsContiguous() {
+        Tensor t = range(2, 3);
+        Tensor transposed = t.transpose(0, 1);
+        assertFalse(transposed.isContiguous(), "Transposed view should not be contiguous");
+        assertEquals(t.get(1, 2), transposed.get(2, 1), 1e-9, "Transpose should swap indices");
+
+        Tensor copy = transposed.contiguous();
+        assertTrue(copy.isContiguous(), "Copy should be contiguous");
+        assertArrayEquals(new double[] {0, 3, 1, 4, 2, 5}, copy.toArray(), 1e-9, "Copy should follow the transposed order");
+    }
+
+    @Test
+    public void testReuseKeepsMatchingBuffers() {
+        Tensor buffer = new Tensor(4, 3);
+        assertSame(buffer, Tensor.reuse(buffer, 4, 3), "A buffer of the right shape should be returned as is");
+
+        Tensor smaller = Tensor.reuse(buffer, 2, 3);
+        assertSame(buffer.data(), smaller.data(), "A smaller result should reuse the buffer storage");
+        assertArrayEquals(new int[] {2, 3}, smaller.shape(), "Reused buffer should take the requested shape");
+
+        Tensor larger = Tensor.reuse(buffer, 5, 3);
+        assertNotSame(buffer.data(), larger.data(), "A larger result should get new storage");
+    }
+
+    @Test
+    public void testInvalidReshape() {
+        Tensor t = new Tensor(2, 3);
+        assertThrows(IllegalArgumentException.class, () -> t.reshape(4, 2), "Reshape should preserve the element count");
+    }
+}
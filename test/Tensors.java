@@ -0,0 +1,18 @@
+package test;
+import java.util.Random;
+import cnn.*;
+
+// Test inputs shared by the layer tests
+final class Tensors {
+    private Tensors() {
+    }
+
+    // Tensor of the given shape filled with standard gaussian values
+    static Tensor random(Random rand, int... shape) {
+        Tensor t = new Tensor(shape);
+        for (int i = 0; i < t.size(); i++) {
+            t.data()[i] = rand.nextGaussian();
+        }
+        return t;
+    }
+}